@@ -0,0 +1,25 @@
+package practica.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Lanza todos los benchmarks de practica.bench con el perfilador de GC, que añade a cada resultado
+ * los bytes reservados por operación (gc.alloc.rate.norm). Los argumentos son los de JMH, por ejemplo
+ * "-p map=map1.png" para un solo mapa o "-rf json -rff resultados.json" para guardar los resultados.
+ */
+public class BenchmarkMain {
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.include("practica\\.bench\\..*Benchmark")
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
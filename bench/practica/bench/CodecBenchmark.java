@@ -0,0 +1,71 @@
+package practica.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import practica.message.BinaryStatusCodec;
+import practica.message.CodecException;
+import practica.message.JsonStatusCodec;
+import practica.message.Status;
+import practica.message.StatusCodec;
+
+/**
+ * Codificación del status que el satélite envía en cada paso y de la decisión del drone, en JSON
+ * (la de siempre) y en binario para comparar.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CodecBenchmark {
+	@Param({"json", "binary"})
+	public String codec;
+
+	private StatusCodec statusCodec;
+	private Status status;
+	private final Status decoded = new Status();
+	private String encodedStatus, encodedDecision;
+
+	@Setup
+	public void setup() throws CodecException {
+		statusCodec = codec.equals("json") ? new JsonStatusCodec() : new BinaryStatusCodec();
+		Trajectory trajectory = new Trajectory("map1.png");
+		status = trajectory.statuses.get(trajectory.size() / 2);
+		encodedStatus = statusCodec.encodeStatus(status);
+		encodedDecision = statusCodec.encodeDecision(trajectory.decisions.get(trajectory.size() / 2));
+	}
+
+	@Benchmark
+	public String encodeStatus() throws CodecException {
+		return statusCodec.encodeStatus(status);
+	}
+
+	@Benchmark
+	public Status decodeStatus() throws CodecException {
+		statusCodec.decodeStatus(encodedStatus, decoded);
+		return decoded;
+	}
+
+	@Benchmark
+	public String encodeDecision() throws CodecException {
+		return statusCodec.encodeDecision(status.getPositionX() & 3);
+	}
+
+	@Benchmark
+	public int decodeDecision() throws CodecException {
+		return statusCodec.decodeDecision(encodedDecision);
+	}
+}
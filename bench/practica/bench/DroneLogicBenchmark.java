@@ -0,0 +1,69 @@
+package practica.bench;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import practica.engine.DroneLogic;
+import practica.util.Pair;
+
+/**
+ * Decisión del drone (Drone.think, que delega en DroneLogic) y getAllMovements.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DroneLogicBenchmark {
+	@Param({"map1.png", "Challenge.png", "dead end.png"})
+	public String map;
+
+	private Trajectory trajectory;
+	private DroneLogic replay, middle;
+	private int next;
+	private final int[] plan = new int[1];
+
+	@Setup
+	public void setup() {
+		trajectory = new Trajectory(map);
+		middle = trajectory.droneAt(trajectory.size() / 2);
+		replay = trajectory.newDrone();
+		next = 0;
+	}
+
+	/**
+	 * Un paso del drone: recibe el status grabado y decide. think no se puede repetir sobre el mismo
+	 * estado (cuenta los pasos sin mejorar la distancia), así que se vuelve a recorrer el camino
+	 * grabado; al acabar se empieza con un drone nuevo, que cuesta una vez por recorrido.
+	 */
+	@Benchmark
+	public int think() {
+		if (next == trajectory.size()) {
+			replay = trajectory.newDrone();
+			next = 0;
+		}
+		replay.update(trajectory.statuses.get(next++), plan);
+		return replay.think();
+	}
+
+	/**
+	 * Distancias y condiciones de los cuatro movimientos a mitad del recorrido.
+	 */
+	@Benchmark
+	public ArrayList<Pair> getAllMovements() {
+		return middle.getAllMovements();
+	}
+}
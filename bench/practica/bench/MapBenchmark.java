@@ -0,0 +1,68 @@
+package practica.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import practica.util.ImgMapConverter;
+import practica.util.Map;
+import practica.util.MapFile;
+
+/**
+ * Copia de mapas (el satélite copia el mapa al empezar) y conversión entre imagen y mapa.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MapBenchmark {
+	@Param({"map1.png", "Challenge.png", "dead end.png"})
+	public String map;
+
+	private String path;
+	private Map loaded;
+	private File output;
+
+	@Setup
+	public void setup() throws IOException {
+		path = Trajectory.MAPS_DIR + map;
+		loaded = MapFile.load(path);
+		output = File.createTempFile("bench", ".png");
+	}
+
+	@TearDown
+	public void tearDown() {
+		output.delete();
+	}
+
+	@Benchmark
+	public Map copy() {
+		return new Map(loaded);
+	}
+
+	@Benchmark
+	public Map imgToMap() {
+		return ImgMapConverter.imgToMap(path);
+	}
+
+	@Benchmark
+	public File mapToImg() {
+		ImgMapConverter.mapToImg(output.getPath(), loaded);
+		return output;
+	}
+}
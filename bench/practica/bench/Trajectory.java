@@ -0,0 +1,89 @@
+package practica.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import practica.engine.DroneLogic;
+import practica.engine.World;
+import practica.message.Status;
+import practica.util.Map;
+import practica.util.MapFile;
+
+/**
+ * Recorrido real del drone por un mapa, grabado una vez en el Setup de los benchmarks: los status
+ * que recibe en cada paso y la decisión que toma. Así los benchmarks miden el drone y el satélite en
+ * estados como los de una ejecución de verdad y no en un mapa vacío.
+ */
+class Trajectory {
+	/** Directorio de los mapas, relativo a la raíz del proyecto. */
+	static final String MAPS_DIR = "src/maps/";
+
+	final Map map;
+	final List<Status> statuses = new ArrayList<Status>();
+	final List<Integer> decisions = new ArrayList<Integer>();
+
+	/**
+	 * Graba el recorrido desde (0, 0), un movimiento por decisión, hasta que el drone termina.
+	 * @param mapName Nombre del fichero en src/maps.
+	 */
+	Trajectory(String mapName) {
+		map = MapFile.load(MAPS_DIR + mapName);
+		if (map == null)
+			throw new IllegalArgumentException("No se puede cargar el mapa " + mapName);
+		World world = new World(map);
+		DroneLogic drone = new DroneLogic(map.getWidth(), map.getHeigh());
+		int[] plan = new int[1];
+		while (true) {
+			Status status = world.createStatus(new Status());
+			statuses.add(status);
+			drone.update(status, plan);
+			int decision = drone.think();
+			decisions.add(decision);
+			if (decision == DroneLogic.END)
+				break;
+			world.evalueDecision(decision);
+		}
+	}
+
+	/**
+	 * @return Un drone nuevo, en la posición inicial y todavía sin status.
+	 */
+	DroneLogic newDrone() {
+		return new DroneLogic(map.getWidth(), map.getHeigh());
+	}
+
+	/**
+	 * Drone que acaba de recibir un status del recorrido y todavía no ha decidido.
+	 * @param step Índice del status.
+	 * @return El drone.
+	 */
+	DroneLogic droneAt(int step) {
+		DroneLogic drone = newDrone();
+		int[] plan = new int[1];
+		for (int i = 0; i < step; i++) {
+			drone.update(statuses.get(i), plan);
+			drone.think();
+		}
+		drone.update(statuses.get(step), plan);
+		return drone;
+	}
+
+	/**
+	 * Mundo con los primeros movimientos del recorrido ya aplicados.
+	 * @param steps Movimientos aplicados.
+	 * @return El mundo.
+	 */
+	World worldAt(int steps) {
+		World world = new World(map);
+		for (int i = 0; i < steps; i++)
+			world.evalueDecision(decisions.get(i));
+		return world;
+	}
+
+	/**
+	 * @return Número de status del recorrido.
+	 */
+	int size() {
+		return statuses.size();
+	}
+}
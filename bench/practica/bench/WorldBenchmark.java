@@ -0,0 +1,53 @@
+package practica.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import practica.engine.World;
+import practica.message.Status;
+
+/**
+ * Lo que hace el satélite en cada paso (Satelite delega en World): crear el status y leer el radar.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class WorldBenchmark {
+	@Param({"map1.png", "Challenge.png", "dead end.png"})
+	public String map;
+
+	private World world;
+	private final Status status = new Status();
+	private final int[] radar = new int[Status.RADAR_SIZE];
+
+	@Setup
+	public void setup() {
+		Trajectory trajectory = new Trajectory(map);
+		world = trajectory.worldAt(trajectory.size() / 2);
+	}
+
+	@Benchmark
+	public Status createStatus() {
+		return world.createStatus(status);
+	}
+
+	@Benchmark
+	public int[] obtenerAlrededores() {
+		world.obtenerAlrededores(radar, 0);
+		return radar;
+	}
+}
@@ -4,12 +4,20 @@ import org.apache.log4j.Logger;
 import org.apache.log4j.xml.DOMConfigurator;
 
 import practica.agent.*;
-import practica.util.ImgMapConverter;
+import practica.message.BinaryStatusCodec;
+import practica.message.StatusCodec;
+import practica.transport.InProcessTransport;
+import practica.transport.QpidTransport;
+import practica.transport.SharedMemoryTransport;
+import practica.transport.Transport;
 import practica.util.Map;
+import practica.util.MapFile;
 import practica.util.Visualizer;
 import es.upv.dsic.gti_ia.core.AgentID;
 import es.upv.dsic.gti_ia.core.AgentsConnection;
 
+import java.io.File;
+
 /**
  * 
  * @author jahiel
@@ -22,21 +30,49 @@ public class Launcher {
 	Drone drone;
 	Visualizer visualizer;
 	Map map;
+	// Codificación de los mensajes entre drone y satélite. JsonStatusCodec para el formato JSON de siempre.
+	StatusCodec codec = new BinaryStatusCodec();
+	// Transporte de los mensajes: QPID por defecto, en memoria si se lanza con el argumento "local"
+	// y por colas en memoria compartida entre procesos con "shm".
+	Transport transport;
+	// Directorio de las colas del transporte "shm"
+	static final File RING_DIR = new File(System.getProperty("java.io.tmpdir"), "practica-rings");
 
 	/**
 	 * @author jahiel
-	 * @param args
+	 * @param args Primero el transporte: "local" para que los agentes se comuniquen en memoria, sin broker,
+	 * 			   "shm" para comunicarse entre procesos de la misma máquina sin broker, o nada para QPID.
+	 * 			   Con "shm", un segundo argumento "satelite" o "drone" lanza sólo ese agente, sin visualizador.
+	 * 			   Con cualquier transporte, "enjambre N" lanza un satélite y N drones, sin visualizador; con
+	 * 			   "enjambre N virtual" cada agente va en un hilo virtual (ver AgentRuntime).
 	 */
 	public static void main(String[] args) {
 		DOMConfigurator.configure("src/Configuration/loggin.xml"); // ERR
         Logger logger = Logger.getLogger(Launcher.class);
         
-        // QPID
-        AgentsConnection.connect("localhost",5672, "test", "guest", "guest", false);
-        
         Launcher launcher = new Launcher();
         
+        if(args.length > 0 && args[0].equals("local")){
+        	launcher.transport = new InProcessTransport();
+        }else if(args.length > 0 && args[0].equals("shm")){
+        	launcher.transport = new SharedMemoryTransport(RING_DIR);
+        }else{
+        	// QPID
+        	AgentsConnection.connect("localhost",5672, "test", "guest", "guest", false);
+        	launcher.transport = QpidTransport.getInstance();
+        }
+        
         launcher.id_satelite = new AgentID("Satelite");  
+        if(args.length > 2 && args[1].equals("enjambre")){
+        	if(args.length > 3 && args[3].equals("virtual"))
+        		AgentRuntime.setMode(AgentRuntime.VIRTUAL);
+        	launcher.launchSwarm(Integer.parseInt(args[2]));
+        	return;
+        }
+        if(args.length > 1){
+        	launcher.launchOnly(args[1]);
+        	return;
+        }
 		launcher.visualizer = new Visualizer(launcher);
 		
 		//Comentar la línea anterior y descomentar esta para lanzar sin visualizador.
@@ -50,8 +86,12 @@ public class Launcher {
         try{
             System.out.println("Main: Creando agentes");
         	map = visualizer.getMapToLoad();
-        	satelite = new Satelite(id_satelite, map, visualizer);
-        	drone = new Drone(new AgentID("Drone"), map.getWidth(), map.getHeigh(), id_satelite);
+        	satelite = new Satelite(id_satelite, map, visualizer, transport);
+        	drone = new Drone(new AgentID("Drone"), map.getWidth(), map.getHeigh(), id_satelite, transport);
+        	satelite.setCodec(codec);
+        	drone.setCodec(codec);
+        	drone.setSingleRoundTrip(true);
+        	drone.setMaxPlanLength(32);
         	System.out.println("MAIN : Iniciando agentes...");
         	visualizer.setSatelite(satelite);
             satelite.start();
@@ -65,9 +105,13 @@ public class Launcher {
 	public void launchWithoutVisualizer(){
         try{
             System.out.println("Main: Creando agentes");
-        	map = ImgMapConverter.imgToMap("src/maps/dead end.png");
-        	satelite = new Satelite(id_satelite, map);
-        	drone = new Drone(new AgentID("Drone"), map.getWidth(), map.getHeigh(), id_satelite);
+        	map = MapFile.load("src/maps/dead end.png");
+        	satelite = new Satelite(id_satelite, map, transport);
+        	drone = new Drone(new AgentID("Drone"), map.getWidth(), map.getHeigh(), id_satelite, transport);
+        	satelite.setCodec(codec);
+        	drone.setCodec(codec);
+        	drone.setSingleRoundTrip(true);
+        	drone.setMaxPlanLength(32);
         	System.out.println("MAIN : Iniciando agentes...");
             satelite.start();
             drone.start();
@@ -77,6 +121,62 @@ public class Launcher {
             System.exit(-1);
         }
 	}
+	
+	/**
+	 * Lanza un satélite y varios drones contra él, sin visualizador. El satélite atiende los mensajes
+	 * con un hilo por núcleo y termina cuando han acabado todos los drones.
+	 * @param drones Número de drones.
+	 */
+	public void launchSwarm(int drones){
+        try{
+        	map = MapFile.load("src/maps/dead end.png");
+        	satelite = new Satelite(id_satelite, map, transport);
+        	satelite.setCodec(codec);
+        	satelite.setVerbose(false);
+        	satelite.setWorkers(Runtime.getRuntime().availableProcessors());
+        	satelite.setExpectedDrones(drones);
+        	Drone[] swarm = new Drone[drones];
+        	for(int i = 0; i < drones; i++){
+        		swarm[i] = new Drone(new AgentID("Drone" + i), map.getWidth(), map.getHeigh(), id_satelite, transport);
+        		swarm[i].setCodec(codec);
+        		swarm[i].setSingleRoundTrip(true);
+        		swarm[i].setMaxPlanLength(32);
+        	}
+        	System.out.println("MAIN : Iniciando " + drones + " drones...");
+        	satelite.start();
+        	for(Drone d : swarm)
+        		d.start();
+        }catch(Exception e){
+        	System.err.println("Main: Error al crear los agentes");
+			System.err.println(e.getMessage());
+            System.exit(-1);
+        }
+	}
+	
+	/**
+	 * Lanza sólo uno de los agentes, para que el otro vaya en otro proceso.
+	 * @param agent "satelite" o "drone".
+	 */
+	public void launchOnly(String agent){
+        try{
+        	map = MapFile.load("src/maps/dead end.png");
+        	if(agent.equals("satelite")){
+        		satelite = new Satelite(id_satelite, map, transport);
+        		satelite.setCodec(codec);
+        		satelite.start();
+        	}else{
+        		drone = new Drone(new AgentID("Drone"), map.getWidth(), map.getHeigh(), id_satelite, transport);
+        		drone.setCodec(codec);
+        		drone.setSingleRoundTrip(true);
+        		drone.setMaxPlanLength(32);
+        		drone.start();
+        	}
+        }catch(Exception e){
+        	System.err.println("Main: Error al crear el agente " + agent);
+			System.err.println(e.getMessage());
+            System.exit(-1);
+        }
+	}
 		
 
 }
@@ -0,0 +1,94 @@
+package practica.agent;
+
+import java.lang.reflect.Method;
+
+/**
+ * Crea los hilos en los que se ejecutan los TransportAgent. Con el modo VIRTUAL cada agente va en
+ * un hilo virtual (Java 21 o superior): cuando espera un mensaje se aparca el hilo virtual y no el
+ * hilo del sistema, así que miles de drones caben en una JVM. El proyecto compila para Java 11, por
+ * eso Thread.ofVirtual() se busca por reflexión; si no existe se usan hilos normales con una pila
+ * pequeña.
+ *
+ * Los receive de InProcessTransport y SharedMemoryTransport aparcan con LockSupport, que en un hilo
+ * virtual libera el hilo del sistema. QpidTransport tiene un hilo propio de Magentix por agente.
+ */
+public abstract class AgentRuntime {
+	public static final int PLATFORM = 0;
+	public static final int VIRTUAL = 1;
+	/** Pila de los hilos normales que sustituyen a los virtuales. */
+	public static final long FALLBACK_STACK_SIZE = 256 * 1024;
+
+	private static final Method OF_VIRTUAL, NAME, UNSTARTED, IS_VIRTUAL;
+	static {
+		Method ofVirtual = null, name = null, unstarted = null, isVirtual = null;
+		try {
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			name = builder.getMethod("name", String.class);
+			unstarted = builder.getMethod("unstarted", Runnable.class);
+			isVirtual = Thread.class.getMethod("isVirtual");
+		} catch (Exception e) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		NAME = name;
+		UNSTARTED = unstarted;
+		IS_VIRTUAL = isVirtual;
+	}
+
+	private static volatile int mode = PLATFORM;
+
+	/**
+	 * @return true si la JVM tiene hilos virtuales.
+	 */
+	public static boolean isVirtualAvailable() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * Modo de los hilos de los agentes que se lancen a partir de ahora.
+	 * @param mode PLATFORM o VIRTUAL.
+	 */
+	public static void setMode(int mode) {
+		AgentRuntime.mode = mode;
+	}
+
+	public static int getMode() {
+		return mode;
+	}
+
+	/**
+	 * Crea (sin arrancarlo) el hilo de un agente según el modo actual.
+	 * @param task Lo que ejecuta el hilo.
+	 * @param name Nombre del hilo.
+	 * @return El hilo.
+	 */
+	public static Thread newThread(Runnable task, String name) {
+		if (mode == VIRTUAL) {
+			if (OF_VIRTUAL != null) {
+				try {
+					Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), name);
+					return (Thread) UNSTARTED.invoke(builder, task);
+				} catch (Exception e) {
+					throw new IllegalStateException("No se puede crear el hilo virtual de " + name, e);
+				}
+			}
+			return new Thread(null, task, name, FALLBACK_STACK_SIZE);
+		}
+		return new Thread(task, name);
+	}
+
+	/**
+	 * @param thread Hilo.
+	 * @return true si es un hilo virtual.
+	 */
+	public static boolean isVirtual(Thread thread) {
+		if (IS_VIRTUAL == null)
+			return false;
+		try {
+			return (Boolean) IS_VIRTUAL.invoke(thread);
+		} catch (Exception e) {
+			return false;
+		}
+	}
+}
@@ -1,21 +1,21 @@
 package practica.agent;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 
+import practica.engine.DroneLogic;
 import practica.util.Map;
-import practica.util.Pair;
 import es.upv.dsic.gti_ia.core.AgentID;
-import es.upv.dsic.gti_ia.core.SingleAgent;
 import es.upv.dsic.gti_ia.core.ACLMessage;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import practica.message.CodecException;
+import practica.message.JsonStatusCodec;
+import practica.message.Status;
+import practica.message.StatusCodec;
+import practica.transport.QpidTransport;
+import practica.transport.Transport;
 
 /**
  * Drone que recorre el mapa para buscar al objetivo.
@@ -25,392 +25,111 @@ import org.json.JSONObject;
  * 
  */ 
 
-public class Drone extends SingleAgent {
+public class Drone extends TransportAgent {
 	private final int ESTADOREQUEST = 0, ESTADOINFORM = 1;
-	private final int LIMIT_MOVEMENTS;
 	private boolean exit;
-	private boolean goal;
 	private int estado;
-	private int posX;
-	private int posY;
-	private float angle;
-	private float distance;
-	private int[] surroundings;
-	private Map droneMap;
-	private float distanceMin;
-	private int counterStop;
-	public static final int NORTE = 3;
-	public static final int OESTE = 2;
-	public static final int SUR = 1;
-	public static final int ESTE = 0;
-	public static final int END = -1;
+	// Lo que sabe el drone y cómo decide
+	private DroneLogic logic;
+	public static final int NORTE = DroneLogic.NORTE;
+	public static final int OESTE = DroneLogic.OESTE;
+	public static final int SUR = DroneLogic.SUR;
+	public static final int ESTE = DroneLogic.ESTE;
+	public static final int END = DroneLogic.END;
 	
 	private AgentID sateliteID;
 	
-	private boolean dodging = false;
-	private int betterMoveBeforeDodging = -1;
+	// Decisiones tomadas, sin crear un Integer por paso. Crece al doble cuando se llena.
+	private int[] trazaEjecucion;
+	private int trazaLength;
 	
-	private ArrayList<Integer> trazaEjecucion;
+	private StatusCodec codec;
+	private Status status;
+	private boolean singleRoundTrip = false;
+	private int maxPlanLength = 1;
+	private int[] plan = new int[Status.MAX_PLAN_LENGTH];
+	private int radarRadius = 1;
+	// Traza de cada paso por consola
+	private boolean verbose = true;
 
 	public Drone(AgentID aid, int mapWidth, int mapHeight, AgentID sateliteID) throws Exception {
-		super(aid);
-		surroundings = new int[9];
-		droneMap = new Map(mapWidth, mapHeight);
-		//Ahora el limite depende del tamaño del mapa
-		LIMIT_MOVEMENTS = mapWidth + mapHeight;
-		this.sateliteID = sateliteID;
-		posX = 0;
-		posY = 0;
-		distanceMin = 999999;
-		counterStop = 0;
-		trazaEjecucion = new ArrayList<Integer>();
+		this(aid, mapWidth, mapHeight, sateliteID, QpidTransport.getInstance());
 	}
-	
-	/**
-	 * Se comprueba si el movimiento realizado por el Drone a mejorado la distancia absoluta con 
-	 * respecto a la baliza:
-	 *  - Si la mejora se almacena esa nueva distancia minima alcanzada por el drone.
-	 *  - En caso contraria se comprueba que no se halla alcanzado el tope de movimientos permitidos
-	 *  sin mejorar la distancia. Si se supera el tope de movimientos se finaliza la ejecución sin
-	 *  haber encontrado solución al problema.
-	 * @param distance Distancia absoluta a la que se encuentra el drone con respecto a la baliza.
-	 * @return Se devuelve True si se debe finalizar y False en caso contrario.
-	 * @author jahiel
-	 */
-	private boolean stop(float distance){
-		
-		if(distance < distanceMin){
-			distanceMin = distance;
-			counterStop = 0;
-			return false;
-		}else
-			counterStop++;
-		
-		if(counterStop >= LIMIT_MOVEMENTS)
-			return true;
-		else
-			return false;
 
+	public Drone(AgentID aid, int mapWidth, int mapHeight, AgentID sateliteID, Transport transport) throws Exception {
+		super(aid, transport);
+		logic = new DroneLogic(mapWidth, mapHeight);
+		logic.setVerbose(true);
+		this.sateliteID = sateliteID;
+		trazaEjecucion = new int[256];
+		trazaLength = 0;
+		codec = new JsonStatusCodec();
+		status = new Status();
 	}
+	
 	/**
-	 * Método donde el dron decide a qué dirección mover.
+	 * Método donde el dron decide a qué dirección mover. La escalada está en DroneLogic.
 	 * @author Dani
 	 * @return dirección a la que se moverá.
 	 */
 	public int think(){
-		/*La estructura del agente esta formada por task accomplishing behaviours (TAB).
-		 *Para que se vean mejor cuales son las comprobaciones de estos TAB pondre en los comentarios TABi donde i
-		 *es el orden del TAB empezando por el más crítico (i=1) al menos crítico.
-		 */
-		
-		//Comprobacion de que no hemos alcanzado el limite de movimientos sin mejorar la distancia
-		
-		if(stop(distance))
-			return END;
-		
-		//TAB1 Si hemos llegado al objetivo hemos terminado
-		if(goal)
-			return END;
-		
-		ArrayList<Pair> mispares, ordenados;
-		
-		mispares = getAllMovements();		
-		
-		//Ordenamos el array segun la distancia (de menor a mayor)
-		ordenados=new ArrayList<Pair>(mispares);
-		Collections.sort(ordenados, new Comparator<Pair>(){
-			public int compare(Pair p1, Pair p2){
-				if(p1.getFirst()<p2.getFirst()){
-					return -1;
-				}else{
-					if(p1.getFirst()>p2.getFirst()){
-						return 1;
-					}else{
-						return 0;
-					}
-				}
-			}
-		});
-		
-		System.out.println("Dodging: " + dodging);
-		for(int i=0; i<4; i++){
-			System.out.println(ordenados.get(i).getFirst() + "," + ordenados.get(i).getSecond() + "," + ordenados.get(i).getThird());
-		}
-		
-		
-		//TAB2 Si estamos esquivando y podemos hacer el movimiento que pretendíamos cuando entramos en el modo entonces lo hacemos
-		if(dodging && mispares.get(betterMoveBeforeDodging).getThird()){
-			dodging=false;
-			System.out.println("Saliendo dodging: " + betterMoveBeforeDodging);
-			return betterMoveBeforeDodging;
-		}
-		
-		//TAB3 Si estamos esquivando y podemos hacer un movimiento que nos deje cerda de un obstaculo lo hacemos
-		
-		//Al lado de un obstaculo (en un movimiento)
-		if(dodging)
-			for(Pair pair: ordenados){
-				int move = pair.getSecond();
-				if(pair.getThird() && (getCorner(move, (move+1)%4) == Map.OBSTACULO || getCorner(move, (move+3)%4) == Map.OBSTACULO))
-					return move;
-			}
-		
-		//Al lado de un obstaculo (en dos movimientos)
-		if(dodging){
-			int [] validMovs=getValidMovements();
-			for(Pair pair: ordenados){
-				int move = pair.getSecond();
-				if(pair.getThird() && (validMovs[(move+1)%4] == Map.OBSTACULO || validMovs[(move+3)%4] == Map.OBSTACULO))
-					return move;
-			}
-		}
-		
-		
-		//TAB4 A partir de aqui comienza la ejecucion del algoritmo de escalada
-		
-		//Si podemos hacer el mejor movimiento lo hacemos
-		//Si no podemos y es debido a que hay un obstaculo pasamos al modo esquivar
-		if(ordenados.get(0).getThird()){
-			return ordenados.get(0).getSecond();
-		}else{
-			int [] validMov=getValidMovements();
-			if(validMov[ordenados.get(0).getSecond()]==Map.OBSTACULO && !dodging){
-				dodging=true;
-				betterMoveBeforeDodging=ordenados.get(0).getSecond();
-				System.out.println("Entrando dodging: "+betterMoveBeforeDodging);
-			}
-		}
-		
-		int second=-1, third=-1;
-		//Para hallar los dos mejores movimientos posibles (si existen) recorremos el array de peor a mejor
-		//Si un movimiento es posible entonces hemos encontrado uno mejor que los que encontrasemos antes
-		//Desplazamos los valores encontrados antes (siempre se queda en second el mejor posible y en third el segundo mejor posible)
-		for(int i=3; i>=0; i--){
-			if(ordenados.get(i).getThird()){
-				third = second;
-				second = ordenados.get(i).getSecond();
-			}
-		}
-		
-		//Si third no existe nuestra unica posibilidad es second
-		if(third==-1)
-			return second;
-		
-		//Si second no existe (y por lo tanto third tampoco) entonces no tenemos movimientos
-		if(second==-1)
-			return END;
-		
-		
-		//Ahora comprobamos si existe empate entre ambos (distancias parecidas).
-		//Si no hay empate nos quedamos con el segundo
-		//El valor de margen de error debe ser ajustado "a mano" en caso de usar distancias.
-		//En caso de usar el angulo se puede poneer un valor mejor pero los calculos son mas coñazo
-		float error=1.0f;
-		int better=ordenados.get(0).getSecond(), decision;
-		float distSecond=mispares.get(second).getFirst(), distThird=mispares.get(third).getFirst();
-		if(Math.abs(distSecond-distThird)<error && dodging && third==(second+2)%4){
-			int cornerSecond = getCorner(better, second), cornerThird = getCorner(better, third);
-			
-			//El empate se decide por los obstaculos
-			//Si la esquina del tercero esta libre pero la del segundo no, nos quedamos con esa
-			//En cualquier otro caso nos quedamos con el segundo mejor movimiento
-			if(cornerThird==Map.LIBRE && cornerSecond==Map.OBSTACULO){
-				decision = third;
-			}else{
-				decision = second;
-			}
-				
-		}else{
-			decision = second;
-		}
-		
-		return decision;
+		return logic.think();
 	}
 
+
 	/**
-	 * Calcula la esquina que rodean dos posiciones.
-	 * @param mov1 Movimiento que nos dejaria en la primera posición 
-	 * @param mov2 Movimiento que nos dejaria en la segunda posición
-	 * @return Valor del surrounding para esa esquina
+	 * Cambia la codificación de los mensajes. El satélite tiene que usar la misma.
+	 * @param codec Codificación de status y decisiones.
 	 */
-	private int getCorner(int mov1, int mov2) {
-		//por si las moscas
-		if(mov1 == (mov2 + 2) % 4)
-			return surroundings[4];
-
-		switch(mov1){
-			case ESTE:
-				return ((mov2==SUR) ? surroundings[8] : surroundings[2]);
-			case SUR:
-				return ((mov2==OESTE) ? surroundings[6] : surroundings[8]);
-			case OESTE:
-				return ((mov2==NORTE) ? surroundings[0] : surroundings[6]);
-			case NORTE:
-				return ((mov2==ESTE) ? surroundings[2] : surroundings[0]);
-			default:
-				return surroundings[4];
-		}
+	public void setCodec(StatusCodec codec) {
+		this.codec = codec;
 	}
 
 	/**
-	 * Calcula las distancias y las condiciones de los cuatro posibles movimientos.
-	 * @return Array con los movimientos
+	 * Elige el protocolo con el satélite. Con el de dos fases (el de siempre) cada paso es pedir el status
+	 * y después enviar la decisión esperando confirmación. Con el de una sola ida y vuelta la respuesta a la
+	 * decisión trae el siguiente status, así que cada paso cuesta la mitad de mensajes.
+	 * @param singleRoundTrip true para una sola ida y vuelta por paso.
 	 */
-	private ArrayList<Pair> getAllMovements(){
-		ArrayList<Pair> mispares=new ArrayList<Pair>();
-		int[] validSqr = getValidSquares();
-		boolean[] basicond=new boolean[4];
-
-		double posiOX=0,posiOY=0;
-		float calculoDist=0;
-		
-
-		basicond[ESTE]= 	validSqr[5]==Map.LIBRE	&& !(validSqr[2]==Map.VISITADO || validSqr[8]==Map.VISITADO);
-		basicond[SUR]= 		validSqr[7]==Map.LIBRE	&& !(validSqr[6]==Map.VISITADO || validSqr[8]==Map.VISITADO);
-		basicond[OESTE]= 	validSqr[3]==Map.LIBRE	&& !(validSqr[0]==Map.VISITADO || validSqr[6]==Map.VISITADO);
-		basicond[NORTE]= 	validSqr[1]==Map.LIBRE	&& !(validSqr[0]==Map.VISITADO || validSqr[2]==Map.VISITADO);
-
-		if(!(basicond[ESTE] || basicond[SUR] || basicond[OESTE] || basicond[NORTE])){
-			basicond[ESTE]= 	validSqr[5]==Map.LIBRE	&& !(validSqr[2]==Map.VISITADO && validSqr[8]==Map.VISITADO);
-			basicond[SUR]= 		validSqr[7]==Map.LIBRE	&& !(validSqr[6]==Map.VISITADO && validSqr[8]==Map.VISITADO);
-			basicond[OESTE]= 	validSqr[3]==Map.LIBRE	&& !(validSqr[0]==Map.VISITADO && validSqr[6]==Map.VISITADO);
-			basicond[NORTE]= 	validSqr[1]==Map.LIBRE	&& !(validSqr[0]==Map.VISITADO && validSqr[2]==Map.VISITADO);
-		}	
-		
-		posiOX= (posX + (Math.cos(angle) * distance));
-		posiOY= (posY + (Math.sin(angle)*distance));
-
-		//Creamos el array con todos los movimientos, incluyendo la distancia al objetivo, el movimiento en si, y si es valido o no
-		calculoDist= (float) Math.sqrt(Math.pow((posiOX-(posX+1)),2)+Math.pow((posiOY-posY), 2));
-		mispares.add(new Pair(calculoDist,ESTE,basicond[ESTE]));
-		
-		calculoDist=(float) Math.sqrt(Math.pow((posiOX-posX),2)+Math.pow((posiOY-(posY+1)), 2));
-		mispares.add(new Pair(calculoDist,SUR,basicond[SUR]));
-		
-		calculoDist=(float) Math.sqrt(Math.pow((posiOX-(posX-1)),2)+Math.pow((posiOY-posY), 2));
-		mispares.add(new Pair(calculoDist,OESTE,basicond[OESTE]));
-		
-		calculoDist=(float) Math.sqrt(Math.pow((posiOX-posX),2)+Math.pow((posiOY-(posY-1)), 2));
-		mispares.add(new Pair(calculoDist,NORTE,basicond[NORTE]));
-	
-		return mispares;
+	public void setSingleRoundTrip(boolean singleRoundTrip) {
+		this.singleRoundTrip = singleRoundTrip;
 	}
-	
+
 	/**
-	 * decision funcion para tomar la decisión de movimiento
-	 * se busca la distancia mas pequeña al objetivo en caso de empate se coge siempre la primera.
-	 * @param datos
-	 * @return -1(error) o decision
+	 * Máximo de movimientos que el drone puede enviar en un plan. Sólo se usa con el protocolo de una sola
+	 * ida y vuelta; con 1 (por defecto) se envía un movimiento por mensaje.
+	 * @param maxPlanLength Movimientos por plan, como mucho Status.MAX_PLAN_LENGTH.
 	 */
-	private int decision(ArrayList<Pair> datos){
-		float min=9999999;
-		int i=0;
-		int po=-1;
-		while(i<datos.size()){
-
-			if(datos.get(i).getFirst()<min){
-				po=i;
-				min=datos.get(i).getFirst();
-			}
-			i++;
-		}
-		if(min==9999999){
-			return -1;
-		}
-		else{
-			return datos.get(po).getSecond();
-		}
+	public void setMaxPlanLength(int maxPlanLength) {
+		this.maxPlanLength = Math.max(1, Math.min(maxPlanLength, Status.MAX_PLAN_LENGTH));
 	}
 
-	
 	/**
-	 * Método para obtener un array con los movimientos libres del drone usando la memoria del mismo.
-	 * @author Dani
-	 * @author Jonay
-	 * @return Un array con lo que hay en las posiciones Este, Sur, Oeste y Norte a las que se podría mover, en ese orden.
+	 * Radio del radar que se pide al satélite. Con 1 (por defecto) sólo llegan las 9 casillas de siempre;
+	 * con más, el status trae también la ventana de (2r+1)x(2r+1) casillas y el drone apunta en su mapa
+	 * los obstáculos y las bolsas sin salida que ve en ella.
+	 * @param radarRadius Radio, entre 1 y Status.MAX_RADAR_RADIUS.
 	 */
-	// POST DIAGRAMA DE CLASES
-	private int[] getValidMovements() {
-		int movimientosLibres[] = new int[4];
-		/* TODO: Revisar la suma de valores. ¿Qué pasa si el drone ya ha guardado que es una posición
-		 * ocupada (un 1) y el satélite le envía otro 1 de que está ocupada? ¿Da un 2 de visitado?
-		 * Estos errores ocurrirán cuando el dron guarde en su mapa lo que hay en las posiciones.
-		 */
-		/* TODO (Alberto)
-		 * El drone no guarda los obstaculos en el mapa, solo si los ha visitado o no.
-		 * Los posible valores de la suma serian:
-		 * Vacio y no visitado = 0
-		 * Vacio y visitado = 2
-		 * Obstaculo = 1
-		 * Para mi estan bien. No veo el fallo.
-		 * 
-		 * Ya si veo el fallo
-		 */
-		// CAMBIO REALIZADO: El norte puesto como posY-1 y sur posY+1 (estaba al revés)
-		/*movimientosLibres[NORTE] = surroundings[1] + droneMap.getValue(posX, posY - 1);
-		// La siguiente línea de código ¡PETA! porque intenta acceder a la posición X = -1 (arreglado)
-		movimientosLibres[OESTE] = surroundings[3] + droneMap.getValue(posX - 1, posY);
-		movimientosLibres[SUR] = surroundings[7] + droneMap.getValue(posX, posY + 1);
-		movimientosLibres[ESTE] = surroundings[5] + droneMap.getValue(posX + 1, posY);
-		return movimientosLibres;*/
-		
-		if(surroundings[1]==Map.LIBRE || surroundings[1]==Map.OBJETIVO){
-			movimientosLibres[NORTE] = droneMap.getValue(posX, posY - 1);
-		}else{
-			movimientosLibres[NORTE] = surroundings[1];
-		}
-		if(surroundings[3]==Map.LIBRE || surroundings[3]==Map.OBJETIVO){
-			movimientosLibres[OESTE] = droneMap.getValue(posX-1, posY);
-		}else{
-			movimientosLibres[OESTE] = surroundings[3];
-		}
-		if(surroundings[7]==Map.LIBRE || surroundings[7]==Map.OBJETIVO){
-			movimientosLibres[SUR] = droneMap.getValue(posX, posY + 1);
-		}else{
-			movimientosLibres[SUR] = surroundings[7];
-		}
-		if(surroundings[5]==Map.LIBRE || surroundings[5]==Map.OBJETIVO){
-			movimientosLibres[ESTE] = droneMap.getValue(posX + 1, posY);
-		}else{
-			movimientosLibres[ESTE] = surroundings[5];
-		}
-		
-		return movimientosLibres;
+	public void setRadarRadius(int radarRadius) {
+		this.radarRadius = Math.max(1, Math.min(radarRadius, Status.MAX_RADAR_RADIUS));
 	}
-	
+
 	/**
-	 * Método para obtener un array con los valores combinados de surroundings y el mapa
-	 * @return Un array con lo que hay en las posiciones de alrededor. Los valores posibles son LIBRE, OBSTACULO y VISITADO
+	 * Modo de decisión: la escalada de siempre o D* Lite sobre el mapa del drone (ver DroneLogic.setMode).
+	 * @param mode DroneLogic.HILL_CLIMBING o DroneLogic.DSTAR_LITE.
 	 */
-	private int[] getValidSquares() {
-		int movimientosLibres[] = new int[9];
-
-		for(int i=0; i<3; i++)
-			for(int j=0; j<3; j++)
-				if(surroundings[i+j*3]==Map.LIBRE || surroundings[i+j*3]==Map.OBJETIVO){
-					movimientosLibres[i+j*3]=droneMap.getValue(posX+i-1, posY+j-1);
-				}else{
-					movimientosLibres[i+j*3]=surroundings[i+j*3];
-				}
-		
-		return movimientosLibres;
+	public void setMode(int mode) {
+		logic.setMode(mode);
 	}
 
 	/**
-	 * createStatus: Crea estado para un objeto JSON de tipo drone
-	 * @return estado
-	 * @throws JSONException
+	 * Activa o desactiva la traza de cada paso por consola (activada por defecto). Con miles de drones
+	 * en la misma JVM conviene desactivarla: todos escriben en el mismo System.out.
+	 * @param verbose true para escribirla.
 	 */
-	private JSONObject createStatus() throws JSONException {
-		int movimiento = 0;
-
-		JSONObject estado = new JSONObject();
-		estado.put("connected", "Yes");
-		estado.put("ready", "Yes");
-		estado.put("movimiento", movimiento);
-
-		return estado;
-
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+		logic.setVerbose(verbose);
 	}
 
 	/**
@@ -418,21 +137,20 @@ public class Drone extends SingleAgent {
 	 * @return el mapa del drone.
 	 */
 	public Map getDroneMap() {
-		return droneMap;
+		return logic.getDroneMap();
 	}
 
 	/**
 	 * sendInform se envia señal de confrimación al agente junto con su acción.
 	 * @param id
-	 * @param dec
+	 * @param dec Decisión ya codificada
 	 */
 
-	private void sendInform(AgentID id, JSONObject dec) {
+	private void sendInform(AgentID id, String dec) {
 		ACLMessage msg = new ACLMessage(ACLMessage.REQUEST);
 		msg.setSender(this.getAid());
 		msg.addReceiver(id);
-		// jsonobject
-		msg.setContent(dec.toString());
+		msg.setContent(dec);
 		this.send(msg);
 
 		try {
@@ -442,7 +160,8 @@ public class Drone extends SingleAgent {
 			Logger.getLogger(Drone.class.getName()).log(Level.SEVERE, null, ex);
 		}
 		if (msg.getPerformative().equals("INFORM")) {
-			System.out.println("Confirmo continuacion");
+			if (verbose)
+				System.out.println("Confirmo continuacion");
 
 		} else {
 			exit = true;
@@ -454,14 +173,43 @@ public class Drone extends SingleAgent {
 	 * receiveStatus metodo para comunicar al satélite que le envie información.
 	 * @author Jonay
 	 * @param id
-	 * @param dec
 	 */
-	private void receiveStatus(AgentID id, JSONObject dec) {
+	private void receiveStatus(AgentID id) {
+		String request = null;
+		if (radarRadius > 1) {
+			try {
+				request = codec.encodeStatusRequest(radarRadius);
+			} catch (CodecException ex) {
+				Logger.getLogger(Drone.class.getName()).log(Level.SEVERE, null, ex);
+			}
+		}
+		sendAndReceiveStatus(id, request);
+	}
+
+	/**
+	 * Protocolo de una sola ida y vuelta: se envía la decisión y la respuesta del satélite
+	 * ya trae el status de la nueva posición.
+	 * @param id
+	 * @param dec Decisión ya codificada
+	 */
+	private void sendDecision(AgentID id, String dec) {
+		sendAndReceiveStatus(id, dec);
+	}
+
+	/**
+	 * Envía un REQUEST (vacío, con la petición del radio del radar o con la decisión) y recoge el status
+	 * de la respuesta.
+	 * @param id
+	 * @param dec Contenido del REQUEST
+	 */
+	private void sendAndReceiveStatus(AgentID id, String dec) {
 		ACLMessage msg = new ACLMessage(ACLMessage.REQUEST);
 
 		msg.setSender(this.getAid());
 		msg.addReceiver(id);
-		msg.setContent(null);
+		msg.setContent(dec);
+		if (dec != null)
+			msg.setConversationId(Satelite.PASO);
 		this.send(msg);
 		try {
 			msg = receiveACLMessage();
@@ -472,55 +220,23 @@ public class Drone extends SingleAgent {
 		}
 		if (msg.getPerformative().equals("INFORM")) {
 
-			JSONObject contenido = null;
-			try {
-				contenido = new JSONObject(msg.getContent());
-			} catch (JSONException ex) {
-				ex.printStackTrace();
-				Logger.getLogger(Drone.class.getName()).log(Level.SEVERE, null, ex);
-			}
 			try {
-				JSONObject aux = new JSONObject();
-				String campo=null;
-				aux = contenido.getJSONObject("gps");
-				//actualizamos el mapa del drone antes de recoger las nuevas posiciones X e Y.
-				droneMap.setvalue(posX,posY,Map.VISITADO);
-				posX = aux.getInt("x");
-				posY = aux.getInt("y");
-
-				aux = contenido.getJSONObject("gonio");
-				angle = (float) aux.getDouble("alpha");
-				//Recoger distancia.
-				distance= (float) aux.getDouble("dist");				
-				
-				//Recogida y comprobación del campo goal.
-				campo= contenido.getString("goal");
-				if(campo.equals("Si")){
-					goal=true;
-				}
-				else if(campo.equals("No")){
-					goal=false;
-				}
-				// Corregido, alpha estaba en aux y no en contenido
+				codec.decodeStatus(msg.getContent(), status);
+				logic.update(status, plan);
+				//Si la respuesta es a un plan, los movimientos intermedios también van a la traza.
+				for (int k = 1; k < status.getMovesApplied(); k++)
+					addTraza(plan[k]);
 
-				// surroundings=(int[]) contenido.get("radar"); // No se puede hacer así
-				// Una opción sería usando JSONArray, se tendría que mirar como pasarlo a un array normal tras sacarlo
-				JSONArray jsArray = contenido.getJSONArray("radar");
-				
-				/* TODO: recupera bien lo que tiene al rededor (lo muestro por consola bien) 
-				 * Pero parece que si lo pongo no termina en el mapa1 y si no lo pongo sí.
-				 */
-				
-				for (int i=0; i < jsArray.length(); i++){
-					surroundings[i] = jsArray.getInt(i);
-				}
+				int[] surroundings = logic.getSurroundings();
 				// Compruebo si se reciben bien los alrededores:
-				System.out.println("Alrededores del Dron: ");
-				System.out.println("|"+surroundings[0]+", "+surroundings[1]+", "+surroundings[2]+"|");
-				System.out.println("|"+surroundings[3]+", "+surroundings[4]+", "+surroundings[5]+"|");
-				System.out.println("|"+surroundings[6]+", "+surroundings[7]+", "+surroundings[8]+"|");
+				if (verbose) {
+					System.out.println("Alrededores del Dron: ");
+					System.out.println("|"+surroundings[0]+", "+surroundings[1]+", "+surroundings[2]+"|");
+					System.out.println("|"+surroundings[3]+", "+surroundings[4]+", "+surroundings[5]+"|");
+					System.out.println("|"+surroundings[6]+", "+surroundings[7]+", "+surroundings[8]+"|");
+				}
 						
-			} catch (JSONException ex) {
+			} catch (CodecException ex) {
 				System.out.println("numeritos");
 				ex.printStackTrace();
 				Logger.getLogger(Drone.class.getName()).log(Level.SEVERE, null, ex);
@@ -537,10 +253,20 @@ public class Drone extends SingleAgent {
 	 * @author Jonay
 	 */
 	@Override
-	public void finalize() {
+	protected void onFinish() {
 		System.out.println("Agente " + this.getName() + " ha finalizado");
 		mostrarTrazaEjecucion();
-		super.finalize();
+		super.onFinish();
+	}
+
+	/**
+	 * Añade un movimiento a la traza de ejecución.
+	 * @param decision Movimiento o END.
+	 */
+	private void addTraza(int decision) {
+		if (trazaLength == trazaEjecucion.length)
+			trazaEjecucion = Arrays.copyOf(trazaEjecucion, trazaLength * 2);
+		trazaEjecucion[trazaLength++] = decision;
 	}
 
 	/**
@@ -550,8 +276,8 @@ public class Drone extends SingleAgent {
 	 */
 	private void mostrarTrazaEjecucion() {
 		System.out.print("Traza de la ejecución: ");
-		for (int i : trazaEjecucion){
-			switch(i){
+		for (int k = 0; k < trazaLength; k++){
+			switch(trazaEjecucion[k]){
 			case NORTE:
 				System.out.print("N");
 				break;
@@ -575,29 +301,21 @@ public class Drone extends SingleAgent {
 	 */
 	@Override
 	protected void execute() {
-		ACLMessage message = new ACLMessage();
-		JSONObject status = null;
 		System.out.println("Agente " + this.getName() + " en ejecución");
 
 		int decision = 0;
 
-		try {
-			status = createStatus();
-		} catch (JSONException ex) {
-			ex.printStackTrace();
-			Logger.getLogger(Drone.class.getName()).log(Level.SEVERE, null, ex);
-		}
 		while (!exit) {
 			switch (estado) {
 			case ESTADOREQUEST:
-				receiveStatus(sateliteID, null);
+				receiveStatus(sateliteID);
 				estado = ESTADOINFORM;
 				break;
 			case ESTADOINFORM:
 				decision = think();		
 				
 				// Guardo la decisión en un array para mostrar al final una traza de ejecución
-				trazaEjecucion.add(decision);
+				addTraza(decision);
 
 				if (decision < -1 || decision > 3) {
 					ACLMessage fallo = new ACLMessage(ACLMessage.FAILURE);
@@ -609,16 +327,30 @@ public class Drone extends SingleAgent {
 					if(decision==END){
 						exit=true;
 					}
+					String content = null;
 					try {
-						status.remove("decision");
-						System.out.println("decision " + decision);
-						status.put("decision", decision);
-					} catch (JSONException ex) {
+						if (verbose)
+							System.out.println("decision " + decision);
+						int length = (singleRoundTrip && decision != END) ? logic.planLength(decision, maxPlanLength) : 1;
+						if (length > 1) {
+							// Tramo despejado: se envían varios movimientos iguales en un solo mensaje
+							for (int i = 0; i < length; i++)
+								plan[i] = decision;
+							content = codec.encodePlan(plan, length);
+						} else {
+							content = codec.encodeDecision(decision);
+						}
+					} catch (CodecException ex) {
 						ex.printStackTrace();
 						Logger.getLogger(Drone.class.getName()).log(Level.SEVERE, null, ex);
 					}
-					sendInform(sateliteID, status);
-					estado = ESTADOREQUEST;
+					if (singleRoundTrip && decision != END) {
+						// La respuesta a la decisión ya es el siguiente status
+						sendDecision(sateliteID, content);
+					} else {
+						sendInform(sateliteID, content);
+						estado = ESTADOREQUEST;
+					}
 
 				}
 				break;
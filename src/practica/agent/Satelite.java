@@ -3,19 +3,41 @@ package practica.agent;
 
 import es.upv.dsic.gti_ia.core.ACLMessage;
 import es.upv.dsic.gti_ia.core.AgentID;
-import es.upv.dsic.gti_ia.core.SingleAgent;
 
-import org.json.JSONArray;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import practica.util.GPSLocation;
+import practica.engine.World;
+import practica.message.CodecException;
+import practica.message.JsonStatusCodec;
+import practica.message.Status;
+import practica.message.StatusCodec;
+import practica.transport.QpidTransport;
+import practica.transport.Transport;
+import practica.util.AtomicPackedStorage;
+import practica.util.MapStorage;
+import practica.util.MappedStorage;
+import practica.util.OverlayStorage;
+import practica.util.ClusterGraph;
+import practica.util.GoalDistanceField;
+import practica.util.GoalIndex;
 import practica.util.ImgMapConverter;
 import practica.util.Map;
+import practica.util.MapFile;
 import practica.util.Visualizer;
 
 /**
- * Satélite omnisciente que guía al drone para que llegue al objetivo. 
+ * Satélite omnisciente que guía a los drones para que lleguen al objetivo. Cada drone tiene su
+ * propia sesión (posición y estado de la conversación) y todos comparten el mapa de seguimiento,
+ * que admite escrituras concurrentes. Con setWorkers(n) los mensajes de drones distintos se atienden
+ * en paralelo.
  * @author Jahiel
  * @author Dani
  * @author Jonay
@@ -23,12 +45,25 @@ import practica.util.Visualizer;
  * 
  */
 
-public class Satelite extends SingleAgent {
+public class Satelite extends TransportAgent {
 	private final int SolicitudStatus = 0, EsperarInform = 1; // Estos nombres no me gustan
-	private int state;
+	/** Conversación de los REQUEST que traen una decisión en el protocolo de una sola ida y vuelta. */
+	public static final String PASO = "paso";
 	private Map mapOriginal, mapSeguimiento;
-	private GPSLocation gps;
-	private double goalPosX, goalPosY;
+	private GoalIndex goals;
+	// Campo de distancias hasta el objetivo, compartido por todas las sesiones; null si no se envía
+	private GoalDistanceField distanceField;
+	// Abstracción para buscar el camino con HPA* cuando no hay campo; null si no se usa
+	private ClusterGraph clusterGraph;
+	// Sesiones por nombre del drone
+	private ConcurrentHashMap<String, DroneSession> sessions = new ConcurrentHashMap<String, DroneSession>();
+	private StatusCodec codec;
+	private int workers = 1;
+	private ExecutorService pool;
+	private int expectedDrones = 1;
+	private AtomicInteger finishedDrones = new AtomicInteger();
+	// Posición de cada paso por consola
+	private boolean verbose = true;
 
 	private Visualizer visualizer;
 	private boolean usingVisualizer;
@@ -39,38 +74,47 @@ public class Satelite extends SingleAgent {
 	 * @author Danij
 	 */ 
 	public Satelite(AgentID sat, Map mapa) throws Exception{
-		super(sat);
-		mapOriginal = new Map(mapa);
-		mapSeguimiento = new Map(mapa);
-		state = SolicitudStatus;
-		gps = new GPSLocation();
-		
-		int f=mapOriginal.getHeigh();
-		int c=mapOriginal.getWidth();
-		int suma_x=0, suma_y=0, cont=0;
-		
-		for(int i=0; i<f; i++){
-		    for(int j=0; j<c; j++){
-		        if(mapOriginal.getValue(j,i)==Map.OBJETIVO){
-		            suma_x+=j;
-		            suma_y+=i;
-		            cont++;
-		        }
-		    }
-		}
-		goalPosX=suma_x/(float)cont;
-		goalPosY=suma_y/(float)cont;
-
-		mapSeguimiento.setvalue(0, 0, Map.VISITADO); // añadido esto que faltaba
+		this(sat, mapa, QpidTransport.getInstance());
+	}
+	/**
+	 * Constructor sin visualizador con un transporte concreto
+	 */ 
+	public Satelite(AgentID sat, Map mapa, Transport transport) throws Exception{
+		super(sat, transport);
+		// Zonas objetivo: vienen en el .map o se calculan una vez por mapa cargado y se comparten entre copias
+		goals = mapa.getGoalIndex();
+		// Sólo se lee, así que se comparte: un mapa proyectado sigue sin pasar por el heap
+		mapOriginal = mapa;
+		mapSeguimiento = new Map(trackingStorage(mapa));
+		codec = new JsonStatusCodec();
 		
 		usingVisualizer = false;
 	}
+	/**
+	 * Almacenamiento del mapa de seguimiento, que escriben a la vez todos los drones (cada celda con un
+	 * compareAndSet). Si el mapa está proyectado en un fichero puede no caber en el heap, así que sólo se
+	 * guardan las celdas que cambian sobre él (OverlayStorage); si no, se copia a 2 bits por celda.
+	 * @param mapa Mapa original.
+	 * @return El almacenamiento.
+	 */
+	private static MapStorage trackingStorage(Map mapa) {
+		if (mapa.getStorage() instanceof MappedStorage)
+			return new OverlayStorage(mapa.getStorage());
+		return AtomicPackedStorage.copyOf(mapa);
+	}
+
 	/**
 	 * Constructor con visualizador
 	 * @author Dani
 	 */ 
 	public Satelite(AgentID sat, Map mapa, Visualizer v) throws Exception{
-		this (sat, mapa);		
+		this (sat, mapa, v, QpidTransport.getInstance());
+	}
+	/**
+	 * Constructor con visualizador y un transporte concreto
+	 */ 
+	public Satelite(AgentID sat, Map mapa, Visualizer v, Transport transport) throws Exception{
+		this (sat, mapa, transport);		
 		visualizer = v;
 		usingVisualizer = true;
 	}
@@ -95,112 +139,69 @@ public class Satelite extends SingleAgent {
 	}*/
 	
 	/**
-	 * Se calcula el valor del ángulo que forma la baliza y el EjeX horizontal tomando como centro
-	 * a el agente drone.
-	 * @param posX Posición relativa de la baliza con respecto al drone.
-	 * @param posY Posición relativa de la baliza con respecto al drone.
-	 * @return valor del ángulo.
-	 * @author jahiel
+	 * Lo que el satélite sabe de un drone: su posición (en su World, que comparte los mapas),
+	 * el estado de la conversación y el status que se le envía.
 	 */
-	private double calculateAngle(double posX, double posY){
-		double angle = 0;
-		
-		if(posX>0 && posY>=0)
-			angle = Math.atan(posY / posX);
-		else if(posX>0 && posY<0)
-			angle = Math.atan(posY / posX) + (2.0*Math.PI);
-		else if(posX == 0 && posY>0)
-			angle = Math.PI/2.0;
-		else if(posX == 0 && posY<0)
-			angle = (3*Math.PI) / 2.0;
-		else if(posX<0)
-			angle = Math.atan(posY / posX) + Math.PI;
-		
-		return angle;
+	private static class DroneSession {
+		final World world;
+		final Status status = new Status();
+		final int[] plan = new int[Status.MAX_PLAN_LENGTH];
+		int state;
+		boolean finished = false;
+
+		DroneSession(World world, int state) {
+			this.world = world;
+			this.state = state;
+		}
 	}
-	
+
 	/**
-	 * Creamos el objeto JSON status:
-	 * Status: {“connected”:”YES”, “ready”:”YES”, “gps”:{“x”:10,”y”:5},
-	 * “goal”:”No”, “gonio”:{“alpha”:0, “dist”:4.0}, “battery”:100,
-	 * “radar”:[0,0,0,0,0,0,0,1,1]}
-	 * 
-	 * @return Objeto JSon con el contenido de Status
-	 * @throws JSONException  Si la clave es null
-	 * @author jahiel
-	 * @author Jonay
+	 * Devuelve la sesión de un drone, creándola con el drone en (0, 0) si es su primer mensaje.
+	 * @param dron Identificador del drone.
+	 * @return La sesión.
 	 */
-	private JSONObject createStatus() throws JSONException {
-		int posXDrone = gps.getPositionX(), posYDrone = gps.getPositionY();
-		double distance = Math.sqrt(Math.pow(goalPosX - posXDrone, 2) + Math.pow(goalPosY - posYDrone, 2));
-		double angle = calculateAngle(goalPosX - posXDrone, goalPosY - posYDrone);
-
-		JSONObject status2 = new JSONObject();
-		status2.put("connected", "Yes");
-		status2.put("ready", "Yes");
-		
-		JSONObject aux = new JSONObject();
-		aux.put("x", gps.getPositionX());
-		aux.put("y", gps.getPositionY());
-
-		status2.put("gps", aux);
-
-		if(mapOriginal.getValue(posXDrone, posYDrone) == Map.OBJETIVO)
-			status2.put("goal", "Si");
-		else
-			status2.put("goal", "No");
-
-		JSONObject aux2 = new JSONObject();
-		aux2.put("alpha", angle);
-		aux2.put("dist", distance);
-		status2.put("gonio", aux2);
-		status2.put("battery", 100);
-		
-		int[] surroundings = obtenerAlrededores();
-		JSONArray jsArray = new JSONArray(surroundings);
-		status2.put("radar", jsArray);
-
-		return status2;
+	private DroneSession getSession(AgentID dron) {
+		DroneSession session = sessions.get(dron.name);
+		if (session == null) {
+			DroneSession created = new DroneSession(new World(mapOriginal, mapSeguimiento, goals), SolicitudStatus);
+			created.world.setDistanceField(distanceField);
+			created.world.setClusterGraph(clusterGraph);
+			if (usingVisualizer)
+				created.world.setMapListener(visualizer.getMapListener());
+			session = sessions.putIfAbsent(dron.name, created);
+			if (session == null)
+				session = created;
+		}
+		return session;
 	}
 
 	/**
-	 * Este método obtiene los valores de las celdas en las 9 casillas que rodean el drone 
-	 * (incluyendo en la que se encuentra el drone)
+	 * Rellenamos el status del drone (gps, gonio, goal, batería y radar). Cómo se envía
+	 * depende del StatusCodec.
+	 * 
+	 * @param session Sesión del drone.
+	 * @return Objeto Status de la sesión, que se reutiliza en cada paso
+	 * @author jahiel
 	 * @author Jonay
-	 * @return Array de enteros con las 
 	 */
-	private int[] obtenerAlrededores(){
-		int[] surroundings = new int[9];
-		int posX = gps.getPositionX();
-		int posY = gps.getPositionY();
-		
-		// Recorre desde la posición dron -1  hasta la del dron + 1, tanto en X como en Y
-		for (int i = 0; i< 3; i++){
-			for(int j = 0; j < 3; j++){
-				/* TODO: ¿poner mapSeguimiento o mapOriginal? Depende del método getValidMoviments del drone
-				 * Se puede liar si aquí digo que está visitado, y allí le suma que también.
-				 */
-				surroundings[i+j*3] = mapOriginal.getValue(posX-1+i, posY-1+j);
-			}
-		}
-		
-		return surroundings;
+	private Status createStatus(DroneSession session) {
+		return session.world.createStatus(session.status);
 	}
-	
+
 	/**
 	 * Se envia un mensaje del tipo "typeMessag" al agente "id" con el contenido "datas".
 	 * @param typeMessage 	Tipo del mensaje: REQUEST, INFORM, FAIL
 	 * @param id   			Identificador del destinatario
-	 * @param datas			Contenido del mensaje
+	 * @param datas			Contenido del mensaje ya codificado
 	 * @author jahiel
 	 */
-	private void send(int typeMessage, AgentID id, JSONObject datas) {
+	private void send(int typeMessage, AgentID id, String datas) {
 
 		ACLMessage msg = new ACLMessage(typeMessage);
 		msg.setSender(this.getAid());
 		msg.addReceiver(id);
 		if (datas != null)
-			msg.setContent(datas.toString());
+			msg.setContent(datas);
 		else
 			msg.setContent("");
 		this.send(msg);
@@ -210,61 +211,35 @@ public class Satelite extends SingleAgent {
 	 * En función del valor recibido por el dron se actualiza el mapa interno
 	 * del satelite con la nueva posición del drone (x, y en funcion de la
 	 * dirección elegida) o se da por finalizada la comunicación.
+	 * @param session	Sesión del drone.
 	 * @param dron		Identificador del agente dron.
-	 * @param ob		Objeto JSon con los valores de la decision del drone: 
+	 * @param decision	Decisión del drone, ya decodificada: 
 	 * 					-  0 : El dron decide ir al Este. 
 	 * 					-  1 : El dorn decide ir al Sur. 
 	 * 					-  2 : El dorn decide ir al Oeste. 
 	 * 					-  3 : El dorn decide ir al Norte.
 	 *            		- -1: Fin de la comunicación
 	 * @return Se devuelve "true" si se debe finalizar la comunicación y "false" en caso contrario.
+	 * @throws IllegalArgumentException Si la decisión no es ninguna de las anteriores. No se envía nada:
+	 * 			el que llama responde con el FAILURE.
 	 * @author jahiel
 	 */
-	private boolean evalueDecision(AgentID dron, JSONObject ob) {
-		int decision, x = -1, y = -1;
-
-		try {
-			decision = ob.getInt("decision");
-		} catch (JSONException e) {
-
-			sendError(dron, "Error de parametros en la decisión");
-			return true;
-		}
-
-		switch (decision) {
-
-		case Drone.ESTE: // Este
-			x = gps.getPositionX() + 1;
-			y = gps.getPositionY();
-			break;
-
-		case Drone.SUR: // Sur
-			x = gps.getPositionX();
-			y = gps.getPositionY() + 1;
-			break;
-
-		case Drone.OESTE: // Oeste
-			x = gps.getPositionX() - 1;
-			y = gps.getPositionY();
-			break;
-
-		case Drone.NORTE: // Norte
-			x = gps.getPositionX();
-			y = gps.getPositionY() - 1;
-			break;
-
-		case Drone.END:
-			return true;
-		default: // Fin, No me gusta, prefiero un case para el fin y en el default sea un caso de error pero no me deja poner -1 en el case.
-			sendError(dron, "Error al actualizar el mapa");
-			break;
-		}
-
-		gps.setPositionX(x);
-		gps.setPositionY(y);
-		mapSeguimiento.setvalue(x, y, Map.VISITADO);
+	private boolean evalueDecision(DroneSession session, int decision) {
+		return session.world.evalueDecision(decision);
+	}
 
-		return false;
+	/**
+	 * Aplica en orden los movimientos de un plan del drone (ver World.evaluePlan). El radar de cada posición
+	 * intermedia se guarda en el status para que el drone lo reciba junto con el status final.
+	 * @param session	Sesión del drone.
+	 * @param moves		Movimientos del plan (Drone.ESTE, SUR, OESTE o NORTE).
+	 * @param count		Número de movimientos del plan.
+	 * @return Movimientos aplicados.
+	 * @throws IllegalArgumentException Si el plan tiene un movimiento no válido. No se envía nada: el que
+	 * 			llama responde con el FAILURE.
+	 */
+	private int evaluePlan(DroneSession session, int[] moves, int count) {
+		return session.world.evaluePlan(moves, count, session.status);
 	}
 
 	/**
@@ -283,109 +258,191 @@ public class Satelite extends SingleAgent {
 		}
 		System.err.println("Agente " + this.getName() + " " + cad_error);
 
-		send(ACLMessage.FAILURE, dron, error);
+		send(ACLMessage.FAILURE, dron, error.toString());
+
+	}
 
+	/**
+	 * Si hay visualizador, espera a que su controlador de pasos deje mover el drone (parado, paso a paso,
+	 * N pasos o a un ritmo fijo). La espera bloquea el hilo sin gastar CPU.
+	 */
+	private void esperarPaso() {
+		if (usingVisualizer) {
+			try {
+				visualizer.getStepController().awaitStep();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
 	}
 
 	/**
 	 * Secuencia de acciones del satelite. Ver diagrama de secuencia para ver la secuencia de acciones.
+	 * Recibe los mensajes de todos los drones y los atiende en su sesión, en este hilo o en los
+	 * trabajadores si hay más de uno. Termina cuando han acabado setExpectedDrones drones.
 	 * @author jahiel
 	 * @author Jonay
 	 */
 	@Override
 	protected void execute() {
-		ACLMessage message = new ACLMessage();
-		AgentID dron = null;
-		boolean exit = false;
 		System.out.println("Agente " + this.getName() + " en ejecución");
-		while (!exit) {
+		pool = (workers > 1) ? Executors.newFixedThreadPool(workers) : null;
+		while (finishedDrones.get() < expectedDrones) {
+			final ACLMessage message;
+			try {
+				message = receiveACLMessage();
+			} catch (InterruptedException e) {
+				System.err.println("Agente " + this.getName() + " Error en la comunicación");
+				break;
+			}
+			// Aviso de un trabajador de que ha terminado un drone: se vuelve a comprobar la condición
+			if (message.getSender().name.equals(getName()))
+				continue;
+
+			final DroneSession session = getSession(message.getSender());
+			if (pool == null) {
+				atender(session, message);
+			} else {
+				pool.execute(new Runnable() {
+					@Override
+					public void run() {
+						atender(session, message);
+					}
+				});
+			}
+		}
+		if (pool != null) {
+			pool.shutdown();
+			try {
+				pool.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
 
-			switch (state) {
+	/**
+	 * Atiende un mensaje de un drone. Como cada drone espera la respuesta antes de enviar el
+	 * siguiente, nunca hay dos mensajes de la misma sesión a la vez; el synchronized sólo
+	 * garantiza que el trabajador que atiende el siguiente ve la sesión actualizada.
+	 * @param session Sesión del drone.
+	 * @param message Mensaje recibido.
+	 */
+	private void atender(DroneSession session, ACLMessage message) {
+		synchronized (session) {
+			if (session.finished)
+				return;
+			if (procesar(session, message)) {
+				session.finished = true;
+				if (finishedDrones.incrementAndGet() >= expectedDrones && pool != null)
+					send(ACLMessage.INFORM, getAid(), null);
+			}
+		}
+	}
 
-			case SolicitudStatus:
-				//Si hay visualizador, manda actualizar sus mapas.
-				if (usingVisualizer){
-					visualizer.updateMap();
-					//Si no está pulsado "Find Target" y está pulsado "Think Once" hay que habilitar "Think Once". Si "Find Target" está pulsado, no se debe de hacer nada.
-					if (visualizer.isBtnFindTargetEnabled() && !visualizer.isBtnThinkOnceEnabled())
-						visualizer.enableThinkOnce();
-				}
-				
-				// Aqui esperamos el primer Request vacio
-				try {
-					message = receiveACLMessage();
-				} catch (InterruptedException e) {
-					sendError(dron, "Error en la comunicación");
-					exit = true;
-				}
+	/**
+	 * Máquina de estados de la conversación con un drone. Si el REQUEST de status trae una decisión
+	 * (protocolo de una sola ida y vuelta) se aplica antes de responder con el status, así que atiende
+	 * a drones con cualquiera de los dos protocolos.
+	 * @param session Sesión del drone.
+	 * @param message Mensaje recibido.
+	 * @return true si la conversación con el drone ha terminado.
+	 * @author jahiel
+	 * @author Jonay
+	 */
+	private boolean procesar(DroneSession session, ACLMessage message) {
+		AgentID dron = message.getSender();
+		boolean exit = false;
+		int movesApplied;
 
-				if (!exit) {
-					dron = message.getSender();
-					// Una vez recibido el mensaje comprobamos el tipo y si es del tipo Request respondemos con Inform(status)
-
-					if (message.getPerformative().equals("REQUEST")) {
-						
-						System.out.println("Posicion: " + gps.getPositionX() + ", "+ gps.getPositionY());
-						
-						JSONObject status = null;
-						try {
-							status = createStatus();
-						} catch (JSONException e) {
-							sendError(dron, "Error al crear Status");
-							exit = true;
-						}
-						if (status != null) {
-							send(ACLMessage.INFORM, dron, status);
-							state = EsperarInform;
-						}
-					} else {
-						// El mensaje recibido es de tipo distinto a Request por tanto error
-
-						sendError(dron,"Error de secuencia en la comunicación. El mensaje debe ser de tipo REQUEST");
-						exit = true;
-					}
-				}
+		if (session.state == EsperarInform && PASO.equals(message.getConversationId())) {
+			// El drone usa el protocolo de una sola ida y vuelta: no hay INFORM, el REQUEST ya es el siguiente paso
+			session.state = SolicitudStatus;
+		}
+		if (!message.getPerformative().equals("REQUEST")) {
+			// El mensaje recibido es de tipo distinto a Request por tanto error
+			sendError(dron,"Error de secuencia en la comunicación. El mensaje debe ser de tipo REQUEST");
+			return true;
+		}
 
-				break;
+		switch (session.state) {
 
-			case EsperarInform:
-				// Aqui esperamos el Inform
+		case SolicitudStatus:
+			// Una vez recibido el mensaje respondemos con Inform(status)
+			String decision = message.getContent();
+			movesApplied = 0;
+			if (decision != null && codec.isStatusRequest(decision)) {
+				// Petición de status con otro radio de radar: no trae decisión
 				try {
-					message = receiveACLMessage();
-				} catch (InterruptedException e) {
-					sendError(dron, "Error de comunicación");
-					exit = true;
+					int radius = codec.decodeStatusRequest(decision);
+					if (radius < 1 || radius > Status.MAX_RADAR_RADIUS)
+						throw new CodecException("Radio del radar fuera de rango: " + radius);
+					session.status.setRadarRadius(radius);
+				} catch (CodecException e) {
+					// El drone sólo lee la respuesta a su REQUEST: el FAILURE, sin INFORM detrás
+					sendError(dron, "Error de parametros en la petición de status");
+					return true;
 				}
-				if (message.getPerformative().equals("REQUEST")) {
-					if (usingVisualizer)
-						if (visualizer.isBtnThinkOnceEnabled())
-							while (visualizer.isBtnThinkOnceEnabled()){
-								System.out.print("");//Necesario para volver a comprobar la condición del while.
-							}
-
-					JSONObject aux = null;
-					try {
-						aux = new JSONObject(message.getContent());
-					} catch (JSONException e) {
-						sendError(dron,"Error al crear objeto JSON con la decision");
-					}
-
-					exit = evalueDecision(dron, aux);
-					// Si ha habido algún fallo al actualizar el mapa se le informa al drone y se finaliza
-					if (!exit)
-						state = SolicitudStatus;
+			} else if (decision != null && !decision.isEmpty()) {
+				// Protocolo de una sola ida y vuelta: el REQUEST ya trae la decisión y se responde con el siguiente status
+				esperarPaso();
+				try {
+					if (codec.isPlan(decision))
+						movesApplied = evaluePlan(session, session.plan, codec.decodePlan(decision, session.plan));
+					else
+						exit = evalueDecision(session, codec.decodeDecision(decision));
+				} catch (CodecException e) {
+					// Como con la petición de status: sólo el FAILURE
+					sendError(dron, "Error de parametros en la decisión");
+					return true;
+				} catch (IllegalArgumentException e) {
+					// Un movimiento que no existe: también sólo el FAILURE
+					sendError(dron, "Error al actualizar el mapa");
+					return true;
+				}
+				if (exit) {
 					send(ACLMessage.INFORM, dron, null);
-				} else {
-					// El mensaje recibido es de tipo distinto a Request por tanto error
+					return true;
+				}
+			}
 
-					sendError(dron,"Error de secuencia en la comunicación. El mensaje debe ser de tipo REQUEST");
+			if (verbose)
+				System.out.println("Posicion: " + session.world.getGps().getPositionX() + ", "+ session.world.getGps().getPositionY());
 
-					exit = true;
-				}
-				break;
+			String content = null;
+			try {
+				createStatus(session).setMovesApplied(movesApplied);
+				content = codec.encodeStatus(session.status);
+			} catch (CodecException e) {
+				sendError(dron, "Error al crear Status");
+				exit = true;
 			}
+			if (content != null) {
+				send(ACLMessage.INFORM, dron, content);
+				session.state = EsperarInform;
+			}
+			break;
 
+		case EsperarInform:
+			// Aqui llega la decisión del protocolo de dos fases
+			esperarPaso();
+
+			try {
+				exit = evalueDecision(session, codec.decodeDecision(message.getContent()));
+			} catch (CodecException e) {
+				sendError(dron, "Error de parametros en la decisión");
+				exit = true;
+			} catch (IllegalArgumentException e) {
+				sendError(dron, "Error al actualizar el mapa");
+				exit = true;
+			}
+			// Si ha habido algún fallo al actualizar el mapa se le informa al drone y se finaliza
+			if (!exit)
+				session.state = SolicitudStatus;
+			send(ACLMessage.INFORM, dron, null);
+			break;
 		}
+		return exit;
 	}
 
 	/**
@@ -393,10 +450,70 @@ public class Satelite extends SingleAgent {
 	 * @author Jonay
 	 */
 	@Override
-	public void finalize() {
+	protected void onFinish() {
 		System.out.println("Agente " + this.getName() + " ha finalizado");
 		// TODO: he añadido la creación del mapa. Revisar si esto debería ir aquí o en el main de algún modo, u otro lugar
-		ImgMapConverter.mapToImg("src/maps/resutado.png", mapSeguimiento);
+		if (mapSeguimiento.getStorage() instanceof OverlayStorage) {
+			// Un mapa proyectado no cabe en una imagen en memoria: se guarda en binario fila a fila
+			try {
+				MapFile.write("src/maps/resutado.map", mapSeguimiento);
+			} catch (IOException e) {
+				System.out.println("Error de escritura");
+			}
+		} else
+			ImgMapConverter.mapToImg("src/maps/resutado.png", mapSeguimiento);
+	}
+
+	/**
+	 * Cambia la codificación de los mensajes. El drone tiene que usar la misma.
+	 * @param codec Codificación de status y decisiones.
+	 */
+	public void setCodec(StatusCodec codec) {
+		this.codec = codec;
+	}
+
+	/**
+	 * Número de hilos que atienden los mensajes. Con 1 (por defecto) se atienden en el hilo del agente.
+	 * @param workers Hilos, normalmente tantos como núcleos.
+	 */
+	public void setWorkers(int workers) {
+		this.workers = Math.max(1, workers);
+	}
+
+	/**
+	 * Incluye en cada status la distancia de camino hasta el objetivo y el mejor movimiento, que el drone
+	 * sigue en vez de decidir él. El campo de distancias se calcula aquí, una vez para todos los drones;
+	 * hay que llamarlo antes de que llegue el primero.
+	 * @param enabled true para incluirlos (por defecto no se incluyen).
+	 */
+	public void setDistanceField(boolean enabled) {
+		distanceField = enabled ? mapOriginal.getDistanceField() : null;
+	}
+
+	/**
+	 * Como setDistanceField, pero el camino de cada drone se busca con HPA* sobre la abstracción del mapa
+	 * (ver ClusterGraph), sin recorrer el mapa entero. Se usa la que tenga el mapa, cargada con
+	 * ClusterGraph.forMapFile o construida aquí; hay que llamarlo antes de que llegue el primer drone.
+	 * @param enabled true para incluirlos (por defecto no se incluyen).
+	 */
+	public void setClusterGraph(boolean enabled) {
+		clusterGraph = enabled ? mapOriginal.getClusterGraph() : null;
+	}
+
+	/**
+	 * Activa o desactiva la traza de cada paso por consola (activada por defecto).
+	 * @param verbose true para escribirla.
+	 */
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	/**
+	 * Número de drones que tienen que terminar para que termine el satélite. Por defecto 1.
+	 * @param expectedDrones Número de drones.
+	 */
+	public void setExpectedDrones(int expectedDrones) {
+		this.expectedDrones = Math.max(1, expectedDrones);
 	}
 
 	/**
@@ -0,0 +1,121 @@
+package practica.agent;
+
+import es.upv.dsic.gti_ia.core.ACLMessage;
+import es.upv.dsic.gti_ia.core.AgentID;
+import practica.transport.QpidTransport;
+import practica.transport.Transport;
+
+/**
+ * Agente con la misma interfaz que el SingleAgent de Magentix2 (execute, send, receiveACLMessage...)
+ * pero que envía y recibe a través de un Transport, de modo que el mismo agente puede
+ * ir por el broker QPID o por memoria dentro de la JVM.
+ */
+public abstract class TransportAgent implements Runnable {
+	private final AgentID aid;
+	private final Transport transport;
+	private Thread thread;
+
+	/**
+	 * Constructor con el transporte QPID de siempre.
+	 * @param aid Identificador del agente.
+	 * @throws Exception Si no se puede registrar en el broker.
+	 */
+	public TransportAgent(AgentID aid) throws Exception {
+		this(aid, QpidTransport.getInstance());
+	}
+
+	/**
+	 * Constructor con un transporte concreto.
+	 * @param aid 		Identificador del agente.
+	 * @param transport Transporte por el que se comunica.
+	 * @throws Exception Si no se puede registrar en el transporte.
+	 */
+	public TransportAgent(AgentID aid, Transport transport) throws Exception {
+		this.aid = aid;
+		this.transport = transport;
+		transport.register(aid);
+	}
+
+	public AgentID getAid() {
+		return aid;
+	}
+
+	public String getName() {
+		return aid.name;
+	}
+
+	/**
+	 * Getter del transporte.
+	 * @return el transporte del agente.
+	 */
+	public Transport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * Envía un mensaje.
+	 * @param msg Mensaje, con el emisor y los receptores puestos.
+	 */
+	public void send(ACLMessage msg) {
+		transport.send(msg);
+	}
+
+	/**
+	 * Espera al siguiente mensaje del agente.
+	 * @return El mensaje.
+	 * @throws InterruptedException Si se interrumpe la espera.
+	 */
+	public final ACLMessage receiveACLMessage() throws InterruptedException {
+		return transport.receive(aid);
+	}
+
+	/**
+	 * Se ejecuta antes de execute().
+	 */
+	protected void init() {
+	}
+
+	/**
+	 * Comportamiento del agente.
+	 */
+	protected abstract void execute();
+
+	/**
+	 * Se ejecuta al terminar execute(), una sola vez, en el hilo del agente. Hace lo que hacía finalize()
+	 * en SingleAgent; no se llama finalize() para no sobrescribir Object.finalize, que el recolector
+	 * volvería a llamar al liberar el agente.
+	 */
+	protected void onFinish() {
+	}
+
+	/**
+	 * Lanza el agente en su propio hilo, virtual o no según AgentRuntime.
+	 */
+	public void start() {
+		thread = AgentRuntime.newThread(this, getName());
+		thread.start();
+	}
+
+	/**
+	 * Ciclo de vida del agente: init, execute y onFinish. Al acabar deja el transporte.
+	 */
+	@Override
+	public void run() {
+		try {
+			init();
+			execute();
+			onFinish();
+		} finally {
+			transport.unregister(aid);
+		}
+	}
+
+	/**
+	 * Espera a que termine el hilo del agente.
+	 * @throws InterruptedException Si se interrumpe la espera.
+	 */
+	public void join() throws InterruptedException {
+		if (thread != null)
+			thread.join();
+	}
+}
@@ -0,0 +1,337 @@
+package practica.engine;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import practica.util.ClusterGraph;
+import practica.util.Map;
+import practica.util.MapFile;
+
+/**
+ * Ejecuta la Simulation sobre una batería de mapas y posiciones iniciales en paralelo, en un
+ * ForkJoinPool, sin visualizador ni broker. Cada ejecución se escribe como una línea JSON del
+ * informe (mapa, posición inicial, pasos, si llegó al objetivo, tiempo y mensajes).
+ *
+ * Uso: BatchRunner [-starts N] [-seed S] [-threads T] [-plan L] [-radar R] [-dstar] [-field] [-hpa] [-out fichero] [mapas...]
+ * 	- Sin mapas se usan todos los de src/maps.
+ * 	- Cada mapa se ejecuta desde (0, 0) y desde N casillas libres elegidas al azar con la semilla S,
+ * 	  así que el informe es el mismo en cada ejecución.
+ * 	- Con -plan L el drone envía planes de hasta L movimientos (los pasos no cambian, los mensajes sí).
+ * 	- Con -radar R el drone pide un radar de radio R (ver Drone.setRadarRadius).
+ * 	- Con -dstar el drone decide con D* Lite en vez de con la escalada (ver DroneLogic.setMode).
+ * 	- Con -field el satélite manda el camino hasta el objetivo (ver Satelite.setDistanceField). El campo
+ * 	  de distancias de cada mapa se calcula una vez, al crear sus ejecuciones.
+ * 	- Con -hpa el camino se busca con HPA* (ver Satelite.setClusterGraph). La abstracción de cada mapa se
+ * 	  lee del fichero .hpa que hay junto a él, o se construye y se guarda ahí si no está o es de otro mapa.
+ */
+public class BatchRunner {
+	/** Directorio de los mapas por defecto. */
+	public static final String MAPS_DIR = "src/maps";
+	/** Informe por defecto. */
+	public static final String REPORT = "batch-report.jsonl";
+
+	/**
+	 * Una ejecución de la batería: un mapa y una posición inicial, y su resultado.
+	 */
+	public static class Run {
+		private final String mapName;
+		private final Map map;
+		private final int startX, startY;
+		private long steps, messages;
+		private boolean goal, finished;
+		private long wallNanos;
+		private int radarRadius = 1;
+		private int mode = DroneLogic.HILL_CLIMBING;
+		private boolean field = false;
+		private boolean hpa = false;
+
+		public Run(String mapName, Map map, int startX, int startY) {
+			this.mapName = mapName;
+			this.map = map;
+			this.startX = startX;
+			this.startY = startY;
+		}
+
+		/**
+		 * Simula la ejecución. El mapa original se comparte entre ejecuciones, sólo se lee; cada una
+		 * tiene su propio mapa de seguimiento.
+		 * @param maxPlanLength Movimientos por plan.
+		 * @param radarRadius 	Radio del radar.
+		 * @param mode 			Modo de decisión del drone.
+		 * @param field 		Si el satélite manda el camino hasta el objetivo.
+		 * @param hpa 			Si el satélite lo busca con HPA* (cuando no hay campo).
+		 */
+		void execute(int maxPlanLength, int radarRadius, int mode, boolean field, boolean hpa) {
+			this.radarRadius = radarRadius;
+			this.mode = mode;
+			this.field = field;
+			this.hpa = hpa;
+			long start = System.nanoTime();
+			World world = new World(map, new Map(map), map.getGoalIndex(), startX, startY);
+			Simulation simulation = new Simulation(world, map.getWidth(), map.getHeigh());
+			simulation.setMaxPlanLength(maxPlanLength);
+			simulation.setRadarRadius(radarRadius);
+			simulation.setMode(mode);
+			simulation.setDistanceField(field);
+			if (hpa && !field)
+				simulation.setClusterGraph(true);
+			// El drone se rinde solo, pero por si acaso no se le deja pasar más de 4 veces por cada celda
+			simulation.run(4L * map.getWidth() * map.getHeigh());
+			wallNanos = System.nanoTime() - start;
+			steps = simulation.getSteps();
+			messages = simulation.getMessages();
+			goal = simulation.isGoalReached();
+			finished = simulation.isFinished();
+		}
+
+		/**
+		 * @return La línea del informe.
+		 * @throws JSONException
+		 */
+		public JSONObject toJSON() throws JSONException {
+			JSONObject json = new JSONObject();
+			json.put("map", mapName);
+			json.put("startX", startX);
+			json.put("startY", startY);
+			json.put("radar", radarRadius);
+			json.put("mode", (mode == DroneLogic.DSTAR_LITE) ? "dstar" : "hill");
+			json.put("field", field);
+			json.put("hpa", hpa);
+			json.put("steps", steps);
+			json.put("goal", goal);
+			json.put("finished", finished);
+			json.put("wallMs", wallNanos / 1e6);
+			json.put("messages", messages);
+			return json;
+		}
+
+		public String getMapName() {
+			return mapName;
+		}
+
+		public long getSteps() {
+			return steps;
+		}
+
+		public boolean isGoal() {
+			return goal;
+		}
+	}
+
+	/**
+	 * Reparte un tramo de ejecuciones entre los hilos del pool partiéndolo por la mitad.
+	 */
+	private static class RunTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Run[] runs;
+		private final int from, to;
+		// Configuración de la batería
+		private final BatchRunner settings;
+
+		RunTask(Run[] runs, int from, int to, BatchRunner settings) {
+			this.runs = runs;
+			this.from = from;
+			this.to = to;
+			this.settings = settings;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				runs[from].execute(settings.maxPlanLength, settings.radarRadius, settings.mode, settings.field,
+						settings.hpa);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new RunTask(runs, from, mid, settings), new RunTask(runs, mid, to, settings));
+		}
+	}
+
+	private int starts = 0;
+	private long seed = 0;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int maxPlanLength = 1;
+	private int radarRadius = 1;
+	private int mode = DroneLogic.HILL_CLIMBING;
+	private boolean field = false;
+	private boolean hpa = false;
+
+	/**
+	 * Crea las ejecuciones de un mapa: desde (0, 0) y desde las posiciones libres al azar.
+	 * @param name 	Nombre del mapa en el informe.
+	 * @param map 	Mapa.
+	 * @param runs 	Lista donde se añaden.
+	 */
+	public void addRuns(String name, Map map, List<Run> runs) {
+		// Antes de repartir las ejecuciones entre hilos, para no calcularlo en varios a la vez
+		if (field)
+			map.getDistanceField();
+		if (hpa)
+			map.getClusterGraph();
+		runs.add(new Run(name, map, 0, 0));
+		// La semilla depende del mapa para que añadir mapas no cambie las posiciones de los demás
+		Random random = new Random(seed * 31 + name.hashCode());
+		long tries = 16L * starts + 1000;
+		for (int i = 0; i < starts && tries > 0; tries--) {
+			int x = random.nextInt(map.getWidth()), y = random.nextInt(map.getHeigh());
+			if (map.getValue(x, y) == Map.LIBRE) {
+				runs.add(new Run(name, map, x, y));
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Ejecuta todas las ejecuciones en un ForkJoinPool y espera a que terminen.
+	 * @param runs Ejecuciones.
+	 */
+	public void execute(Run[] runs) {
+		if (runs.length == 0)
+			return;
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.invoke(new RunTask(runs, 0, runs.length, this));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Escribe el informe, una línea JSON por ejecución, en el orden de las ejecuciones.
+	 * @param runs 	Ejecuciones ya terminadas.
+	 * @param file 	Fichero del informe.
+	 * @throws IOException
+	 */
+	public static void writeReport(Run[] runs, File file) throws IOException {
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		try {
+			for (Run run : runs)
+				out.println(run.toJSON().toString());
+		} catch (JSONException e) {
+			throw new IOException(e);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @return Los mapas de MAPS_DIR, ordenados por nombre.
+	 */
+	public static String[] defaultMaps() {
+		File[] files = new File(MAPS_DIR).listFiles();
+		if (files == null)
+			return new String[0];
+		List<String> paths = new ArrayList<String>();
+		for (File file : files) {
+			String name = file.getName().toLowerCase();
+			// resutado.png es la salida del satélite, no un mapa
+			if ((name.endsWith(".png") || MapFile.isMapFile(name)) && !name.startsWith("resutado"))
+				paths.add(file.getPath());
+		}
+		String[] result = paths.toArray(new String[paths.size()]);
+		Arrays.sort(result);
+		return result;
+	}
+
+	public void setStarts(int starts) {
+		this.starts = starts;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	public void setMaxPlanLength(int maxPlanLength) {
+		this.maxPlanLength = maxPlanLength;
+	}
+
+	public void setRadarRadius(int radarRadius) {
+		this.radarRadius = radarRadius;
+	}
+
+	/**
+	 * @param mode DroneLogic.HILL_CLIMBING o DroneLogic.DSTAR_LITE.
+	 */
+	public void setMode(int mode) {
+		this.mode = mode;
+	}
+
+	public void setDistanceField(boolean field) {
+		this.field = field;
+	}
+
+	public void setClusterGraph(boolean hpa) {
+		this.hpa = hpa;
+	}
+
+	/**
+	 * @param args Ver la documentación de la clase.
+	 */
+	public static void main(String[] args) throws IOException {
+		BatchRunner runner = new BatchRunner();
+		String report = REPORT;
+		List<String> paths = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-starts"))
+				runner.setStarts(Integer.parseInt(args[++i]));
+			else if (args[i].equals("-seed"))
+				runner.setSeed(Long.parseLong(args[++i]));
+			else if (args[i].equals("-threads"))
+				runner.setThreads(Integer.parseInt(args[++i]));
+			else if (args[i].equals("-plan"))
+				runner.setMaxPlanLength(Integer.parseInt(args[++i]));
+			else if (args[i].equals("-radar"))
+				runner.setRadarRadius(Integer.parseInt(args[++i]));
+			else if (args[i].equals("-dstar"))
+				runner.setMode(DroneLogic.DSTAR_LITE);
+			else if (args[i].equals("-field"))
+				runner.setDistanceField(true);
+			else if (args[i].equals("-hpa"))
+				runner.setClusterGraph(true);
+			else if (args[i].equals("-out"))
+				report = args[++i];
+			else
+				paths.add(args[i]);
+		}
+		if (paths.isEmpty())
+			paths.addAll(Arrays.asList(defaultMaps()));
+
+		long start = System.nanoTime();
+		List<Run> list = new ArrayList<Run>();
+		for (String path : paths) {
+			Map map = MapFile.load(path);
+			if (map == null) {
+				System.err.println("No se puede cargar el mapa " + path);
+				continue;
+			}
+			if (runner.hpa)
+				ClusterGraph.forMapFile(path, map);
+			runner.addRuns(new File(path).getName(), map, list);
+		}
+		Run[] runs = list.toArray(new Run[list.size()]);
+		runner.execute(runs);
+		writeReport(runs, new File(report));
+
+		int goals = 0;
+		for (Run run : runs)
+			if (run.isGoal())
+				goals++;
+		System.out.println(runs.length + " ejecuciones en " + paths.size() + " mapas, " + goals
+				+ " llegan al objetivo, " + (System.nanoTime() - start) / 1000000 + " ms. Informe en " + report);
+	}
+}
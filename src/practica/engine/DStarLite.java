@@ -0,0 +1,399 @@
+package practica.engine;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import practica.util.Map;
+
+/**
+ * Planificador D* Lite (Koenig y Likhachev, versión optimizada) sobre el mapa del drone, a 4 vecinos y
+ * con coste 1 por movimiento. Busca hacia atrás, desde el objetivo hasta el drone, y las casillas que
+ * el drone todavía no ha visto se suponen libres. Cuando el radar descubre obstáculos nuevos sólo se
+ * corrigen las casillas afectadas (ver sense) en vez de repetir la búsqueda entera, y cuando el drone
+ * se mueve la cola se reutiliza gracias al desplazamiento km de las claves.
+ *
+ * Cada paso expande como mucho el presupuesto de nodos (ver setBudget), siempre el mismo. Si no le
+ * llega para alcanzar al drone, la búsqueda sigue en el paso siguiente donde la dejó y mientras tanto
+ * el drone se acerca al objetivo en línea recta. Mientras tanto la búsqueda sigue hacia la casilla en
+ * la que empezó y no hacia el drone: si cambiara de casilla en cada paso, las claves de toda la cola
+ * se quedarían viejas en cada paso y con un presupuesto pequeño no terminaría nunca. Al terminar se
+ * pasa a la casilla del drone y se sigue desde ahí, así que el trabajo total es el de ir alcanzándolo.
+ *
+ * Memoria: g, rhs, heap y heapPos son int[] y heapKey long[], todos de una posición por casilla del
+ * mapa, más un bit de obstáculo: unos 24 bytes por casilla, reservados al crear el planificador
+ * aunque la búsqueda sólo recorra una parte (un mapa de 10000 x 10000 son 2,4 GB). Las casillas se
+ * numeran con un int, así que el mapa tiene como mucho MAX_CELLS casillas. No crea objetos en cada paso.
+ */
+final class DStarLite {
+	/** Coste de una casilla inalcanzable. Cabe en una clave sin desbordar (ver key). */
+	static final int INF = Integer.MAX_VALUE / 4;
+	/** Casillas del mapa como mucho: el mayor array que reservan las máquinas virtuales habituales. */
+	static final int MAX_CELLS = Integer.MAX_VALUE - 8;
+
+	private final int width, heigh;
+	private final int[] g, rhs;
+	// Obstáculos que ya conoce el planificador
+	private final BitSet blocked;
+	// Cola de prioridad: montículo binario de casillas con su clave, y posición+1 de cada casilla en él
+	private final int[] heap;
+	private final long[] heapKey;
+	private final int[] heapPos;
+	private int heapSize = 0;
+
+	private int goalX = -1, goalY = -1, goal = -1;
+	// Casilla en la que empieza la búsqueda y casilla del drone, que sólo coinciden al terminarla
+	private int startX, startY, droneX, droneY;
+	private int km = 0;
+	private int budget;
+	// Nodos que quedan por expandir en este paso
+	private int left;
+	// Nodos expandidos en total, para las pruebas de rendimiento
+	private long expanded = 0;
+
+	/**
+	 * @param width 	Anchura del mapa.
+	 * @param heigh 	Altura del mapa.
+	 * @param budget 	Nodos expandidos como mucho por paso (ver setBudget).
+	 * @throws IllegalArgumentException Si el mapa tiene más de MAX_CELLS casillas.
+	 */
+	DStarLite(int width, int heigh, int budget) {
+		if ((long) width * heigh > MAX_CELLS)
+			throw new IllegalArgumentException("Mapa demasiado grande para D* Lite: " + width + " x " + heigh
+					+ " casillas, como mucho " + MAX_CELLS);
+		this.width = width;
+		this.heigh = heigh;
+		int cells = width * heigh;
+		g = new int[cells];
+		rhs = new int[cells];
+		blocked = new BitSet(cells);
+		heap = new int[cells];
+		heapKey = new long[cells];
+		heapPos = new int[cells];
+		setBudget(budget);
+	}
+
+	/**
+	 * @param budget Nodos expandidos como mucho en cada llamada a plan(); 0 o menos es sin límite.
+	 */
+	void setBudget(int budget) {
+		this.budget = (budget > 0) ? budget : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Empieza una búsqueda nueva hacia otro objetivo. Lo que se sabe de los obstáculos se conserva.
+	 * @param x 		Columna del objetivo.
+	 * @param y 		Fila del objetivo.
+	 * @param droneX 	Posición X del drone.
+	 * @param droneY 	Posición Y del drone.
+	 */
+	void reset(int x, int y, int droneX, int droneY) {
+		Arrays.fill(g, INF);
+		Arrays.fill(rhs, INF);
+		for (int i = 0; i < heapSize; i++)
+			heapPos[heap[i]] = 0;
+		heapSize = 0;
+		km = 0;
+		goalX = x;
+		goalY = y;
+		goal = x + y * width;
+		startX = this.droneX = droneX;
+		startY = this.droneY = droneY;
+		rhs[goal] = 0;
+		push(goal, key(goal));
+	}
+
+	/**
+	 * @return true si ya hay un objetivo (ver reset).
+	 */
+	boolean hasGoal() {
+		return goal >= 0;
+	}
+
+	int getGoalX() {
+		return goalX;
+	}
+
+	int getGoalY() {
+		return goalY;
+	}
+
+	/**
+	 * El drone se ha movido. La búsqueda pasa a su casilla cuando termine la que está en curso (ver plan).
+	 * @param x Nueva posición X.
+	 * @param y Nueva posición Y.
+	 */
+	void moveStart(int x, int y) {
+		droneX = x;
+		droneY = y;
+	}
+
+	/**
+	 * Busca en una zona del mapa del drone los obstáculos que el planificador aún no conoce y corrige
+	 * las casillas cuyo camino pasaba por ellos.
+	 * @param map 		Mapa del drone.
+	 * @param left 		Primera columna de la zona.
+	 * @param top 		Primera fila de la zona.
+	 * @param right 	Última columna de la zona.
+	 * @param bottom 	Última fila de la zona.
+	 */
+	void sense(Map map, int left, int top, int right, int bottom) {
+		left = Math.max(left, 0);
+		top = Math.max(top, 0);
+		right = Math.min(right, width - 1);
+		bottom = Math.min(bottom, heigh - 1);
+		for (int y = top; y <= bottom; y++)
+			for (int x = left; x <= right; x++)
+				if (map.getValue(x, y) == Map.OBSTACULO && !blocked.get(x + y * width))
+					block(x, y);
+	}
+
+	/**
+	 * Marca una casilla como obstáculo: deja de tener camino, y sus vecinos que llegaban al objetivo
+	 * a través de ella lo recalculan.
+	 */
+	private void block(int x, int y) {
+		int u = x + y * width;
+		int gOld = g[u];
+		blocked.set(u);
+		if (u != goal) {
+			rhs[u] = INF;
+			updateVertex(u);
+		}
+		if (gOld >= INF)
+			return;
+		for (int move = DroneLogic.ESTE; move <= DroneLogic.NORTE; move++) {
+			int nx = x + DroneLogic.MOVE_X[move], ny = y + DroneLogic.MOVE_Y[move];
+			if (!isFree(nx, ny))
+				continue;
+			int v = nx + ny * width;
+			if (v != goal && rhs[v] == gOld + 1) {
+				rhs[v] = minSuccessor(nx, ny);
+				updateVertex(v);
+			}
+		}
+	}
+
+	/**
+	 * Avanza la búsqueda hasta que el camino desde el drone es el más corto con lo que se sabe, o hasta
+	 * agotar el presupuesto del paso.
+	 * @return true si la búsqueda ha terminado (con o sin camino).
+	 */
+	boolean plan() {
+		left = budget;
+		while (true) {
+			if (!search())
+				return false;
+			if (startX == droneX && startY == droneY)
+				return true;
+			// Las claves de la cola se quedan como estaban y el desplazamiento se compensa con km
+			km += Math.abs(droneX - startX) + Math.abs(droneY - startY);
+			startX = droneX;
+			startY = droneY;
+		}
+	}
+
+	/**
+	 * Expande hasta que el camino desde la casilla de inicio es el más corto o hasta gastar lo que queda
+	 * del presupuesto del paso.
+	 * @return true si ha terminado.
+	 */
+	private boolean search() {
+		int start = startX + startY * width;
+		while (heapSize > 0 && (heapKey[0] < key(start) || rhs[start] > g[start])) {
+			if (left == 0)
+				return false;
+			left--;
+			expanded++;
+			int u = heap[0];
+			long kOld = heapKey[0], kNew = key(u);
+			int x = u % width, y = u / width;
+			if (kOld < kNew) {
+				heapKey[0] = kNew;
+				siftDown(0);
+			} else if (g[u] > rhs[u]) {
+				g[u] = rhs[u];
+				remove(u);
+				for (int move = DroneLogic.ESTE; move <= DroneLogic.NORTE; move++) {
+					int nx = x + DroneLogic.MOVE_X[move], ny = y + DroneLogic.MOVE_Y[move];
+					if (!isFree(nx, ny))
+						continue;
+					int s = nx + ny * width;
+					if (s != goal && g[u] + 1 < rhs[s]) {
+						rhs[s] = g[u] + 1;
+						updateVertex(s);
+					}
+				}
+			} else {
+				int gOld = g[u];
+				g[u] = INF;
+				if (u != goal) {
+					rhs[u] = isFree(x, y) ? minSuccessor(x, y) : INF;
+				}
+				updateVertex(u);
+				for (int move = DroneLogic.ESTE; move <= DroneLogic.NORTE; move++) {
+					int nx = x + DroneLogic.MOVE_X[move], ny = y + DroneLogic.MOVE_Y[move];
+					if (!isFree(nx, ny))
+						continue;
+					int s = nx + ny * width;
+					if (s != goal && rhs[s] == gOld + 1) {
+						rhs[s] = minSuccessor(nx, ny);
+						updateVertex(s);
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Mejor movimiento desde el drone según la búsqueda: el vecino libre con menos coste hasta el
+	 * objetivo. Hay muchos caminos igual de cortos a 4 vecinos; en un empate se elige el vecino más
+	 * cerca del objetivo en línea recta, que deja al drone junto a la recta y no bordeando lo que no ve.
+	 * @return El movimiento, o DroneLogic.END si ningún vecino tiene camino todavía.
+	 */
+	int bestMove() {
+		int best = DroneLogic.END, bestCost = INF;
+		long bestLine = Long.MAX_VALUE;
+		for (int move = DroneLogic.ESTE; move <= DroneLogic.NORTE; move++) {
+			int nx = droneX + DroneLogic.MOVE_X[move], ny = droneY + DroneLogic.MOVE_Y[move];
+			if (!isFree(nx, ny))
+				continue;
+			int cost = g[nx + ny * width];
+			long line = (long) (nx - goalX) * (nx - goalX) + (long) (ny - goalY) * (ny - goalY);
+			if (cost < bestCost || (cost == bestCost && cost < INF && line < bestLine)) {
+				best = move;
+				bestCost = cost;
+				bestLine = line;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return true si la búsqueda ha terminado y no hay camino desde el drone hasta el objetivo.
+	 */
+	boolean isUnreachable() {
+		return heapSize == 0 && rhs[droneX + droneY * width] >= INF;
+	}
+
+	/**
+	 * @return Coste del camino desde el drone según la búsqueda, o INF.
+	 */
+	int getCost() {
+		return rhs[droneX + droneY * width];
+	}
+
+	long getExpanded() {
+		return expanded;
+	}
+
+	/**
+	 * Comprueba si una casilla está dentro del mapa y no es un obstáculo conocido.
+	 */
+	boolean isFree(int x, int y) {
+		return x >= 0 && y >= 0 && x < width && y < heigh && !blocked.get(x + y * width);
+	}
+
+	/**
+	 * Menor coste hasta el objetivo pasando por un vecino libre.
+	 */
+	private int minSuccessor(int x, int y) {
+		int best = INF;
+		for (int move = DroneLogic.ESTE; move <= DroneLogic.NORTE; move++) {
+			int nx = x + DroneLogic.MOVE_X[move], ny = y + DroneLogic.MOVE_Y[move];
+			if (isFree(nx, ny))
+				best = Math.min(best, g[nx + ny * width] + 1);
+		}
+		return best;
+	}
+
+	private void updateVertex(int u) {
+		boolean queued = heapPos[u] != 0;
+		if (g[u] != rhs[u]) {
+			if (queued) {
+				int i = heapPos[u] - 1;
+				long k = key(u), old = heapKey[i];
+				heapKey[i] = k;
+				if (k < old)
+					siftUp(i);
+				else
+					siftDown(i);
+			} else {
+				push(u, key(u));
+			}
+		} else if (queued) {
+			remove(u);
+		}
+	}
+
+	/**
+	 * Clave de una casilla, [min(g, rhs) + h + km; min(g, rhs)], en un long para comparar de una vez.
+	 */
+	private long key(int u) {
+		int m = Math.min(g[u], rhs[u]);
+		int x = u % width, y = u / width;
+		long k1 = (long) m + Math.abs(x - startX) + Math.abs(y - startY) + km;
+		return (k1 << 32) | m;
+	}
+
+	private void push(int u, long k) {
+		heap[heapSize] = u;
+		heapKey[heapSize] = k;
+		heapPos[u] = heapSize + 1;
+		siftUp(heapSize++);
+	}
+
+	private void remove(int u) {
+		int i = heapPos[u] - 1;
+		heapPos[u] = 0;
+		heapSize--;
+		if (i == heapSize)
+			return;
+		long old = heapKey[i];
+		heap[i] = heap[heapSize];
+		heapKey[i] = heapKey[heapSize];
+		heapPos[heap[i]] = i + 1;
+		if (heapKey[i] < old)
+			siftUp(i);
+		else
+			siftDown(i);
+	}
+
+	private void siftUp(int i) {
+		int u = heap[i];
+		long k = heapKey[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (heapKey[parent] <= k)
+				break;
+			heap[i] = heap[parent];
+			heapKey[i] = heapKey[parent];
+			heapPos[heap[i]] = i + 1;
+			i = parent;
+		}
+		heap[i] = u;
+		heapKey[i] = k;
+		heapPos[u] = i + 1;
+	}
+
+	private void siftDown(int i) {
+		int u = heap[i];
+		long k = heapKey[i];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= heapSize)
+				break;
+			if (child + 1 < heapSize && heapKey[child + 1] < heapKey[child])
+				child++;
+			if (heapKey[child] >= k)
+				break;
+			heap[i] = heap[child];
+			heapKey[i] = heapKey[child];
+			heapPos[heap[i]] = i + 1;
+			i = child;
+		}
+		heap[i] = u;
+		heapKey[i] = k;
+		heapPos[u] = i + 1;
+	}
+}
@@ -0,0 +1,775 @@
+package practica.engine;
+
+import java.util.ArrayList;
+
+import practica.message.Status;
+import practica.util.Map;
+import practica.util.Pair;
+import practica.util.TiledStorage;
+
+/**
+ * Lógica de decisión del drone, sin comunicaciones: lo que sabe el drone (posición, gonio, radar
+ * y su mapa de casillas visitadas) y la escalada con la que decide el siguiente movimiento.
+ * La usan el agente Drone y la Simulation sin agentes.
+ *
+ * Con setMode(DSTAR_LITE) el drone no usa la escalada: apunta en su mapa los obstáculos que ve y
+ * planifica con D* Lite (ver DStarLite) hasta la casilla a la que apunta el gonio.
+ *
+ * Si el satélite manda en el status el camino hasta el objetivo (Status.hasPathInfo) el drone lo sigue
+ * en cualquier modo: el satélite ve el mapa entero y su camino ya es el más corto.
+ * @author Jahiel
+ * @author Dani
+ * @author Jonay
+ */
+public class DroneLogic {
+	public static final int NORTE = 3;
+	public static final int OESTE = 2;
+	public static final int SUR = 1;
+	public static final int ESTE = 0;
+	public static final int END = -1;
+	// Modos de decisión
+	public static final int HILL_CLIMBING = 0;
+	public static final int DSTAR_LITE = 1;
+	/** Nodos que D* Lite expande como mucho por paso, por defecto (ver setPlanningBudget). */
+	public static final int DEFAULT_PLANNING_BUDGET = 20000;
+	// Desplazamiento de cada movimiento, indexado por ESTE, SUR, OESTE y NORTE
+	static final int[] MOVE_X = {1, 0, -1, 0}, MOVE_Y = {0, 1, 0, -1};
+
+	private final int LIMIT_MOVEMENTS;
+	private boolean goal;
+	private int posX;
+	private int posY;
+	private float angle;
+	private float distance;
+	private int[] surroundings;
+	private Map droneMap;
+	private float distanceMin;
+	private int counterStop;
+
+	private boolean dodging = false;
+	private int betterMoveBeforeDodging = -1;
+	// Si es true se escribe por consola el razonamiento de think()
+	private boolean verbose = false;
+
+	// Datos de los cuatro movimientos, indexados por ESTE, SUR, OESTE y NORTE: distancia al objetivo
+	// después del movimiento y si la escalada lo permite. Se reutilizan en cada think() para no crear
+	// objetos en cada paso.
+	private final float[] moveDist = new float[4];
+	private final boolean[] moveValid = new boolean[4];
+	// Movimientos ordenados por distancia (de menor a mayor)
+	private final int[] order = new int[4];
+	// Entrada de NeighbourhoodTable del vecindario actual
+	private int neighbourhood;
+	// Cola y marcas del recorrido de markWindow, del tamaño de la ventana del radar
+	private int[] pocket = new int[0], pocketSeen = new int[0];
+	private int pocketRun = 0;
+	// Si el último status traía ventana del radar (radio mayor que 1)
+	private boolean windowed = false;
+
+	private int mode = HILL_CLIMBING;
+	private int planningBudget = DEFAULT_PLANNING_BUDGET;
+	// Se crea al pasar a DSTAR_LITE
+	private DStarLite planner;
+	// Camino que manda el satélite, si lo manda
+	private boolean pathInfo = false;
+	private int pathDistance, bestMove;
+
+	public DroneLogic(int mapWidth, int mapHeight) {
+		this(mapWidth, mapHeight, 0, 0);
+	}
+
+	/**
+	 * Drone que empieza en otra posición que no es (0, 0).
+	 * @param mapWidth 	Anchura del mapa.
+	 * @param mapHeight Altura del mapa.
+	 * @param startX 	Posición inicial X, la misma que la del World.
+	 * @param startY 	Posición inicial Y.
+	 */
+	public DroneLogic(int mapWidth, int mapHeight, int startX, int startY) {
+		surroundings = new int[9];
+		// Mapa por baldosas: sólo ocupa memoria donde el drone ha dejado rastro
+		droneMap = new Map(new TiledStorage(mapHeight, mapWidth));
+		//Ahora el limite depende del tamaño del mapa
+		LIMIT_MOVEMENTS = mapWidth + mapHeight;
+		posX = startX;
+		posY = startY;
+		distanceMin = 999999;
+		counterStop = 0;
+	}
+
+	/**
+	 * Se comprueba si el movimiento realizado por el Drone a mejorado la distancia absoluta con 
+	 * respecto a la baliza:
+	 *  - Si la mejora se almacena esa nueva distancia minima alcanzada por el drone.
+	 *  - En caso contraria se comprueba que no se halla alcanzado el tope de movimientos permitidos
+	 *  sin mejorar la distancia. Si se supera el tope de movimientos se finaliza la ejecución sin
+	 *  haber encontrado solución al problema.
+	 * @param distance Distancia absoluta a la que se encuentra el drone con respecto a la baliza.
+	 * @return Se devuelve True si se debe finalizar y False en caso contrario.
+	 * @author jahiel
+	 */
+	private boolean stop(float distance){
+		
+		if(distance < distanceMin){
+			distanceMin = distance;
+			counterStop = 0;
+			return false;
+		}else
+			counterStop++;
+		
+		if(counterStop >= LIMIT_MOVEMENTS)
+			return true;
+		else
+			return false;
+
+	}
+	/**
+	 * Método donde el dron decide a qué dirección mover.
+	 * @author Dani
+	 * @return dirección a la que se moverá.
+	 */
+	public int think(){
+		if (pathInfo)
+			return (goal || pathDistance == Status.UNREACHABLE) ? END : bestMove;
+		if (mode == DSTAR_LITE)
+			return thinkDStar();
+
+		/*La estructura del agente esta formada por task accomplishing behaviours (TAB).
+		 *Para que se vean mejor cuales son las comprobaciones de estos TAB pondre en los comentarios TABi donde i
+		 *es el orden del TAB empezando por el más crítico (i=1) al menos crítico.
+		 */
+		
+		//Comprobacion de que no hemos alcanzado el limite de movimientos sin mejorar la distancia
+		
+		if(stop(distance))
+			return END;
+		
+		//TAB1 Si hemos llegado al objetivo hemos terminado
+		if(goal)
+			return END;
+		
+		evaluateMovements();
+		
+		//Ordenamos los movimientos segun la distancia (de menor a mayor)
+		sortMovements();
+		
+		if(verbose){
+			System.out.println("Dodging: " + dodging);
+			for(int i=0; i<4; i++)
+				System.out.println(moveDist[order[i]] + "," + order[i] + "," + moveValid[order[i]]);
+		}
+		
+		
+		//TAB2 Si estamos esquivando y podemos hacer el movimiento que pretendíamos cuando entramos en el modo entonces lo hacemos
+		if(dodging && moveValid[betterMoveBeforeDodging]){
+			dodging=false;
+			if(verbose)
+				System.out.println("Saliendo dodging: " + betterMoveBeforeDodging);
+			return betterMoveBeforeDodging;
+		}
+		
+		//TAB3 Si estamos esquivando y podemos hacer un movimiento que nos deje cerda de un obstaculo lo hacemos
+		
+		//Al lado de un obstaculo (en un movimiento)
+		if(dodging)
+			for(int i=0; i<4; i++){
+				int move = order[i];
+				if(moveValid[move] && (isCornerObstacle(move, (move+1)%4) || isCornerObstacle(move, (move+3)%4)))
+					return move;
+			}
+		
+		//Al lado de un obstaculo (en dos movimientos)
+		if(dodging){
+			for(int i=0; i<4; i++){
+				int move = order[i];
+				if(moveValid[move] && (isObstacle((move+1)%4) || isObstacle((move+3)%4)))
+					return move;
+			}
+		}
+		
+		
+		//TAB4 A partir de aqui comienza la ejecucion del algoritmo de escalada
+		
+		//Si podemos hacer el mejor movimiento lo hacemos
+		//Si no podemos y es debido a que hay un obstaculo pasamos al modo esquivar
+		if(moveValid[order[0]]){
+			return order[0];
+		}else{
+			if(isObstacle(order[0]) && !dodging){
+				dodging=true;
+				betterMoveBeforeDodging=order[0];
+				if(verbose)
+					System.out.println("Entrando dodging: "+betterMoveBeforeDodging);
+			}
+		}
+		
+		int second=-1, third=-1;
+		//Para hallar los dos mejores movimientos posibles (si existen) recorremos el array de peor a mejor
+		//Si un movimiento es posible entonces hemos encontrado uno mejor que los que encontrasemos antes
+		//Desplazamos los valores encontrados antes (siempre se queda en second el mejor posible y en third el segundo mejor posible)
+		for(int i=3; i>=0; i--){
+			if(moveValid[order[i]]){
+				third = second;
+				second = order[i];
+			}
+		}
+		
+		//Si third no existe nuestra unica posibilidad es second
+		if(third==-1)
+			return second;
+		
+		//Si second no existe (y por lo tanto third tampoco) entonces no tenemos movimientos
+		if(second==-1)
+			return END;
+		
+		
+		//Ahora comprobamos si existe empate entre ambos (distancias parecidas).
+		//Si no hay empate nos quedamos con el segundo
+		//El valor de margen de error debe ser ajustado "a mano" en caso de usar distancias.
+		//En caso de usar el angulo se puede poneer un valor mejor pero los calculos son mas coñazo
+		float error=1.0f;
+		int better=order[0], decision;
+		float distSecond=moveDist[second], distThird=moveDist[third];
+		if(Math.abs(distSecond-distThird)<error && dodging && third==(second+2)%4){
+			//El empate se decide por los obstaculos
+			//Si la esquina del tercero esta libre pero la del segundo no, nos quedamos con esa
+			//En cualquier otro caso nos quedamos con el segundo mejor movimiento
+			if(isCornerLibre(better, third) && isCornerObstacle(better, second)){
+				decision = third;
+			}else{
+				decision = second;
+			}
+				
+		}else{
+			decision = second;
+		}
+		
+		return decision;
+	}
+
+	/**
+	 * Calcula cuántas veces seguidas se puede repetir un movimiento sin que deje de ser el mejor para
+	 * acercarse al objetivo: mientras la distancia que queda en la dirección del movimiento supere a la
+	 * que queda en la otra dirección, la escalada elegiría lo mismo. El plan se corta antes de una casilla
+	 * que la escalada descartaría por estar visitada ella o sus esquinas, y el satélite se encarga de pararlo
+	 * antes de un obstáculo o cuando cambia la zona objetivo más cercana. Esquivando no se planifica, ni
+	 * tampoco si la distancia no es la mínima alcanzada: paso a paso, cada movimiento contaría para stop().
+	 * Con D* Lite tampoco, ni siguiendo el camino del satélite: cada paso puede cambiar el camino. Ni con
+	 * un radar de radio mayor que 1: el satélite sólo manda la ventana de la posición final, así que las
+	 * bolsas que markWindow cerraría en las casillas intermedias quedarían abiertas y la trayectoria
+	 * cambiaría con la longitud del plan.
+	 * @param decision Movimiento elegido por think().
+	 * @param maxPlanLength Máximo de movimientos del plan.
+	 * @return Número de movimientos del plan, entre 1 y el máximo configurado.
+	 */
+	public int planLength(int decision, int maxPlanLength) {
+		if (maxPlanLength <= 1 || dodging || counterStop > 0 || mode == DSTAR_LITE || pathInfo || windowed)
+			return 1;
+		double goalX = posX + Math.cos(angle) * distance, goalY = posY + Math.sin(angle) * distance;
+		double along, across;
+		switch (decision) {
+			case ESTE: along = goalX - posX; across = Math.abs(goalY - posY); break;
+			case OESTE: along = posX - goalX; across = Math.abs(goalY - posY); break;
+			case SUR: along = goalY - posY; across = Math.abs(goalX - posX); break;
+			case NORTE: along = posY - goalY; across = Math.abs(goalX - posX); break;
+			default: return 1;
+		}
+		int length = Math.max(1, Math.min((int) Math.floor(along - across), maxPlanLength));
+		int dx = MOVE_X[decision], dy = MOVE_Y[decision];
+		for (int k = 1; k < length; k++) {
+			int x = posX + k * dx, y = posY + k * dy;
+			// Casilla a la que se movería desde la k-ésima del plan y sus dos esquinas
+			if (droneMap.getValue(x + dx, y + dy) == Map.VISITADO
+					|| droneMap.getValue(x + dx, y + dy) == Map.OBSTACULO
+					|| droneMap.getValue(x + dx + dy, y + dy + dx) == Map.VISITADO
+					|| droneMap.getValue(x + dx - dy, y + dy - dx) == Map.VISITADO)
+				return k;
+		}
+		return length;
+	}
+
+	/**
+	 * Comprueba si la esquina que rodean dos posiciones es un obstáculo.
+	 * @param mov1 Movimiento que nos dejaria en la primera posición 
+	 * @param mov2 Movimiento que nos dejaria en la segunda posición
+	 * @return true si el radar tiene un obstáculo en esa esquina
+	 */
+	private boolean isCornerObstacle(int mov1, int mov2) {
+		int corner = NeighbourhoodTable.CORNER[mov1][mov2];
+		//por si las moscas: con movimientos opuestos la esquina es el centro
+		if(corner < 0)
+			return surroundings[4] == Map.OBSTACULO;
+		return (neighbourhood & (1 << (NeighbourhoodTable.CORNER_OBSTACLE_SHIFT + corner))) != 0;
+	}
+
+	/**
+	 * Comprueba si el radar dice LIBRE en la esquina que rodean dos posiciones.
+	 * @param mov1 Movimiento que nos dejaria en la primera posición 
+	 * @param mov2 Movimiento que nos dejaria en la segunda posición
+	 * @return true si el radar tiene LIBRE en esa esquina
+	 */
+	private boolean isCornerLibre(int mov1, int mov2) {
+		int corner = NeighbourhoodTable.CORNER[mov1][mov2];
+		if(corner < 0)
+			return surroundings[4] == Map.LIBRE;
+		return (neighbourhood & (1 << (NeighbourhoodTable.CORNER_LIBRE_SHIFT + corner))) != 0;
+	}
+
+	/**
+	 * Comprueba si hay un obstáculo en la dirección de un movimiento (getValidMovements() == OBSTACULO).
+	 * @param move Movimiento.
+	 * @return true si hay un obstáculo.
+	 */
+	private boolean isObstacle(int move) {
+		return (neighbourhood & (1 << (NeighbourhoodTable.OBSTACLE_SHIFT + move))) != 0;
+	}
+
+	/**
+	 * Calcula las distancias y las condiciones de los cuatro posibles movimientos y las deja en
+	 * moveDist y moveValid. No crea objetos.
+	 */
+	private void evaluateMovements(){
+		//Las condiciones de cada movimiento salen de la tabla del vecindario
+		neighbourhood = NeighbourhoodTable.lookup(NeighbourhoodTable.key(
+				NeighbourhoodTable.cornerClass(known(0, -1, -1), isVisited(-1, -1)),
+				NeighbourhoodTable.cornerClass(known(2, 1, -1), isVisited(1, -1)),
+				NeighbourhoodTable.cornerClass(known(6, -1, 1), isVisited(-1, 1)),
+				NeighbourhoodTable.cornerClass(known(8, 1, 1), isVisited(1, 1)),
+				NeighbourhoodTable.edgeClass(known(5, 1, 0), isVisited(1, 0)),
+				NeighbourhoodTable.edgeClass(known(7, 0, 1), isVisited(0, 1)),
+				NeighbourhoodTable.edgeClass(known(3, -1, 0), isVisited(-1, 0)),
+				NeighbourhoodTable.edgeClass(known(1, 0, -1), isVisited(0, -1))));
+		for(int move=ESTE; move<=NORTE; move++)
+			moveValid[move] = (neighbourhood & (1 << (NeighbourhoodTable.VALID_SHIFT + move))) != 0;
+
+		double posiOX=0,posiOY=0;
+
+		posiOX= (posX + (Math.cos(angle) * distance));
+		posiOY= (posY + (Math.sin(angle)*distance));
+
+		//La distancia al objetivo después de cada movimiento
+		moveDist[ESTE]= (float) Math.sqrt(Math.pow((posiOX-(posX+1)),2)+Math.pow((posiOY-posY), 2));
+		moveDist[SUR]= (float) Math.sqrt(Math.pow((posiOX-posX),2)+Math.pow((posiOY-(posY+1)), 2));
+		moveDist[OESTE]= (float) Math.sqrt(Math.pow((posiOX-(posX-1)),2)+Math.pow((posiOY-posY), 2));
+		moveDist[NORTE]= (float) Math.sqrt(Math.pow((posiOX-posX),2)+Math.pow((posiOY-(posY-1)), 2));
+	}
+
+	/**
+	 * Lo que se sabe de una casilla del radar: lo que dice el radar, salvo que el mapa del drone la
+	 * tenga como obstáculo (con un radar de radio mayor que 1, ver markWindow).
+	 * @param cell Casilla del radar.
+	 * @param dx Desplazamiento en X desde el drone.
+	 * @param dy Desplazamiento en Y desde el drone.
+	 * @return Valor de la casilla.
+	 */
+	private int known(int cell, int dx, int dy){
+		return (droneMap.getValue(posX + dx, posY + dy) == Map.OBSTACULO) ? Map.OBSTACULO : surroundings[cell];
+	}
+
+	/**
+	 * Comprueba si una casilla junto al drone está visitada según su mapa.
+	 * @param dx Desplazamiento en X desde el drone.
+	 * @param dy Desplazamiento en Y desde el drone.
+	 * @return true si está VISITADO.
+	 */
+	private boolean isVisited(int dx, int dy){
+		return droneMap.getValue(posX + dx, posY + dy) == Map.VISITADO;
+	}
+
+	/**
+	 * Ordena los movimientos por distancia en order con una red de ordenación de 4 elementos (5
+	 * comparaciones). Con distancias iguales va antes el movimiento de menor índice, así que el
+	 * resultado es el mismo que el de una ordenación estable como Collections.sort.
+	 */
+	private void sortMovements(){
+		order[0] = ESTE; order[1] = SUR; order[2] = OESTE; order[3] = NORTE;
+		compareExchange(0, 1);
+		compareExchange(2, 3);
+		compareExchange(0, 2);
+		compareExchange(1, 3);
+		compareExchange(1, 2);
+	}
+
+	/**
+	 * Intercambia order[i] y order[j] si el de i va detrás del de j.
+	 */
+	private void compareExchange(int i, int j){
+		int a = order[i], b = order[j];
+		if(moveDist[a] > moveDist[b] || (moveDist[a] == moveDist[b] && a > b)){
+			order[i] = b;
+			order[j] = a;
+		}
+	}
+
+	/**
+	 * Calcula las distancias y las condiciones de los cuatro posibles movimientos.
+	 * think() no lo usa: trabaja sobre arrays reutilizados para no crear objetos en cada paso.
+	 * @return Array con los movimientos
+	 */
+	public ArrayList<Pair> getAllMovements(){
+		evaluateMovements();
+		ArrayList<Pair> mispares=new ArrayList<Pair>();
+		for(int move=ESTE; move<=NORTE; move++)
+			mispares.add(new Pair(moveDist[move],move,moveValid[move]));
+		return mispares;
+	}
+
+	/**
+	 * Método para obtener un array con los movimientos libres del drone usando la memoria del mismo.
+	 * @author Dani
+	 * @author Jonay
+	 * @return Un array con lo que hay en las posiciones Este, Sur, Oeste y Norte a las que se podría mover, en ese orden.
+	 */
+	// POST DIAGRAMA DE CLASES
+	public int[] getValidMovements() {
+		return fillValidMovements(new int[4]);
+	}
+
+	/**
+	 * Como getValidMovements, pero escribe en un array ya creado.
+	 * @param movimientosLibres Array destino, de 4 posiciones.
+	 * @return El mismo array.
+	 */
+	private int[] fillValidMovements(int[] movimientosLibres) {
+		/* TODO: Revisar la suma de valores. ¿Qué pasa si el drone ya ha guardado que es una posición
+		 * ocupada (un 1) y el satélite le envía otro 1 de que está ocupada? ¿Da un 2 de visitado?
+		 * Estos errores ocurrirán cuando el dron guarde en su mapa lo que hay en las posiciones.
+		 */
+		/* TODO (Alberto)
+		 * El drone no guarda los obstaculos en el mapa, solo si los ha visitado o no.
+		 * Los posible valores de la suma serian:
+		 * Vacio y no visitado = 0
+		 * Vacio y visitado = 2
+		 * Obstaculo = 1
+		 * Para mi estan bien. No veo el fallo.
+		 * 
+		 * Ya si veo el fallo
+		 */
+		// CAMBIO REALIZADO: El norte puesto como posY-1 y sur posY+1 (estaba al revés)
+		/*movimientosLibres[NORTE] = surroundings[1] + droneMap.getValue(posX, posY - 1);
+		// La siguiente línea de código ¡PETA! porque intenta acceder a la posición X = -1 (arreglado)
+		movimientosLibres[OESTE] = surroundings[3] + droneMap.getValue(posX - 1, posY);
+		movimientosLibres[SUR] = surroundings[7] + droneMap.getValue(posX, posY + 1);
+		movimientosLibres[ESTE] = surroundings[5] + droneMap.getValue(posX + 1, posY);
+		return movimientosLibres;*/
+		
+		if(surroundings[1]==Map.LIBRE || surroundings[1]==Map.OBJETIVO){
+			movimientosLibres[NORTE] = droneMap.getValue(posX, posY - 1);
+		}else{
+			movimientosLibres[NORTE] = surroundings[1];
+		}
+		if(surroundings[3]==Map.LIBRE || surroundings[3]==Map.OBJETIVO){
+			movimientosLibres[OESTE] = droneMap.getValue(posX-1, posY);
+		}else{
+			movimientosLibres[OESTE] = surroundings[3];
+		}
+		if(surroundings[7]==Map.LIBRE || surroundings[7]==Map.OBJETIVO){
+			movimientosLibres[SUR] = droneMap.getValue(posX, posY + 1);
+		}else{
+			movimientosLibres[SUR] = surroundings[7];
+		}
+		if(surroundings[5]==Map.LIBRE || surroundings[5]==Map.OBJETIVO){
+			movimientosLibres[ESTE] = droneMap.getValue(posX + 1, posY);
+		}else{
+			movimientosLibres[ESTE] = surroundings[5];
+		}
+		
+		return movimientosLibres;
+	}
+	
+	/**
+	 * Método para obtener un array con los valores combinados de surroundings y el mapa
+	 * @return Un array con lo que hay en las posiciones de alrededor. Los valores posibles son LIBRE, OBSTACULO y VISITADO
+	 */
+	public int[] getValidSquares() {
+		return fillValidSquares(new int[9]);
+	}
+
+	/**
+	 * Como getValidSquares, pero escribe en un array ya creado.
+	 * @param movimientosLibres Array destino, de 9 posiciones.
+	 * @return El mismo array.
+	 */
+	private int[] fillValidSquares(int[] movimientosLibres) {
+
+		for(int i=0; i<3; i++)
+			for(int j=0; j<3; j++)
+				if(surroundings[i+j*3]==Map.LIBRE || surroundings[i+j*3]==Map.OBJETIVO){
+					movimientosLibres[i+j*3]=droneMap.getValue(posX+i-1, posY+j-1);
+				}else{
+					movimientosLibres[i+j*3]=surroundings[i+j*3];
+				}
+		
+		return movimientosLibres;
+	}
+	/**
+	 * Actualiza lo que sabe el drone con el status recibido. Si el status responde a un plan, las
+	 * posiciones intermedias también quedan visitadas.
+	 * @param status Status de la nueva posición.
+	 * @param plan   Movimientos del plan enviado (sólo se usa si status.getMovesApplied() > 1).
+	 */
+	public void update(Status status, int[] plan) {
+		for (int k = 0; k < status.getMovesApplied() - 1; k++) {
+			droneMap.setvalue(posX,posY,Map.VISITADO);
+			posX += MOVE_X[plan[k]];
+			posY += MOVE_Y[plan[k]];
+		}
+		//actualizamos el mapa del drone antes de recoger las nuevas posiciones X e Y.
+		droneMap.setvalue(posX,posY,Map.VISITADO);
+		posX = status.getPositionX();
+		posY = status.getPositionY();
+
+		angle = (float) status.getAlpha();
+		//Recoger distancia.
+		distance= (float) status.getDist();
+		
+		goal = status.isGoal();
+
+		System.arraycopy(status.getRadar(), 0, surroundings, 0, surroundings.length);
+		pathInfo = status.hasPathInfo();
+		pathDistance = status.getPathDistance();
+		bestMove = status.getBestMove();
+		windowed = status.getRadarRadius() > 1;
+		if (windowed)
+			markWindow(status);
+		if (mode == DSTAR_LITE)
+			senseObstacles();
+	}
+
+	/**
+	 * Modo D* Lite: apunta en el mapa del drone los obstáculos del radar y le pasa al planificador los
+	 * de las casillas de alrededor junto con la nueva posición.
+	 *
+	 * Con un radar de radio mayor que 1 la ventana se queda en el mapa del drone (ver markWindow) pero
+	 * el planificador no la ve hasta que el drone llega al lado. Como supone libre lo que no conoce, ver
+	 * antes un trozo más de la pared que está rodeando le hace cambiar al otro lado de los obstáculos
+	 * grandes, que tampoco conoce y suele ser más largo (Challenge3 desde 0,0 con toda la ventana: 1245
+	 * pasos con radio 3 y 779 con radio 1). Las bolsas que cierra markWindow sí se usan: en cuanto el
+	 * drone llega a su entrada son obstáculos de alrededor y no entra en ellas.
+	 */
+	private void senseObstacles() {
+		for (int j = 0; j < 3; j++)
+			for (int i = 0; i < 3; i++)
+				if (surroundings[i + j * 3] == Map.OBSTACULO && isInside(posX + i - 1, posY + j - 1))
+					droneMap.setvalue(posX + i - 1, posY + j - 1, Map.OBSTACULO);
+		planner.moveStart(posX, posY);
+		planner.sense(droneMap, posX - 1, posY - 1, posX + 1, posY + 1);
+	}
+
+	/**
+	 * Decisión en modo D* Lite. Si hay una casilla objetivo al lado se va a ella; si no, se sigue el
+	 * camino más corto hasta la casilla a la que apunta el gonio suponiendo libre lo que no se ha visto.
+	 * Si la búsqueda no ha llegado al drone dentro del presupuesto del paso se avanza hacia el objetivo
+	 * en línea recta. Termina al llegar o cuando con lo que sabe no hay camino.
+	 * @return dirección a la que se moverá.
+	 */
+	private int thinkDStar() {
+		if (goal)
+			return END;
+		for (int move = ESTE; move <= NORTE; move++)
+			if (surroundings[NeighbourhoodTable.EDGE_CELLS[move]] == Map.OBJETIVO)
+				return move;
+
+		updateGoal();
+		boolean done = planner.plan();
+		int move = planner.bestMove();
+		if (verbose)
+			System.out.println("D* Lite: objetivo " + planner.getGoalX() + "," + planner.getGoalY()
+					+ " coste " + planner.getCost() + (done ? "" : " (búsqueda sin terminar)"));
+		if (move == END) {
+			if (done && planner.isUnreachable())
+				return END;
+			move = straightMove();
+		}
+		return move;
+	}
+
+	/**
+	 * Casilla objetivo del planificador a partir del gonio. Sólo se empieza otra búsqueda si se aleja
+	 * más de una casilla de la anterior (el gonio apunta a otra zona), no por el redondeo. Si la casilla
+	 * es un obstáculo conocido se acerca hacia el drone hasta una libre.
+	 */
+	private void updateGoal() {
+		double dx = Math.cos(angle) * distance, dy = Math.sin(angle) * distance;
+		int gx = (int) Math.round(posX + dx), gy = (int) Math.round(posY + dy);
+		for (int k = 1, steps = (int) Math.ceil(distance); k <= steps && !planner.isFree(gx, gy); k++) {
+			gx = (int) Math.round(posX + dx * (steps - k) / steps);
+			gy = (int) Math.round(posY + dy * (steps - k) / steps);
+		}
+		if (!planner.hasGoal() || Math.abs(gx - planner.getGoalX()) > 1 || Math.abs(gy - planner.getGoalY()) > 1
+				|| !planner.isFree(planner.getGoalX(), planner.getGoalY()))
+			planner.reset(gx, gy, posX, posY);
+	}
+
+	/**
+	 * Movimiento libre que más acerca al objetivo, para cuando D* Lite todavía no tiene camino.
+	 */
+	private int straightMove() {
+		int best = END;
+		float bestDist = Float.MAX_VALUE;
+		double goalX = posX + Math.cos(angle) * distance, goalY = posY + Math.sin(angle) * distance;
+		for (int move = ESTE; move <= NORTE; move++) {
+			int x = posX + MOVE_X[move], y = posY + MOVE_Y[move];
+			if (!planner.isFree(x, y))
+				continue;
+			float dist = (float) Math.hypot(goalX - x, goalY - y);
+			if (dist < bestDist) {
+				best = move;
+				bestDist = dist;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Elige cómo decide el drone. Hay que llamarlo antes del primer update.
+	 * @param mode HILL_CLIMBING (por defecto) o DSTAR_LITE.
+	 * @throws IllegalArgumentException Si el mapa es demasiado grande para D* Lite (ver DStarLite).
+	 */
+	public void setMode(int mode) {
+		if (mode == DSTAR_LITE && planner == null)
+			planner = new DStarLite(droneMap.getWidth(), droneMap.getHeigh(), planningBudget);
+		this.mode = mode;
+	}
+
+	public int getMode() {
+		return mode;
+	}
+
+	/**
+	 * Nodos que D* Lite expande como mucho en cada paso, para que un paso no tarde más en mapas
+	 * grandes. Lo que falte se sigue buscando en los pasos siguientes.
+	 * @param planningBudget Nodos por paso; 0 es sin límite.
+	 */
+	public void setPlanningBudget(int planningBudget) {
+		this.planningBudget = planningBudget;
+		if (planner != null)
+			planner.setBudget(planningBudget);
+	}
+
+	/**
+	 * @return Nodos expandidos por D* Lite hasta ahora (0 con la escalada).
+	 */
+	public long getPlanningExpansions() {
+		return (planner == null) ? 0 : planner.getExpanded();
+	}
+
+	/**
+	 * Apunta en el mapa del drone los obstáculos de la ventana del radar y cierra las bolsas: zonas
+	 * libres junto al drone que, dentro de la ventana, están rodeadas de obstáculos salvo por la casilla
+	 * del drone y no tienen ninguna casilla objetivo. Entrar en ellas sólo serviría para volver a salir,
+	 * así que también se marcan como obstáculo. Con radio 1 no se llama y el drone se comporta como siempre.
+	 * @param status Status con la ventana.
+	 */
+	private void markWindow(Status status) {
+		int radius = status.getRadarRadius(), side = status.getWindowSide();
+		for (int dy = -radius; dy <= radius; dy++)
+			for (int dx = -radius; dx <= radius; dx++)
+				if (status.getWindowCell(dx, dy) == Map.OBSTACULO && isInside(posX + dx, posY + dy)
+						&& droneMap.getValue(posX + dx, posY + dy) == Map.LIBRE)
+					droneMap.setvalue(posX + dx, posY + dy, Map.OBSTACULO);
+
+		if (pocket.length < side * side) {
+			pocket = new int[side * side];
+			pocketSeen = new int[side * side];
+		}
+		// Las zonas de los cuatro vecinos se marcan con el mismo número: si dos vecinos están en la misma
+		// zona se recorre una sola vez
+		pocketRun++;
+		for (int move = ESTE; move <= NORTE; move++)
+			closePocket(status, MOVE_X[move], MOVE_Y[move]);
+	}
+
+	/**
+	 * Recorre en anchura la zona de la ventana a la que se llega desde una casilla junto al drone sin
+	 * pasar por él, y la marca como obstáculo si es una bolsa cerrada (ver markWindow).
+	 * @param status Status con la ventana.
+	 * @param startX Desplazamiento en X de la casilla de inicio.
+	 * @param startY Desplazamiento en Y de la casilla de inicio.
+	 */
+	private void closePocket(Status status, int startX, int startY) {
+		int radius = status.getRadarRadius(), side = status.getWindowSide();
+		if (!isOpen(status, startX, startY) || pocketSeen[(startX + radius) + (startY + radius) * side] == pocketRun)
+			return;
+		int head = 0, tail = 0;
+		boolean closed = true;
+		pocket[tail++] = (startX + radius) + (startY + radius) * side;
+		pocketSeen[pocket[0]] = pocketRun;
+		while (head < tail) {
+			int cell = pocket[head++];
+			int dx = cell % side - radius, dy = cell / side - radius;
+			// Si llega al borde de la ventana puede seguir fuera; si tiene un objetivo hay que entrar
+			if (Math.abs(dx) == radius || Math.abs(dy) == radius || status.getWindowCell(dx, dy) == Map.OBJETIVO) {
+				closed = false;
+				break;
+			}
+			for (int move = ESTE; move <= NORTE; move++) {
+				int nx = dx + MOVE_X[move], ny = dy + MOVE_Y[move];
+				int next = (nx + radius) + (ny + radius) * side;
+				if ((nx != 0 || ny != 0) && pocketSeen[next] != pocketRun && isOpen(status, nx, ny)) {
+					pocketSeen[next] = pocketRun;
+					pocket[tail++] = next;
+				}
+			}
+		}
+		if (!closed)
+			return;
+		for (int i = 0; i < tail; i++) {
+			int x = posX + pocket[i] % side - radius, y = posY + pocket[i] / side - radius;
+			if (droneMap.getValue(x, y) == Map.LIBRE)
+				droneMap.setvalue(x, y, Map.OBSTACULO);
+		}
+	}
+
+	/**
+	 * Comprueba si se puede pasar por una casilla de la ventana según la ventana y el mapa del drone.
+	 */
+	private boolean isOpen(Status status, int dx, int dy) {
+		return isInside(posX + dx, posY + dy) && status.getWindowCell(dx, dy) != Map.OBSTACULO
+				&& droneMap.getValue(posX + dx, posY + dy) != Map.OBSTACULO;
+	}
+
+	private boolean isInside(int x, int y) {
+		return x >= 0 && y >= 0 && x < droneMap.getWidth() && y < droneMap.getHeigh();
+	}
+
+	/**
+	 * Getter del mapa del drone.
+	 * @return el mapa del drone.
+	 */
+	public Map getDroneMap() {
+		return droneMap;
+	}
+
+	/**
+	 * Getter del radar.
+	 * @return los alrededores del drone, indexados por i+j*3.
+	 */
+	public int[] getSurroundings() {
+		return surroundings;
+	}
+
+	public int getPosX() {
+		return posX;
+	}
+
+	public int getPosY() {
+		return posY;
+	}
+
+	public boolean isGoal() {
+		return goal;
+	}
+
+	public boolean isDodging() {
+		return dodging;
+	}
+
+	/**
+	 * Activa o desactiva la escritura por consola del razonamiento de think().
+	 * @param verbose true para escribirlo.
+	 */
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+}
@@ -0,0 +1,187 @@
+package practica.engine;
+
+import practica.util.Map;
+
+/**
+ * Tabla, calculada una vez al cargar la clase, con todo lo que la escalada de DroneLogic mira de las
+ * 9 casillas que rodean al drone: qué movimientos permite, en qué direcciones hay un obstáculo y cómo
+ * son las esquinas. El vecindario se resume en una clave pequeña (ver key) y cada paso se resuelve
+ * con una consulta a la tabla en vez de con las comparaciones de antes.
+ *
+ * Cada casilla se clasifica combinando el radar (surroundings) con el mapa del drone, igual que
+ * hacía getValidSquares:
+ * 	- Casillas de los lados (1, 3, 5, 7): LIBRE, OBSTACULO u otra cosa (visitada, objetivo ya
+ * 	  visitado o un valor desconocido). No hace falta más: sólo se pregunta si son LIBRE u OBSTACULO.
+ * 	- Esquinas (0, 2, 6, 8): además hay que saber si están visitadas y si el radar dice LIBRE, porque
+ * 	  el desempate de think() compara la esquina del radar con LIBRE. Salen 5 clases.
+ * 	- El centro no se usa.
+ *
+ * Bits de cada entrada:
+ * 	- 0-3: el movimiento (ESTE, SUR, OESTE, NORTE) cumple las condiciones de la escalada.
+ * 	- 4-7: hay un obstáculo en esa dirección (lo que era getValidMovements() == OBSTACULO).
+ * 	- 8-11: la esquina (0, 2, 6, 8, en ese orden) es un obstáculo.
+ * 	- 12-15: el radar dice LIBRE en la esquina.
+ */
+final class NeighbourhoodTable {
+	static final int VALID_SHIFT = 0, OBSTACLE_SHIFT = 4, CORNER_OBSTACLE_SHIFT = 8, CORNER_LIBRE_SHIFT = 12;
+
+	// Clases de los lados
+	static final int EDGE_LIBRE = 0, EDGE_OBSTACULO = 1, EDGE_OTHER = 2;
+	static final int EDGE_CLASSES = 3;
+	// Clases de las esquinas
+	static final int CORNER_LIBRE = 0;			// radar LIBRE, no visitada
+	static final int CORNER_NOT_VISITED = 1;	// ni LIBRE en el radar, ni obstáculo, ni visitada
+	static final int CORNER_OBSTACULO = 2;
+	static final int CORNER_VISITADO = 3;		// visitada, el radar no dice LIBRE
+	static final int CORNER_LIBRE_VISITADO = 4;	// radar LIBRE, pero visitada según el mapa del drone
+	static final int CORNER_CLASSES = 5;
+
+	/** Casillas del radar de las esquinas, en el orden de los bits. */
+	static final int[] CORNER_CELLS = {0, 2, 6, 8};
+	/** Casillas del radar de cada movimiento (ESTE, SUR, OESTE, NORTE). */
+	static final int[] EDGE_CELLS = {5, 7, 3, 1};
+	/** Esquina (índice en CORNER_CELLS) entre dos movimientos, o -1 si son opuestos (el centro). */
+	static final int[][] CORNER = new int[4][4];
+
+	static final int SIZE = CORNER_CLASSES * CORNER_CLASSES * CORNER_CLASSES * CORNER_CLASSES
+			* EDGE_CLASSES * EDGE_CLASSES * EDGE_CLASSES * EDGE_CLASSES;
+	private static final char[] TABLE = new char[SIZE];
+
+	static {
+		for (int[] row : CORNER)
+			java.util.Arrays.fill(row, -1);
+		// Mismas esquinas que devolvía getCorner
+		setCorner(DroneLogic.ESTE, DroneLogic.SUR, 8);
+		setCorner(DroneLogic.ESTE, DroneLogic.NORTE, 2);
+		setCorner(DroneLogic.SUR, DroneLogic.OESTE, 6);
+		setCorner(DroneLogic.OESTE, DroneLogic.NORTE, 0);
+		CORNER[DroneLogic.ESTE][DroneLogic.ESTE] = 1;
+		CORNER[DroneLogic.SUR][DroneLogic.SUR] = 3;
+		CORNER[DroneLogic.OESTE][DroneLogic.OESTE] = 2;
+		CORNER[DroneLogic.NORTE][DroneLogic.NORTE] = 0;
+
+		int[] validSqr = new int[9];
+		int[] corners = new int[4];
+		for (int key = 0; key < SIZE; key++) {
+			int rest = key;
+			for (int e = 3; e >= 0; e--) {
+				validSqr[EDGE_CELLS[e]] = edgeValue(rest % EDGE_CLASSES);
+				rest /= EDGE_CLASSES;
+			}
+			for (int c = 3; c >= 0; c--) {
+				corners[c] = rest % CORNER_CLASSES;
+				validSqr[CORNER_CELLS[c]] = cornerValue(corners[c]);
+				rest /= CORNER_CLASSES;
+			}
+			TABLE[key] = (char) entry(validSqr, corners);
+		}
+	}
+
+	private NeighbourhoodTable() {
+	}
+
+	private static void setCorner(int mov1, int mov2, int cell) {
+		int corner = java.util.Arrays.binarySearch(CORNER_CELLS, cell);
+		CORNER[mov1][mov2] = corner;
+		CORNER[mov2][mov1] = corner;
+	}
+
+	/**
+	 * Valor de getValidSquares que representa a una clase de lado.
+	 */
+	private static int edgeValue(int edgeClass) {
+		switch (edgeClass) {
+			case EDGE_LIBRE: return Map.LIBRE;
+			case EDGE_OBSTACULO: return Map.OBSTACULO;
+			default: return Map.VISITADO;
+		}
+	}
+
+	/**
+	 * Valor de getValidSquares que representa a una clase de esquina.
+	 */
+	private static int cornerValue(int cornerClass) {
+		switch (cornerClass) {
+			case CORNER_OBSTACULO: return Map.OBSTACULO;
+			case CORNER_VISITADO:
+			case CORNER_LIBRE_VISITADO: return Map.VISITADO;
+			default: return Map.LIBRE;
+		}
+	}
+
+	/**
+	 * Entrada de la tabla: las mismas condiciones que calculaba getAllMovements (basicond) sobre las
+	 * casillas de getValidSquares, más los obstáculos y las esquinas.
+	 */
+	private static int entry(int[] validSqr, int[] corners) {
+		boolean[] basicond = new boolean[4];
+		basicond[DroneLogic.ESTE]= 	validSqr[5]==Map.LIBRE	&& !(validSqr[2]==Map.VISITADO || validSqr[8]==Map.VISITADO);
+		basicond[DroneLogic.SUR]= 	validSqr[7]==Map.LIBRE	&& !(validSqr[6]==Map.VISITADO || validSqr[8]==Map.VISITADO);
+		basicond[DroneLogic.OESTE]= validSqr[3]==Map.LIBRE	&& !(validSqr[0]==Map.VISITADO || validSqr[6]==Map.VISITADO);
+		basicond[DroneLogic.NORTE]= validSqr[1]==Map.LIBRE	&& !(validSqr[0]==Map.VISITADO || validSqr[2]==Map.VISITADO);
+
+		if(!(basicond[DroneLogic.ESTE] || basicond[DroneLogic.SUR] || basicond[DroneLogic.OESTE] || basicond[DroneLogic.NORTE])){
+			basicond[DroneLogic.ESTE]= 	validSqr[5]==Map.LIBRE	&& !(validSqr[2]==Map.VISITADO && validSqr[8]==Map.VISITADO);
+			basicond[DroneLogic.SUR]= 	validSqr[7]==Map.LIBRE	&& !(validSqr[6]==Map.VISITADO && validSqr[8]==Map.VISITADO);
+			basicond[DroneLogic.OESTE]= validSqr[3]==Map.LIBRE	&& !(validSqr[0]==Map.VISITADO && validSqr[6]==Map.VISITADO);
+			basicond[DroneLogic.NORTE]= validSqr[1]==Map.LIBRE	&& !(validSqr[0]==Map.VISITADO && validSqr[2]==Map.VISITADO);
+		}
+
+		int entry = 0;
+		for (int d = 0; d < 4; d++) {
+			if (basicond[d])
+				entry |= 1 << (VALID_SHIFT + d);
+			if (validSqr[EDGE_CELLS[d]] == Map.OBSTACULO)
+				entry |= 1 << (OBSTACLE_SHIFT + d);
+			if (corners[d] == CORNER_OBSTACULO)
+				entry |= 1 << (CORNER_OBSTACLE_SHIFT + d);
+			if (corners[d] == CORNER_LIBRE || corners[d] == CORNER_LIBRE_VISITADO)
+				entry |= 1 << (CORNER_LIBRE_SHIFT + d);
+		}
+		return entry;
+	}
+
+	/**
+	 * Clase de un lado a partir del radar y del mapa del drone.
+	 * @param radar 	Valor del radar.
+	 * @param visited 	Si el mapa del drone la tiene como VISITADO.
+	 */
+	static int edgeClass(int radar, boolean visited) {
+		if (radar == Map.LIBRE || radar == Map.OBJETIVO)
+			return visited ? EDGE_OTHER : EDGE_LIBRE;
+		return (radar == Map.OBSTACULO) ? EDGE_OBSTACULO : EDGE_OTHER;
+	}
+
+	/**
+	 * Clase de una esquina a partir del radar y del mapa del drone.
+	 * @param radar 	Valor del radar.
+	 * @param visited 	Si el mapa del drone la tiene como VISITADO.
+	 */
+	static int cornerClass(int radar, boolean visited) {
+		if (radar == Map.LIBRE)
+			return visited ? CORNER_LIBRE_VISITADO : CORNER_LIBRE;
+		if (radar == Map.OBJETIVO)
+			return visited ? CORNER_VISITADO : CORNER_NOT_VISITED;
+		if (radar == Map.OBSTACULO)
+			return CORNER_OBSTACULO;
+		return (radar == Map.VISITADO) ? CORNER_VISITADO : CORNER_NOT_VISITED;
+	}
+
+	/**
+	 * Clave del vecindario: las 4 esquinas en base 5 y los 4 lados en base 3.
+	 * @param c0, c2, c6, c8 				Clases de las esquinas (casillas 0, 2, 6 y 8 del radar).
+	 * @param east, south, west, north 	Clases de los lados.
+	 */
+	static int key(int c0, int c2, int c6, int c8, int east, int south, int west, int north) {
+		int key = ((c0 * CORNER_CLASSES + c2) * CORNER_CLASSES + c6) * CORNER_CLASSES + c8;
+		return (((key * EDGE_CLASSES + east) * EDGE_CLASSES + south) * EDGE_CLASSES + west) * EDGE_CLASSES + north;
+	}
+
+	/**
+	 * @param key Clave del vecindario.
+	 * @return La entrada de la tabla.
+	 */
+	static int lookup(int key) {
+		return TABLE[key];
+	}
+}
@@ -0,0 +1,189 @@
+package practica.engine;
+
+import practica.message.Status;
+import practica.util.Map;
+
+/**
+ * Simulación sin agentes ni mensajes: el drone (DroneLogic) y el satélite (World) se llaman
+ * directamente, paso a paso, en el mismo orden que sigue el protocolo entre los agentes, así que
+ * las trayectorias son las mismas que con Satelite y Drone. No escribe nada por consola.
+ */
+public class Simulation {
+	private final World world;
+	private final DroneLogic drone;
+	private final Status status = new Status();
+	private final int[] plan = new int[Status.MAX_PLAN_LENGTH];
+	private int maxPlanLength = 1;
+	private long steps = 0;
+	// El primer REQUEST del drone y el status con el que responde el satélite
+	private long messages = 2;
+	private boolean finished = false;
+
+	/**
+	 * Prepara la simulación con el drone en (0, 0) y su primer status ya recibido.
+	 * @param map Mapa del mundo. No se modifica.
+	 */
+	public Simulation(Map map) {
+		this(map, 0, 0);
+	}
+
+	/**
+	 * Prepara la simulación con el drone en otra posición inicial.
+	 * @param map 		Mapa del mundo. No se modifica.
+	 * @param startX 	Posición inicial X del drone.
+	 * @param startY 	Posición inicial Y del drone.
+	 */
+	public Simulation(Map map, int startX, int startY) {
+		this(new World(map, startX, startY), map.getWidth(), map.getHeigh());
+	}
+
+	/**
+	 * Prepara la simulación sobre un mundo ya creado, por ejemplo uno que comparte el mapa original
+	 * con otras simulaciones. El drone empieza donde esté el gps del mundo.
+	 * @param world 	Mundo.
+	 * @param width 	Anchura del mapa.
+	 * @param heigh 	Altura del mapa.
+	 */
+	public Simulation(World world, int width, int heigh) {
+		this.world = world;
+		drone = new DroneLogic(width, heigh, world.getGps().getPositionX(), world.getGps().getPositionY());
+		drone.update(world.createStatus(status), plan);
+	}
+
+	/**
+	 * Un paso: el drone decide y el mundo aplica la decisión (o el plan) y genera el nuevo status.
+	 * @return false si la simulación ha terminado.
+	 */
+	public boolean step() {
+		if (finished)
+			return false;
+		int decision = drone.think();
+		// Cada decisión (también END) es un REQUEST del drone y su respuesta
+		messages += 2;
+		if (decision == DroneLogic.END) {
+			finished = true;
+			return false;
+		}
+
+		int length = drone.planLength(decision, maxPlanLength);
+		int applied;
+		if (length > 1) {
+			for (int i = 0; i < length; i++)
+				plan[i] = decision;
+			applied = world.evaluePlan(plan, length, status);
+			status.setMovesApplied(applied);
+		} else {
+			world.evalueDecision(decision);
+			applied = 1;
+			status.setMovesApplied(0);
+		}
+		steps += applied;
+		drone.update(world.createStatus(status), plan);
+		return true;
+	}
+
+	/**
+	 * Avanza hasta que el drone termine (llegue al objetivo o se rinda) o se alcance el máximo de pasos.
+	 * @param maxSteps Máximo de movimientos.
+	 * @return Movimientos realizados en total.
+	 */
+	public long run(long maxSteps) {
+		while (steps < maxSteps && step())
+			;
+		return steps;
+	}
+
+	/**
+	 * Avanza hasta que el drone termine.
+	 * @return Movimientos realizados en total.
+	 */
+	public long run() {
+		return run(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Movimientos por decisión, como Drone.setMaxPlanLength con el protocolo de una sola ida y vuelta.
+	 * La trayectoria es la misma con cualquier valor.
+	 * @param maxPlanLength Movimientos por plan, como mucho Status.MAX_PLAN_LENGTH.
+	 */
+	public void setMaxPlanLength(int maxPlanLength) {
+		this.maxPlanLength = Math.max(1, Math.min(maxPlanLength, Status.MAX_PLAN_LENGTH));
+	}
+
+	/**
+	 * Radio del radar, como Drone.setRadarRadius. Se aplica ya al status que tiene el drone.
+	 * @param radarRadius Radio, entre 1 y Status.MAX_RADAR_RADIUS.
+	 */
+	public void setRadarRadius(int radarRadius) {
+		status.setRadarRadius(Math.max(1, Math.min(radarRadius, Status.MAX_RADAR_RADIUS)));
+		if (!finished)
+			drone.update(world.createStatus(status), plan);
+	}
+
+	/**
+	 * Modo de decisión del drone, como Drone.setMode. Se aplica ya al status que tiene el drone.
+	 * @param mode DroneLogic.HILL_CLIMBING o DroneLogic.DSTAR_LITE.
+	 */
+	public void setMode(int mode) {
+		drone.setMode(mode);
+		if (!finished)
+			drone.update(world.createStatus(status), plan);
+	}
+
+	/**
+	 * Incluye en los status el camino hasta el objetivo, como Satelite.setDistanceField. El campo se
+	 * calcula la primera vez para el mapa original y lo comparten todas las simulaciones del mapa.
+	 * @param enabled true para incluirlo.
+	 */
+	public void setDistanceField(boolean enabled) {
+		world.setDistanceField(enabled ? world.getMapOriginal().getDistanceField() : null);
+		status.clearPathInfo();
+		if (!finished)
+			drone.update(world.createStatus(status), plan);
+	}
+
+	/**
+	 * Incluye en los status el camino hasta el objetivo buscado con HPA*, como Satelite.setClusterGraph.
+	 * La abstracción es la del mapa original (ver Map.getClusterGraph) y la comparten todas las
+	 * simulaciones del mapa.
+	 * @param enabled true para incluirlo.
+	 */
+	public void setClusterGraph(boolean enabled) {
+		world.setClusterGraph(enabled ? world.getMapOriginal().getClusterGraph() : null);
+		status.clearPathInfo();
+		if (!finished)
+			drone.update(world.createStatus(status), plan);
+	}
+
+	public long getSteps() {
+		return steps;
+	}
+
+	/**
+	 * Mensajes que se habrían intercambiado Drone y Satelite con el protocolo de una sola ida y vuelta
+	 * para llegar hasta aquí. Un plan cuenta como una sola decisión.
+	 * @return Número de mensajes.
+	 */
+	public long getMessages() {
+		return messages;
+	}
+
+	public boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * @return true si el drone está en una casilla objetivo.
+	 */
+	public boolean isGoalReached() {
+		return status.isGoal();
+	}
+
+	public World getWorld() {
+		return world;
+	}
+
+	public DroneLogic getDroneLogic() {
+		return drone;
+	}
+}
@@ -0,0 +1,420 @@
+package practica.engine;
+
+import practica.message.Status;
+import practica.util.ClusterGraph;
+import practica.util.GPSLocation;
+import practica.util.GoalDistanceField;
+import practica.util.GoalIndex;
+import practica.util.Map;
+import practica.util.MapListener;
+
+/**
+ * Lo que sabe y hace el satélite sin comunicaciones: el mapa original, el de seguimiento con
+ * las casillas visitadas y la posición del drone. Rellena el status y aplica los movimientos.
+ * La usan el agente Satelite y la Simulation sin agentes.
+ * @author Jahiel
+ * @author Dani
+ * @author Jonay
+ */
+public class World {
+	private Map mapOriginal, mapSeguimiento;
+	private GPSLocation gps;
+	private GoalIndex goals;
+	// Array de trabajo de GoalIndex.nearest, para no reservarlo en cada status
+	private final double[] nearest = new double[2];
+	// Si no es null, el status lleva la distancia de camino y el mejor movimiento
+	private GoalDistanceField distanceField;
+	// Si no es null (y no hay campo), el camino sale de una búsqueda HPA* que se sigue mientras el drone no se salga
+	private ClusterGraph clusterGraph;
+	private int[] route;
+	// Celda desde la que sale route[routeStep]; routeX es -1 si todavía no se ha buscado
+	private int routeStep, routeX = -1, routeY = -1;
+	// Si no es null, recibe cada casilla que se marca en el mapa de seguimiento
+	private MapListener mapListener;
+
+	/**
+	 * @param mapa Mapa del mundo. No se modifica: se trabaja sobre copias.
+	 */
+	public World(Map mapa) {
+		this(mapa, 0, 0);
+	}
+
+	/**
+	 * Mundo con el drone en otra posición inicial.
+	 * @param mapa 		Mapa del mundo. No se modifica: se trabaja sobre copias.
+	 * @param startX 	Posición inicial X del drone.
+	 * @param startY 	Posición inicial Y del drone.
+	 */
+	public World(Map mapa, int startX, int startY) {
+		// Zonas objetivo: vienen en el .map o se calculan una vez por mapa cargado y se comparten entre copias
+		this(new Map(mapa), new Map(mapa), mapa.getGoalIndex(), startX, startY);
+	}
+
+	/**
+	 * Mundo que comparte los mapas con otros, uno por drone. El mapa de seguimiento puede recibir
+	 * escrituras de varios hilos, así que debe tolerarlas (por ejemplo con AtomicPackedStorage).
+	 * @param mapOriginal 		Mapa original, sólo se lee.
+	 * @param mapSeguimiento 	Mapa donde se marcan las casillas visitadas.
+	 * @param goals 			Zonas objetivo del mapa original.
+	 */
+	public World(Map mapOriginal, Map mapSeguimiento, GoalIndex goals) {
+		this(mapOriginal, mapSeguimiento, goals, 0, 0);
+	}
+
+	/**
+	 * Mundo que comparte los mapas, con el drone en otra posición inicial.
+	 * @param mapOriginal 		Mapa original, sólo se lee.
+	 * @param mapSeguimiento 	Mapa donde se marcan las casillas visitadas.
+	 * @param goals 			Zonas objetivo del mapa original.
+	 * @param startX 			Posición inicial X del drone.
+	 * @param startY 			Posición inicial Y del drone.
+	 */
+	public World(Map mapOriginal, Map mapSeguimiento, GoalIndex goals, int startX, int startY) {
+		this.mapOriginal = mapOriginal;
+		this.mapSeguimiento = mapSeguimiento;
+		this.goals = goals;
+		gps = new GPSLocation();
+		gps.setPositionX(startX);
+		gps.setPositionY(startY);
+
+		mapSeguimiento.setvalue(startX, startY, Map.VISITADO); // añadido esto que faltaba
+	}
+
+	/**
+	 * Se calcula el valor del ángulo que forma la baliza y el EjeX horizontal tomando como centro
+	 * a el agente drone.
+	 * @param posX Posición relativa de la baliza con respecto al drone.
+	 * @param posY Posición relativa de la baliza con respecto al drone.
+	 * @return valor del ángulo.
+	 * @author jahiel
+	 */
+	public static double calculateAngle(double posX, double posY){
+		double angle = 0;
+
+		if(posX>0 && posY>=0)
+			angle = Math.atan(posY / posX);
+		else if(posX>0 && posY<0)
+			angle = Math.atan(posY / posX) + (2.0*Math.PI);
+		else if(posX == 0 && posY>0)
+			angle = Math.PI/2.0;
+		else if(posX == 0 && posY<0)
+			angle = (3*Math.PI) / 2.0;
+		else if(posX<0)
+			angle = Math.atan(posY / posX) + Math.PI;
+
+		return angle;
+	}
+
+	/**
+	 * Rellenamos el status del drone (gps, gonio, goal, batería y radar). Si el radio del radar del
+	 * status es mayor que 1 se rellena también la ventana, y con setDistanceField el camino hasta el objetivo.
+	 * @param status Status a rellenar; se reutiliza en cada paso.
+	 * @return El mismo status.
+	 * @author jahiel
+	 * @author Jonay
+	 */
+	public Status createStatus(Status status) {
+		int posXDrone = gps.getPositionX(), posYDrone = gps.getPositionY();
+		// El gonio apunta al centro de la zona objetivo más cercana
+		int zone = goals.nearest(posXDrone, posYDrone, nearest);
+		double goalPosX = (zone >= 0) ? goals.getX(zone) : Double.NaN;
+		double goalPosY = (zone >= 0) ? goals.getY(zone) : Double.NaN;
+		double distance = Math.sqrt(Math.pow(goalPosX - posXDrone, 2) + Math.pow(goalPosY - posYDrone, 2));
+		double angle = calculateAngle(goalPosX - posXDrone, goalPosY - posYDrone);
+
+		status.setPositionX(posXDrone);
+		status.setPositionY(posYDrone);
+		status.setGoal(mapOriginal.getValue(posXDrone, posYDrone) == Map.OBJETIVO);
+		status.setAlpha(angle);
+		status.setDist(distance);
+		status.setBattery(100);
+		int[] radar = status.getRadar();
+		if (radar.length != Status.RADAR_SIZE) {
+			radar = new int[Status.RADAR_SIZE];
+			status.setRadar(radar);
+		}
+		obtenerAlrededores(radar, 0);
+		if (status.getRadarRadius() > 1)
+			obtenerVentana(status);
+		if (distanceField != null)
+			status.setPathInfo(distanceField.getDistance(posXDrone, posYDrone),
+					distanceField.getBestMove(posXDrone, posYDrone));
+		else if (clusterGraph != null)
+			routeInfo(status, posXDrone, posYDrone, zone);
+
+		return status;
+	}
+
+	/**
+	 * Rellena la ventana del radar del status: las celdas del mapa original a una distancia de como
+	 * mucho el radio del drone, empaquetadas a 2 bits. Fuera del mapa y los colores desconocidos son
+	 * OBSTACULO.
+	 * @param status Status con el radio ya puesto.
+	 */
+	public void obtenerVentana(Status status) {
+		status.clearWindow();
+		long[] window = status.getWindow();
+		int radius = status.getRadarRadius(), side = status.getWindowSide();
+		int left = gps.getPositionX() - radius, top = gps.getPositionY() - radius;
+		int i = 0;
+		for (int j = 0; j < side; j++) {
+			for (int k = 0; k < side; k++, i++) {
+				int value = mapOriginal.getValue(left + k, top + j);
+				if (value < Map.LIBRE || value > Map.OBJETIVO)
+					value = Map.OBSTACULO;
+				window[i >>> 5] |= (long) value << ((i & 31) << 1);
+			}
+		}
+	}
+
+	/**
+	 * Este método obtiene los valores de las celdas en las 9 casillas que rodean el drone
+	 * (incluyendo en la que se encuentra el drone)
+	 * @author Jonay
+	 * @param surroundings Array donde se escriben, indexados por i+j*3.
+	 * @param offset 	   Posición del array desde la que se escribe.
+	 */
+	public void obtenerAlrededores(int[] surroundings, int offset){
+		int posX = gps.getPositionX();
+		int posY = gps.getPositionY();
+
+		// Recorre desde la posición dron -1  hasta la del dron + 1, tanto en X como en Y
+		for (int i = 0; i< 3; i++){
+			for(int j = 0; j < 3; j++){
+				/* TODO: ¿poner mapSeguimiento o mapOriginal? Depende del método getValidMoviments del drone
+				 * Se puede liar si aquí digo que está visitado, y allí le suma que también.
+				 */
+				surroundings[offset+i+j*3] = mapOriginal.getValue(posX-1+i, posY-1+j);
+			}
+		}
+	}
+
+	/**
+	 * Comprueba que una decisión es un movimiento.
+	 * @param decision Decisión del drone.
+	 * @return true si es ESTE, SUR, OESTE o NORTE.
+	 */
+	public static boolean isMove(int decision) {
+		return decision >= DroneLogic.ESTE && decision <= DroneLogic.NORTE;
+	}
+
+	/**
+	 * Actualiza el mapa de seguimiento con la nueva posición del drone (x, y en funcion de la
+	 * dirección elegida) o da por finalizada la simulación.
+	 * @param decision	Decisión del drone:
+	 * 					-  0 : El dron decide ir al Este.
+	 * 					-  1 : El dorn decide ir al Sur.
+	 * 					-  2 : El dorn decide ir al Oeste.
+	 * 					-  3 : El dorn decide ir al Norte.
+	 *            		- -1: Fin
+	 * @return Se devuelve "true" si se debe finalizar y "false" en caso contrario.
+	 * @throws IllegalArgumentException Si la decisión no es ninguna de las anteriores o saca al drone
+	 * 			del mapa. El drone se queda donde estaba.
+	 * @author jahiel
+	 */
+	public boolean evalueDecision(int decision) {
+		if (decision == DroneLogic.END)
+			return true;
+		if (!isMove(decision))
+			throw new IllegalArgumentException("Decisión no válida: " + decision);
+
+		int x = gps.getPositionX() + DroneLogic.MOVE_X[decision];
+		int y = gps.getPositionY() + DroneLogic.MOVE_Y[decision];
+		if (x < 0 || y < 0 || x >= mapOriginal.getWidth() || y >= mapOriginal.getHeigh())
+			throw new IllegalArgumentException("Movimiento fuera del mapa: " + x + "," + y);
+		gps.setPositionX(x);
+		gps.setPositionY(y);
+		visit(x, y);
+
+		return false;
+	}
+
+	/**
+	 * Marca una casilla como visitada en el mapa de seguimiento y avisa al MapListener.
+	 */
+	private void visit(int x, int y) {
+		mapSeguimiento.setvalue(x, y, Map.VISITADO);
+		if (mapListener != null)
+			mapListener.cellChanged(x, y);
+	}
+
+	/**
+	 * Aplica en orden los movimientos de un plan del drone. Se para antes de la primera celda bloqueada
+	 * (obstáculo o fuera del mapa), al llegar a una celda objetivo o cuando el gonio pasa a apuntar a otra
+	 * zona objetivo, porque el drone haría sus cuentas con otro objetivo. También se para en una posición
+	 * desde la que el radar ve casillas que ya vienen VISITADO en el mapa original: el drone no las tiene
+	 * en su mapa y tiene que decidir con ellas delante. El radar de cada posición intermedia
+	 * se guarda en el status para que el drone lo reciba junto con el status final.
+	 * @param moves		Movimientos del plan (ESTE, SUR, OESTE o NORTE).
+	 * @param count		Número de movimientos del plan.
+	 * @param status	Status donde se guardan los radares intermedios.
+	 * @return Movimientos aplicados.
+	 * @throws IllegalArgumentException Si el plan tiene un movimiento no válido.
+	 */
+	public int evaluePlan(int[] moves, int count, Status status) {
+		for (int i = 0; i < count; i++)
+			if (!isMove(moves[i]))
+				throw new IllegalArgumentException("Movimiento no válido: " + moves[i]);
+
+		int applied = 0;
+		int zone = goals.nearest(gps.getPositionX(), gps.getPositionY(), nearest);
+		int[] path = status.getPathRadar();
+		if (path.length < count * Status.RADAR_SIZE) {
+			path = new int[count * Status.RADAR_SIZE];
+			status.setPathRadar(path);
+		}
+
+		for (int i = 0; i < count; i++) {
+			int x = gps.getPositionX() + DroneLogic.MOVE_X[moves[i]];
+			int y = gps.getPositionY() + DroneLogic.MOVE_Y[moves[i]];
+			if (mapOriginal.getValue(x, y) == Map.OBSTACULO)
+				break;
+
+			// La posición actual pasa a ser intermedia: se guarda lo que se ve desde ella
+			if (applied > 0)
+				obtenerAlrededores(path, (applied - 1) * Status.RADAR_SIZE);
+
+			gps.setPositionX(x);
+			gps.setPositionY(y);
+			visit(x, y);
+			applied++;
+
+			if (mapOriginal.getValue(x, y) == Map.OBJETIVO || goals.nearest(x, y, nearest) != zone
+					|| seesVisited(x, y))
+				break;
+		}
+		return applied;
+	}
+
+	/**
+	 * Comprueba si el radar desde una posición contiene casillas VISITADO del mapa original.
+	 * @param x Columna.
+	 * @param y Fila.
+	 * @return true si alguna de las 9 casillas está VISITADO.
+	 */
+	private boolean seesVisited(int x, int y) {
+		for (int j = y - 1; j <= y + 1; j++)
+			for (int i = x - 1; i <= x + 1; i++)
+				if (mapOriginal.getValue(i, j) == Map.VISITADO)
+					return true;
+		return false;
+	}
+
+	/**
+	 * Incluye en cada status la distancia de camino hasta el objetivo y el primer movimiento del camino
+	 * más corto, consultados en un campo ya calculado (ver Map.getDistanceField).
+	 * @param distanceField Campo del mapa original, o null para no incluirlos.
+	 */
+	public void setDistanceField(GoalDistanceField distanceField) {
+		this.distanceField = distanceField;
+	}
+
+	/**
+	 * Como setDistanceField, pero sin recorrer todo el mapa: el camino se busca con HPA* (ver ClusterGraph)
+	 * hasta la celda objetivo más cercana al centro de la zona a la que apunta el gonio, y se sigue
+	 * mientras el drone vaya por él. La distancia es la del camino encontrado, que puede ser algo más
+	 * largo que el más corto. Si también hay campo de distancias, se usa el campo.
+	 * @param clusterGraph Abstracción del mapa original, o null para no usarla.
+	 */
+	public void setClusterGraph(ClusterGraph clusterGraph) {
+		this.clusterGraph = clusterGraph;
+		route = null;
+		routeX = routeY = -1;
+	}
+
+	/**
+	 * Avisa de cada casilla que se marque en el mapa de seguimiento (por ejemplo al visualizador), y
+	 * ya de la casilla en la que está el drone, que se marcó al crear el mundo.
+	 * @param mapListener Quien recibe los cambios, o null para no avisar.
+	 */
+	public void setMapListener(MapListener mapListener) {
+		this.mapListener = mapListener;
+		if (mapListener != null)
+			mapListener.cellChanged(gps.getPositionX(), gps.getPositionY());
+	}
+
+	/**
+	 * Rellena el camino del status con la ruta de HPA*, buscándola de nuevo si el drone no está en ella.
+	 */
+	private void routeInfo(Status status, int x, int y, int zone) {
+		if (mapOriginal.getValue(x, y) == Map.OBJETIVO) {
+			status.setPathInfo(0, DroneLogic.END);
+			return;
+		}
+		if (!followRoute(x, y)) {
+			int goal = (zone >= 0) ? goalCell(zone) : -1;
+			int width = mapOriginal.getWidth();
+			route = (goal >= 0) ? clusterGraph.findPath(x, y, goal % width, goal / width) : null;
+			routeStep = 0;
+			routeX = x;
+			routeY = y;
+		}
+		if (route == null)
+			status.setPathInfo(Status.UNREACHABLE, DroneLogic.END);
+		else
+			status.setPathInfo(route.length - routeStep, (routeStep < route.length) ? route[routeStep] : DroneLogic.END);
+	}
+
+	/**
+	 * Avanza por la ruta hasta la posición del drone (con planes puede haber dado varios pasos).
+	 * @return false si el drone no está en la ruta y hay que buscarla otra vez.
+	 */
+	private boolean followRoute(int x, int y) {
+		if (routeX == x && routeY == y)
+			return true;
+		if (route == null || routeX < 0)
+			return false;
+		for (int k = routeStep; k < route.length; k++) {
+			routeX += DroneLogic.MOVE_X[route[k]];
+			routeY += DroneLogic.MOVE_Y[route[k]];
+			if (routeX == x && routeY == y) {
+				routeStep = k + 1;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Celda objetivo más cercana al centro de una zona, buscando en anillos cada vez más grandes.
+	 * @return x + y*anchura, o -1 si no hay ninguna.
+	 */
+	private int goalCell(int zone) {
+		int width = mapOriginal.getWidth(), heigh = mapOriginal.getHeigh();
+		int cx = (int) Math.round(goals.getX(zone)), cy = (int) Math.round(goals.getY(zone));
+		int maxRing = Math.max(width, heigh);
+		for (int r = 0; r <= maxRing; r++)
+			for (int y = cy - r; y <= cy + r; y++) {
+				// En las filas de en medio del anillo sólo las dos columnas de los extremos
+				int step = (y == cy - r || y == cy + r) ? 1 : Math.max(1, 2 * r);
+				for (int x = cx - r; x <= cx + r; x += step)
+					if (x >= 0 && y >= 0 && x < width && y < heigh && mapOriginal.getValue(x, y) == Map.OBJETIVO)
+						return x + y * width;
+			}
+		return -1;
+	}
+
+	/**
+	 * Getter del mapa original.
+	 * @return el mapa original.
+	 */
+	public Map getMapOriginal() {
+		return mapOriginal;
+	}
+
+	/**
+	 * Getter del mapa de seguimiento.
+	 * @return el mapa de seguimiento.
+	 */
+	public Map getMapSeguimiento() {
+		return mapSeguimiento;
+	}
+
+	/**
+	 * Getter de la posición del drone.
+	 * @return el gps del drone.
+	 */
+	public GPSLocation getGps() {
+		return gps;
+	}
+}
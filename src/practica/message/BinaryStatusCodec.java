@@ -0,0 +1,238 @@
+package practica.message;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Codificación binaria de tamaño fijo, en base64 para que quepa en el contenido (texto) de un ACLMessage.
+ * 
+ * Estado (enteros en orden de red):
+ * 	- byte 	tipo (STATUS)
+ * 	- int 	x, int y
+ * 	- float alpha, float dist (el drone los usa como float)
+ * 	- byte 	flags: bit 0 connected, bit 1 ready, bit 2 goal
+ * 	- byte 	batería
+ * 	- byte 	número de celdas del radar
+ * 	- radar a 2 bits por celda, 4 celdas por byte
+ * 	- byte 	movimientos aplicados del plan (0 si no responde a un plan)
+ * 	- radares de las posiciones intermedias del plan, también a 2 bits por celda
+ * 	- byte 	radio del radar y, si es mayor que 1, la ventana como longs (ver Status.getWindow). Los
+ * 	  status sin este byte son de radio 1.
+ * 	- int 	distancia de camino y byte con el mejor movimiento, sólo si el satélite los incluye (ver
+ * 	  Status.hasPathInfo).
+ * 
+ * Decisión: byte tipo (DECISION) y byte con la decisión.
+ * Plan: byte tipo (PLAN), byte con el número de movimientos y los movimientos a 2 bits cada uno.
+ * Petición de status: byte tipo (REQUEST) y byte con el radio del radar.
+ */
+public class BinaryStatusCodec implements StatusCodec {
+	private static final byte STATUS = 'S', DECISION = 'D', PLAN = 'P', REQUEST = 'R';
+	private static final int CONNECTED = 1, READY = 2, GOAL = 4;
+	private static final int STATUS_FIXED_SIZE = 1 + 4 + 4 + 4 + 4 + 1 + 1 + 1 + 1 + 1;
+	private static final int PATH_INFO_SIZE = 4 + 1;
+
+	@Override
+	public String encodeStatus(Status status) throws CodecException {
+		int[] radar = status.getRadar();
+		if (radar.length > 255)
+			throw new CodecException("Radar demasiado grande: " + radar.length);
+		int pathCells = status.getPathRadarCells();
+		if (status.getMovesApplied() > Status.MAX_PLAN_LENGTH)
+			throw new CodecException("Plan demasiado largo: " + status.getMovesApplied());
+		int radius = status.getRadarRadius();
+		if (radius < 1 || radius > Status.MAX_RADAR_RADIUS)
+			throw new CodecException("Radio del radar no válido: " + radius);
+		int windowWords = status.getWindowWords();
+		ByteBuffer buffer = ByteBuffer.allocate(STATUS_FIXED_SIZE + (radar.length + 3) / 4 + (pathCells + 3) / 4
+				+ windowWords * 8 + (status.hasPathInfo() ? PATH_INFO_SIZE : 0));
+
+		buffer.put(STATUS);
+		buffer.putInt(status.getPositionX());
+		buffer.putInt(status.getPositionY());
+		buffer.putFloat((float) status.getAlpha());
+		buffer.putFloat((float) status.getDist());
+		int flags = (status.isConnected() ? CONNECTED : 0) | (status.isReady() ? READY : 0) | (status.isGoal() ? GOAL : 0);
+		buffer.put((byte) flags);
+		buffer.put((byte) status.getBattery());
+		buffer.put((byte) radar.length);
+
+		pack(buffer, radar, radar.length);
+		buffer.put((byte) status.getMovesApplied());
+		pack(buffer, status.getPathRadar(), pathCells);
+		buffer.put((byte) radius);
+		long[] window = status.getWindow();
+		for (int i = 0; i < windowWords; i++)
+			buffer.putLong(window[i]);
+		if (status.hasPathInfo()) {
+			buffer.putInt(status.getPathDistance());
+			buffer.put((byte) status.getBestMove());
+		}
+		return Base64.getEncoder().encodeToString(buffer.array());
+	}
+
+	@Override
+	public void decodeStatus(String content, Status status) throws CodecException {
+		ByteBuffer buffer = decode(content, STATUS);
+		try {
+			status.setPositionX(buffer.getInt());
+			status.setPositionY(buffer.getInt());
+			status.setAlpha(buffer.getFloat());
+			status.setDist(buffer.getFloat());
+			int flags = buffer.get();
+			status.setConnected((flags & CONNECTED) != 0);
+			status.setReady((flags & READY) != 0);
+			status.setGoal((flags & GOAL) != 0);
+			status.setBattery(buffer.get() & 0xFF);
+
+			int cells = buffer.get() & 0xFF;
+			int[] radar = status.getRadar();
+			if (radar.length != cells) {
+				radar = new int[cells];
+				status.setRadar(radar);
+			}
+			unpack(buffer, radar, cells);
+
+			status.setMovesApplied(buffer.get() & 0xFF);
+			int pathCells = status.getPathRadarCells();
+			if (status.getPathRadar().length < pathCells)
+				status.setPathRadar(new int[pathCells]);
+			unpack(buffer, status.getPathRadar(), pathCells);
+
+			status.setRadarRadius(buffer.hasRemaining() ? buffer.get() & 0xFF : 1);
+			if (status.getRadarRadius() < 1 || status.getRadarRadius() > Status.MAX_RADAR_RADIUS)
+				throw new CodecException("Radio del radar no válido: " + status.getRadarRadius());
+			status.clearWindow();
+			long[] window = status.getWindow();
+			for (int i = 0; i < status.getWindowWords(); i++)
+				window[i] = buffer.getLong();
+			if (buffer.remaining() >= PATH_INFO_SIZE)
+				status.setPathInfo(buffer.getInt(), buffer.get());
+			else
+				status.clearPathInfo();
+		} catch (RuntimeException e) {
+			throw new CodecException("Status no válido", e);
+		}
+	}
+
+	@Override
+	public String encodeDecision(int decision) throws CodecException {
+		if (decision < Byte.MIN_VALUE || decision > Byte.MAX_VALUE)
+			throw new CodecException("Decisión no válida: " + decision);
+		return Base64.getEncoder().encodeToString(new byte[] { DECISION, (byte) decision });
+	}
+
+	@Override
+	public int decodeDecision(String content) throws CodecException {
+		ByteBuffer buffer = decode(content, DECISION);
+		if (!buffer.hasRemaining())
+			throw new CodecException("Error de parametros en la decisión");
+		return buffer.get();
+	}
+
+	@Override
+	public String encodePlan(int[] moves, int count) throws CodecException {
+		if (count > Status.MAX_PLAN_LENGTH)
+			throw new CodecException("Plan demasiado largo: " + count);
+		ByteBuffer buffer = ByteBuffer.allocate(2 + (count + 3) / 4);
+		buffer.put(PLAN);
+		buffer.put((byte) count);
+		pack(buffer, moves, count);
+		return Base64.getEncoder().encodeToString(buffer.array());
+	}
+
+	@Override
+	public boolean isPlan(String content) {
+		// Basta con decodificar el primer bloque de base64 para ver el tipo
+		return content != null && content.length() >= 4 && decodesTo(content, PLAN);
+	}
+
+	@Override
+	public int decodePlan(String content, int[] moves) throws CodecException {
+		ByteBuffer buffer = decode(content, PLAN);
+		try {
+			int count = buffer.get() & 0xFF;
+			if (count > moves.length)
+				throw new CodecException("Plan demasiado largo: " + count);
+			unpack(buffer, moves, count);
+			return count;
+		} catch (RuntimeException e) {
+			throw new CodecException("Plan no válido", e);
+		}
+	}
+
+	@Override
+	public String encodeStatusRequest(int radarRadius) throws CodecException {
+		if (radarRadius < 1 || radarRadius > Status.MAX_RADAR_RADIUS)
+			throw new CodecException("Radio del radar no válido: " + radarRadius);
+		return Base64.getEncoder().encodeToString(new byte[] { REQUEST, (byte) radarRadius });
+	}
+
+	@Override
+	public boolean isStatusRequest(String content) {
+		return content != null && content.length() >= 4 && decodesTo(content, REQUEST);
+	}
+
+	@Override
+	public int decodeStatusRequest(String content) throws CodecException {
+		ByteBuffer buffer = decode(content, REQUEST);
+		if (!buffer.hasRemaining())
+			throw new CodecException("Petición de status no válida");
+		return buffer.get() & 0xFF;
+	}
+
+	private static boolean decodesTo(String content, byte type) {
+		try {
+			byte[] head = Base64.getDecoder().decode(content.substring(0, 4));
+			return head[0] == type;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Escribe count valores de 0 a 3 a 2 bits cada uno.
+	 */
+	private static void pack(ByteBuffer buffer, int[] values, int count) throws CodecException {
+		int bits = 0;
+		for (int i = 0; i < count; i++) {
+			if (values[i] < 0 || values[i] > 3)
+				throw new CodecException("Valor no válido: " + values[i]);
+			bits |= values[i] << ((i & 3) << 1);
+			if ((i & 3) == 3 || i == count - 1) {
+				buffer.put((byte) bits);
+				bits = 0;
+			}
+		}
+	}
+
+	/**
+	 * Lee count valores de 0 a 3 a 2 bits cada uno.
+	 */
+	private static void unpack(ByteBuffer buffer, int[] values, int count) {
+		int bits = 0;
+		for (int i = 0; i < count; i++) {
+			if ((i & 3) == 0)
+				bits = buffer.get();
+			values[i] = (bits >>> ((i & 3) << 1)) & 3;
+		}
+	}
+
+	/**
+	 * Pasa el contenido de base64 a bytes y comprueba el tipo de mensaje.
+	 */
+	private static ByteBuffer decode(String content, byte type) throws CodecException {
+		if (content == null)
+			throw new CodecException("Mensaje vacío");
+		byte[] bytes;
+		try {
+			bytes = Base64.getDecoder().decode(content);
+		} catch (IllegalArgumentException e) {
+			throw new CodecException("Mensaje no válido", e);
+		}
+		if (bytes.length == 0 || bytes[0] != type)
+			throw new CodecException("Tipo de mensaje no válido");
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		buffer.get();
+		return buffer;
+	}
+}
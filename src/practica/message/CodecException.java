@@ -0,0 +1,16 @@
+package practica.message;
+
+/**
+ * Error al codificar o decodificar el contenido de un mensaje.
+ */
+public class CodecException extends Exception {
+	private static final long serialVersionUID = 1L;
+
+	public CodecException(String message) {
+		super(message);
+	}
+
+	public CodecException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -0,0 +1,243 @@
+package practica.message;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Codificación JSON de siempre:
+ * Status: {“connected”:”YES”, “ready”:”YES”, “gps”:{“x”:10,”y”:5},
+ * “goal”:”No”, “gonio”:{“alpha”:0, “dist”:4.0}, “battery”:100,
+ * “radar”:[0,0,0,0,0,0,0,1,1]}
+ * Decisión: {"connected":"Yes", "ready":"Yes", "movimiento":0, "decision":0}
+ * Plan: {"plan":[0,0,0]}. El status que responde a un plan lleva además "moves" (movimientos aplicados)
+ * y "path" (los radares de las posiciones intermedias seguidos).
+ * Con un radar de radio mayor que 1 el status lleva también "window":{"radius":2,"cells":"..."}, con los
+ * longs de Status.getWindow() en hexadecimal, 16 cifras cada uno.
+ * Si el satélite incluye el camino hasta el objetivo el status lleva "route":{"dist":12,"move":0}
+ * (ver Status.hasPathInfo).
+ * Petición de status con radio: {"radar":2}.
+ */
+public class JsonStatusCodec implements StatusCodec {
+
+	@Override
+	public String encodeStatus(Status status) throws CodecException {
+		try {
+			JSONObject status2 = new JSONObject();
+			status2.put("connected", status.isConnected() ? "Yes" : "No");
+			status2.put("ready", status.isReady() ? "Yes" : "No");
+
+			JSONObject aux = new JSONObject();
+			aux.put("x", status.getPositionX());
+			aux.put("y", status.getPositionY());
+			status2.put("gps", aux);
+
+			status2.put("goal", status.isGoal() ? "Si" : "No");
+
+			JSONObject aux2 = new JSONObject();
+			aux2.put("alpha", status.getAlpha());
+			aux2.put("dist", status.getDist());
+			status2.put("gonio", aux2);
+			status2.put("battery", status.getBattery());
+			status2.put("radar", new JSONArray(status.getRadar()));
+			if (status.getMovesApplied() > 0) {
+				status2.put("moves", status.getMovesApplied());
+				JSONArray path = new JSONArray();
+				int[] pathRadar = status.getPathRadar();
+				for (int i = 0; i < status.getPathRadarCells(); i++)
+					path.put(pathRadar[i]);
+				status2.put("path", path);
+			}
+			if (status.getRadarRadius() > 1) {
+				JSONObject window = new JSONObject();
+				window.put("radius", status.getRadarRadius());
+				StringBuilder cells = new StringBuilder();
+				for (int i = 0; i < status.getWindowWords(); i++) {
+					String word = Long.toHexString(status.getWindow()[i]);
+					for (int k = word.length(); k < 16; k++)
+						cells.append('0');
+					cells.append(word);
+				}
+				window.put("cells", cells.toString());
+				status2.put("window", window);
+			}
+			if (status.hasPathInfo()) {
+				JSONObject route = new JSONObject();
+				route.put("dist", status.getPathDistance());
+				route.put("move", status.getBestMove());
+				status2.put("route", route);
+			}
+
+			return status2.toString();
+		} catch (JSONException e) {
+			throw new CodecException("Error al crear Status", e);
+		}
+	}
+
+	@Override
+	public void decodeStatus(String content, Status status) throws CodecException {
+		try {
+			JSONObject contenido = new JSONObject(content);
+
+			JSONObject aux = contenido.getJSONObject("gps");
+			status.setPositionX(aux.getInt("x"));
+			status.setPositionY(aux.getInt("y"));
+
+			aux = contenido.getJSONObject("gonio");
+			status.setAlpha(aux.getDouble("alpha"));
+			status.setDist(aux.getDouble("dist"));
+
+			//Recogida y comprobación del campo goal.
+			String campo = contenido.getString("goal");
+			if (campo.equals("Si"))
+				status.setGoal(true);
+			else if (campo.equals("No"))
+				status.setGoal(false);
+
+			JSONArray jsArray = contenido.getJSONArray("radar");
+			int[] radar = status.getRadar();
+			if (radar.length != jsArray.length()) {
+				radar = new int[jsArray.length()];
+				status.setRadar(radar);
+			}
+			for (int i = 0; i < jsArray.length(); i++)
+				radar[i] = jsArray.getInt(i);
+
+			status.setBattery(contenido.optInt("battery", status.getBattery()));
+
+			status.setMovesApplied(contenido.optInt("moves", 0));
+			JSONArray path = contenido.optJSONArray("path");
+			int cells = (path != null) ? path.length() : 0;
+			if (status.getPathRadar().length < cells)
+				status.setPathRadar(new int[cells]);
+			for (int i = 0; i < cells; i++)
+				status.getPathRadar()[i] = path.getInt(i);
+
+			JSONObject window = contenido.optJSONObject("window");
+			status.setRadarRadius((window != null) ? window.getInt("radius") : 1);
+			if (status.getRadarRadius() < 1 || status.getRadarRadius() > Status.MAX_RADAR_RADIUS)
+				throw new CodecException("Radio del radar no válido: " + status.getRadarRadius());
+			status.clearWindow();
+			if (window != null) {
+				String hex = window.getString("cells");
+				if (hex.length() != status.getWindowWords() * 16)
+					throw new CodecException("Ventana del radar no válida");
+				for (int i = 0; i < status.getWindowWords(); i++)
+					status.getWindow()[i] = Long.parseUnsignedLong(hex.substring(i * 16, i * 16 + 16), 16);
+			}
+
+			JSONObject route = contenido.optJSONObject("route");
+			if (route != null)
+				status.setPathInfo(route.getInt("dist"), route.getInt("move"));
+			else
+				status.clearPathInfo();
+		} catch (NumberFormatException e) {
+			throw new CodecException("Status no válido", e);
+		} catch (JSONException e) {
+			throw new CodecException("Status no válido", e);
+		}
+	}
+
+	@Override
+	public String encodeDecision(int decision) throws CodecException {
+		try {
+			JSONObject estado = new JSONObject();
+			estado.put("connected", "Yes");
+			estado.put("ready", "Yes");
+			estado.put("movimiento", 0);
+			estado.put("decision", decision);
+			return estado.toString();
+		} catch (JSONException e) {
+			throw new CodecException("Error al crear la decisión", e);
+		}
+	}
+
+	@Override
+	public int decodeDecision(String content) throws CodecException {
+		try {
+			return new JSONObject(content).getInt("decision");
+		} catch (JSONException e) {
+			throw new CodecException("Error de parametros en la decisión", e);
+		}
+	}
+
+	@Override
+	public String encodePlan(int[] moves, int count) throws CodecException {
+		if (count > Status.MAX_PLAN_LENGTH)
+			throw new CodecException("Plan demasiado largo: " + count);
+		try {
+			JSONArray plan = new JSONArray();
+			for (int i = 0; i < count; i++)
+				plan.put(moves[i]);
+			JSONObject estado = new JSONObject();
+			estado.put("plan", plan);
+			return estado.toString();
+		} catch (JSONException e) {
+			throw new CodecException("Error al crear el plan", e);
+		}
+	}
+
+	@Override
+	public boolean isPlan(String content) {
+		JSONObject json = parse(content);
+		return json != null && json.has("plan");
+	}
+
+	@Override
+	public int decodePlan(String content, int[] moves) throws CodecException {
+		try {
+			JSONArray plan = new JSONObject(content).getJSONArray("plan");
+			if (plan.length() > moves.length)
+				throw new CodecException("Plan demasiado largo: " + plan.length());
+			for (int i = 0; i < plan.length(); i++)
+				moves[i] = plan.getInt(i);
+			return plan.length();
+		} catch (JSONException e) {
+			throw new CodecException("Plan no válido", e);
+		}
+	}
+
+	@Override
+	public String encodeStatusRequest(int radarRadius) throws CodecException {
+		if (radarRadius < 1 || radarRadius > Status.MAX_RADAR_RADIUS)
+			throw new CodecException("Radio del radar no válido: " + radarRadius);
+		try {
+			JSONObject peticion = new JSONObject();
+			peticion.put("radar", radarRadius);
+			return peticion.toString();
+		} catch (JSONException e) {
+			throw new CodecException("Error al crear la petición de status", e);
+		}
+	}
+
+	@Override
+	public boolean isStatusRequest(String content) {
+		// El status también tiene "radar", pero es un array; en la petición es el radio
+		JSONObject json = parse(content);
+		return json != null && json.opt("radar") instanceof Number;
+	}
+
+	@Override
+	public int decodeStatusRequest(String content) throws CodecException {
+		try {
+			return new JSONObject(content).getInt("radar");
+		} catch (JSONException e) {
+			throw new CodecException("Petición de status no válida", e);
+		}
+	}
+
+	/**
+	 * Lee un mensaje como objeto JSON para mirar qué claves tiene.
+	 * @param content Contenido del mensaje.
+	 * @return El objeto, o null si el contenido es null o no es un objeto JSON.
+	 */
+	private static JSONObject parse(String content) {
+		if (content == null)
+			return null;
+		try {
+			return new JSONObject(content);
+		} catch (JSONException e) {
+			return null;
+		}
+	}
+}
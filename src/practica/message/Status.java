@@ -0,0 +1,273 @@
+package practica.message;
+
+/**
+ * Contenido del mensaje de estado que el satélite envía al drone en cada paso.
+ * Es independiente de cómo se codifique en el mensaje (ver StatusCodec).
+ */
+public class Status {
+	/** Número de celdas del radar (3x3 alrededor del drone). */
+	public static final int RADAR_SIZE = 9;
+	/** Máximo de movimientos de un plan (ver StatusCodec.encodePlan). */
+	public static final int MAX_PLAN_LENGTH = 255;
+	/** Radio máximo de la ventana del radar (ver getWindow). */
+	public static final int MAX_RADAR_RADIUS = 15;
+	/** Celdas de la ventana por cada long, a 2 bits por celda. */
+	public static final int WINDOW_CELLS_PER_WORD = 32;
+	/** Distancia de camino cuando no se llega al objetivo (ver getPathDistance). */
+	public static final int UNREACHABLE = -1;
+
+	private boolean connected, ready;
+	private int positionX, positionY;
+	private boolean goal;
+	private double alpha, dist;
+	private int battery;
+	private int[] radar;
+	private int movesApplied;
+	private int[] pathRadar;
+	private int radarRadius = 1;
+	private long[] window = new long[0];
+	private boolean pathInfo = false;
+	private int pathDistance = UNREACHABLE, bestMove = -1;
+
+	/**
+	 * Constructor por defecto: conectado, listo, batería 100 y radar vacío.
+	 */
+	public Status() {
+		connected = ready = true;
+		battery = 100;
+		radar = new int[RADAR_SIZE];
+		pathRadar = new int[0];
+	}
+
+	public boolean isConnected() {
+		return connected;
+	}
+
+	public void setConnected(boolean connected) {
+		this.connected = connected;
+	}
+
+	public boolean isReady() {
+		return ready;
+	}
+
+	public void setReady(boolean ready) {
+		this.ready = ready;
+	}
+
+	public int getPositionX() {
+		return positionX;
+	}
+
+	public void setPositionX(int x) {
+		positionX = x;
+	}
+
+	public int getPositionY() {
+		return positionY;
+	}
+
+	public void setPositionY(int y) {
+		positionY = y;
+	}
+
+	/**
+	 * @return true si el drone está sobre una celda objetivo.
+	 */
+	public boolean isGoal() {
+		return goal;
+	}
+
+	public void setGoal(boolean goal) {
+		this.goal = goal;
+	}
+
+	/**
+	 * @return Ángulo del gonio, en radianes.
+	 */
+	public double getAlpha() {
+		return alpha;
+	}
+
+	public void setAlpha(double alpha) {
+		this.alpha = alpha;
+	}
+
+	/**
+	 * @return Distancia del gonio.
+	 */
+	public double getDist() {
+		return dist;
+	}
+
+	public void setDist(double dist) {
+		this.dist = dist;
+	}
+
+	public int getBattery() {
+		return battery;
+	}
+
+	public void setBattery(int battery) {
+		this.battery = battery;
+	}
+
+	/**
+	 * Getter del radar. Se devuelve el array interno para poder rellenarlo sin copiar.
+	 * @return Celdas alrededor del drone, por filas de izquierda a derecha y de arriba a abajo.
+	 */
+	public int[] getRadar() {
+		return radar;
+	}
+
+	public void setRadar(int[] radar) {
+		this.radar = radar;
+	}
+
+	/**
+	 * Movimientos del último plan que ha aplicado el satélite. Es 0 si el status no responde a un plan.
+	 * @return Número de movimientos aplicados.
+	 */
+	public int getMovesApplied() {
+		return movesApplied;
+	}
+
+	public void setMovesApplied(int movesApplied) {
+		this.movesApplied = movesApplied;
+	}
+
+	/**
+	 * Radar visto en las posiciones intermedias del último plan, uno detrás de otro: las celdas
+	 * [k*n, (k+1)*n) son el radar tras el movimiento k, con n el tamaño del radar. Hay
+	 * getMovesApplied()-1 radares; el de la posición final es getRadar().
+	 * @return Radares del camino (el array puede ser más largo que los datos válidos).
+	 */
+	public int[] getPathRadar() {
+		return pathRadar;
+	}
+
+	public void setPathRadar(int[] pathRadar) {
+		this.pathRadar = pathRadar;
+	}
+
+	/**
+	 * Número de celdas válidas en getPathRadar().
+	 * @return (movimientos aplicados - 1) * tamaño del radar, o 0.
+	 */
+	public int getPathRadarCells() {
+		return (movesApplied > 1) ? (movesApplied - 1) * radar.length : 0;
+	}
+
+	/**
+	 * Radio de la ventana del radar. Con 1 (por defecto) el drone sólo recibe el radar de 3x3; con más
+	 * recibe además la ventana de (2*radio+1)x(2*radio+1) celdas centrada en él (ver getWindow).
+	 * @return El radio.
+	 */
+	public int getRadarRadius() {
+		return radarRadius;
+	}
+
+	public void setRadarRadius(int radarRadius) {
+		this.radarRadius = radarRadius;
+	}
+
+	/**
+	 * Lado de la ventana del radar.
+	 * @return 2*radio+1.
+	 */
+	public int getWindowSide() {
+		return 2 * radarRadius + 1;
+	}
+
+	/**
+	 * Ventana del radar empaquetada a 2 bits por celda (los valores de Map), 32 celdas por long. La
+	 * celda (i, j) de la ventana, con i y j entre 0 y el lado - 1, es la posición i + j*lado. Sólo
+	 * tiene datos si el radio es mayor que 1.
+	 * @return Ventana empaquetada (el array puede ser más largo que los datos válidos).
+	 */
+	public long[] getWindow() {
+		return window;
+	}
+
+	public void setWindow(long[] window) {
+		this.window = window;
+	}
+
+	/**
+	 * Número de longs con datos en getWindow().
+	 * @return 0 si el radio es 1.
+	 */
+	public int getWindowWords() {
+		if (radarRadius <= 1)
+			return 0;
+		int side = getWindowSide();
+		return (side * side + WINDOW_CELLS_PER_WORD - 1) / WINDOW_CELLS_PER_WORD;
+	}
+
+	/**
+	 * Valor de una celda de la ventana.
+	 * @param dx Columna relativa al drone, entre -radio y radio.
+	 * @param dy Fila relativa al drone, entre -radio y radio.
+	 * @return Valor de la celda (LIBRE, OBSTACULO, VISITADO u OBJETIVO).
+	 */
+	public int getWindowCell(int dx, int dy) {
+		int i = (dx + radarRadius) + (dy + radarRadius) * getWindowSide();
+		return (int) (window[i >>> 5] >>> ((i & 31) << 1)) & 3;
+	}
+
+	/**
+	 * Indica si el satélite ha incluido la distancia de camino y el mejor movimiento (ver
+	 * Satelite.setDistanceField).
+	 * @return true si vienen en el status.
+	 */
+	public boolean hasPathInfo() {
+		return pathInfo;
+	}
+
+	/**
+	 * Movimientos que quedan hasta el objetivo más cercano por el camino más corto, sin pasar por
+	 * obstáculos. Sólo si hasPathInfo().
+	 * @return La distancia, 0 sobre una celda objetivo o UNREACHABLE si no hay camino.
+	 */
+	public int getPathDistance() {
+		return pathDistance;
+	}
+
+	/**
+	 * Primer movimiento del camino más corto. Sólo si hasPathInfo().
+	 * @return ESTE, SUR, OESTE o NORTE (los de DroneLogic), o -1 sobre una celda objetivo o sin camino.
+	 */
+	public int getBestMove() {
+		return bestMove;
+	}
+
+	/**
+	 * Guarda la distancia de camino y el mejor movimiento.
+	 * @param pathDistance 	Distancia o UNREACHABLE.
+	 * @param bestMove 		Movimiento o -1.
+	 */
+	public void setPathInfo(int pathDistance, int bestMove) {
+		this.pathInfo = true;
+		this.pathDistance = pathDistance;
+		this.bestMove = bestMove;
+	}
+
+	/**
+	 * Quita la distancia de camino y el mejor movimiento del status.
+	 */
+	public void clearPathInfo() {
+		pathInfo = false;
+		pathDistance = UNREACHABLE;
+		bestMove = -1;
+	}
+
+	/**
+	 * Se asegura de que la ventana cabe en el array y la deja a 0.
+	 */
+	public void clearWindow() {
+		int words = getWindowWords();
+		if (window.length < words)
+			window = new long[words];
+		java.util.Arrays.fill(window, 0, words, 0L);
+	}
+}
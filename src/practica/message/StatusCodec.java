@@ -0,0 +1,88 @@
+package practica.message;
+
+/**
+ * Codificación del contenido de los mensajes entre drone y satélite: el estado que envía
+ * el satélite y la decisión que envía el drone. Los dos agentes tienen que usar el mismo.
+ */
+public interface StatusCodec {
+
+	/**
+	 * Codifica un estado como contenido de un ACLMessage.
+	 * @param status Estado a codificar.
+	 * @return Contenido del mensaje.
+	 * @throws CodecException Si el estado no se puede codificar.
+	 */
+	public String encodeStatus(Status status) throws CodecException;
+
+	/**
+	 * Decodifica un estado sobre un objeto ya creado, para no crear uno en cada paso.
+	 * @param content 	Contenido del mensaje.
+	 * @param status 	Estado donde se escriben los valores.
+	 * @throws CodecException Si el contenido no es un estado válido.
+	 */
+	public void decodeStatus(String content, Status status) throws CodecException;
+
+	/**
+	 * Codifica la decisión del drone.
+	 * @param decision Movimiento (Drone.ESTE, SUR, OESTE, NORTE) o Drone.END.
+	 * @return Contenido del mensaje.
+	 * @throws CodecException Si la decisión no se puede codificar.
+	 */
+	public String encodeDecision(int decision) throws CodecException;
+
+	/**
+	 * Decodifica la decisión del drone.
+	 * @param content Contenido del mensaje.
+	 * @return La decisión.
+	 * @throws CodecException Si el contenido no es una decisión válida.
+	 */
+	public int decodeDecision(String content) throws CodecException;
+
+	/**
+	 * Codifica un plan de varios movimientos que el satélite aplicará en orden.
+	 * @param moves Movimientos (Drone.ESTE, SUR, OESTE, NORTE).
+	 * @param count Número de movimientos de moves que forman el plan, como mucho Status.MAX_PLAN_LENGTH.
+	 * @return Contenido del mensaje.
+	 * @throws CodecException Si el plan no se puede codificar.
+	 */
+	public String encodePlan(int[] moves, int count) throws CodecException;
+
+	/**
+	 * Indica si el contenido de un mensaje es un plan y no una decisión suelta.
+	 * @param content Contenido del mensaje.
+	 * @return true si es un plan.
+	 */
+	public boolean isPlan(String content);
+
+	/**
+	 * Decodifica un plan.
+	 * @param content 	Contenido del mensaje.
+	 * @param moves 	Array donde se escriben los movimientos, de Status.MAX_PLAN_LENGTH posiciones.
+	 * @return Número de movimientos del plan.
+	 * @throws CodecException Si el contenido no es un plan válido.
+	 */
+	public int decodePlan(String content, int[] moves) throws CodecException;
+
+	/**
+	 * Codifica la petición de status con la que el drone pide un radar de otro radio.
+	 * @param radarRadius Radio del radar, entre 1 y Status.MAX_RADAR_RADIUS.
+	 * @return Contenido del mensaje.
+	 * @throws CodecException Si el radio no se puede codificar.
+	 */
+	public String encodeStatusRequest(int radarRadius) throws CodecException;
+
+	/**
+	 * Indica si el contenido de un mensaje es una petición de status con radio.
+	 * @param content Contenido del mensaje.
+	 * @return true si lo es.
+	 */
+	public boolean isStatusRequest(String content);
+
+	/**
+	 * Decodifica una petición de status.
+	 * @param content Contenido del mensaje.
+	 * @return Radio del radar pedido.
+	 * @throws CodecException Si el contenido no es una petición válida.
+	 */
+	public int decodeStatusRequest(String content) throws CodecException;
+}
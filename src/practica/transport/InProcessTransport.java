@@ -0,0 +1,45 @@
+package practica.transport;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import es.upv.dsic.gti_ia.core.ACLMessage;
+import es.upv.dsic.gti_ia.core.AgentID;
+
+/**
+ * Transporte para agentes que están en la misma JVM: los mensajes se dejan directamente en
+ * el buzón (Mailbox) del receptor, sin broker y sin copiarlos ni serializarlos. Los buzones
+ * se buscan por el nombre del agente.
+ */
+public class InProcessTransport implements Transport {
+	private final ConcurrentHashMap<String, Mailbox> mailboxes = new ConcurrentHashMap<String, Mailbox>();
+
+	@Override
+	public void register(AgentID aid) {
+		if (mailboxes.putIfAbsent(aid.name, new Mailbox()) != null)
+			throw new IllegalStateException("Ya hay un agente registrado como " + aid);
+	}
+
+	@Override
+	public void unregister(AgentID aid) {
+		mailboxes.remove(aid.name);
+	}
+
+	@Override
+	public void send(ACLMessage msg) {
+		for (AgentID receiver : msg.getReceiverList()) {
+			Mailbox mailbox = mailboxes.get(receiver.name);
+			if (mailbox != null)
+				mailbox.put(msg);
+			else
+				System.err.println("Transporte: no existe el agente " + receiver);
+		}
+	}
+
+	@Override
+	public ACLMessage receive(AgentID aid) throws InterruptedException {
+		Mailbox mailbox = mailboxes.get(aid.name);
+		if (mailbox == null)
+			throw new IllegalStateException("Agente no registrado: " + aid);
+		return mailbox.take();
+	}
+}
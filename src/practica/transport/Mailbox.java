@@ -0,0 +1,94 @@
+package practica.transport;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import es.upv.dsic.gti_ia.core.ACLMessage;
+import practica.agent.AgentRuntime;
+
+/**
+ * Buzón sin bloqueos para muchos productores y un solo consumidor (cola MPSC de Vyukov).
+ * Los productores sólo hacen un getAndSet sobre la cola; el consumidor, si no hay mensajes,
+ * espera un poco activamente y después se aparca hasta que un productor lo despierta.
+ */
+public class Mailbox {
+	/** Vueltas de espera activa antes de aparcar el hilo consumidor. Con un solo procesador no sirve de nada. */
+	private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 1000 : 0;
+
+	private static class Node {
+		final ACLMessage msg;
+		volatile Node next;
+
+		Node(ACLMessage msg) {
+			this.msg = msg;
+		}
+	}
+
+	private final AtomicReference<Node> tail;
+	private Node head;
+	private volatile Thread waiter;
+	// Hilo que hizo el último take y las vueltas de espera activa que le tocan, para no preguntar
+	// en cada take si es virtual (se pregunta por reflexión)
+	private Thread consumer;
+	private int consumerSpins;
+
+	public Mailbox() {
+		head = new Node(null);
+		tail = new AtomicReference<Node>(head);
+	}
+
+	/**
+	 * Deja un mensaje en el buzón. Lo puede llamar cualquier hilo.
+	 * @param msg Mensaje.
+	 */
+	public void put(ACLMessage msg) {
+		Node node = new Node(msg);
+		Node prev = tail.getAndSet(node);
+		prev.next = node;
+		Thread t = waiter;
+		if (t != null)
+			LockSupport.unpark(t);
+	}
+
+	/**
+	 * Saca un mensaje si lo hay. Sólo lo debe llamar el hilo dueño del buzón.
+	 * @return El mensaje o null.
+	 */
+	public ACLMessage poll() {
+		Node next = head.next;
+		if (next == null)
+			return null;
+		head = next;
+		return next.msg;
+	}
+
+	/**
+	 * Espera a que haya un mensaje y lo saca. Sólo lo debe llamar el hilo dueño del buzón.
+	 * En un hilo virtual no hay espera activa: aparcar sólo libera el hilo del sistema.
+	 * @return El mensaje.
+	 * @throws InterruptedException Si se interrumpe la espera.
+	 */
+	public ACLMessage take() throws InterruptedException {
+		ACLMessage msg;
+		Thread current = Thread.currentThread();
+		if (current != consumer) {
+			consumerSpins = AgentRuntime.isVirtual(current) ? 0 : SPINS;
+			consumer = current;
+		}
+		for (int i = 0; i < consumerSpins; i++) {
+			if ((msg = poll()) != null)
+				return msg;
+		}
+		waiter = current;
+		try {
+			while ((msg = poll()) == null) {
+				if (Thread.interrupted())
+					throw new InterruptedException();
+				LockSupport.park(this);
+			}
+			return msg;
+		} finally {
+			waiter = null;
+		}
+	}
+}
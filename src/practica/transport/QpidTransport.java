@@ -0,0 +1,84 @@
+package practica.transport;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import es.upv.dsic.gti_ia.core.ACLMessage;
+import es.upv.dsic.gti_ia.core.AgentID;
+import es.upv.dsic.gti_ia.core.SingleAgent;
+
+/**
+ * Transporte por el broker QPID de Magentix2. Cada agente registrado tiene por debajo un
+ * SingleAgent que sólo se usa como buzón. Hay que haber llamado antes a AgentsConnection.connect.
+ */
+public class QpidTransport implements Transport {
+	private static QpidTransport instance;
+
+	private final ConcurrentHashMap<String, Endpoint> endpoints = new ConcurrentHashMap<String, Endpoint>();
+
+	/**
+	 * SingleAgent que hace de buzón. Su hilo sólo espera a que se cierre, para que Magentix
+	 * no libere la cola del agente mientras se usa.
+	 */
+	private static class Endpoint extends SingleAgent {
+		private final CountDownLatch closed = new CountDownLatch(1);
+
+		Endpoint(AgentID aid) throws Exception {
+			super(aid);
+		}
+
+		@Override
+		protected void execute() {
+			try {
+				closed.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		void close() {
+			closed.countDown();
+		}
+	}
+
+	/**
+	 * Transporte compartido por todos los agentes que no indican otro.
+	 * @return La instancia.
+	 */
+	public static synchronized QpidTransport getInstance() {
+		if (instance == null)
+			instance = new QpidTransport();
+		return instance;
+	}
+
+	@Override
+	public void register(AgentID aid) throws Exception {
+		Endpoint endpoint = new Endpoint(aid);
+		if (endpoints.putIfAbsent(aid.name, endpoint) != null)
+			throw new IllegalStateException("Ya hay un agente registrado como " + aid);
+		endpoint.start();
+	}
+
+	@Override
+	public void unregister(AgentID aid) {
+		Endpoint endpoint = endpoints.remove(aid.name);
+		if (endpoint != null)
+			endpoint.close();
+	}
+
+	@Override
+	public void send(ACLMessage msg) {
+		Endpoint endpoint = endpoints.get(msg.getSender().name);
+		if (endpoint == null)
+			throw new IllegalStateException("Agente no registrado: " + msg.getSender());
+		endpoint.send(msg);
+	}
+
+	@Override
+	public ACLMessage receive(AgentID aid) throws InterruptedException {
+		Endpoint endpoint = endpoints.get(aid.name);
+		if (endpoint == null)
+			throw new IllegalStateException("Agente no registrado: " + aid);
+		return endpoint.receiveACLMessage();
+	}
+}
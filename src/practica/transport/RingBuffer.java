@@ -0,0 +1,227 @@
+package practica.transport;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Cola circular de tramas en un fichero proyectado en memoria, para un solo escritor y un solo
+ * lector que pueden estar en procesos distintos.
+ * 
+ * Formato del fichero: cabecera con el número mágico y la capacidad, la posición de escritura
+ * y la de lectura en líneas de caché separadas, y después los datos. Cada trama es un int con
+ * su longitud seguido de los bytes, alineada a 8. Si una trama no cabe hasta el final se deja
+ * una marca de relleno y se sigue desde el principio. Las posiciones sólo crecen; la del
+ * escritor se publica después de escribir la trama y la del lector después de leerla, con escrituras
+ * release y lecturas acquire (VarHandle sobre el buffer).
+ *
+ * El escritor tiene el fichero bloqueado (FileLock) mientras lo tiene abierto. El sistema suelta el
+ * bloqueo si el proceso muere, así que una cola sin bloquear es de un escritor que ya no está (ver
+ * isAbandoned).
+ */
+public class RingBuffer implements Closeable {
+	public static final int MAGIC = 0x474E4952; // "RING"
+	private static final int MAGIC_OFFSET = 0;
+	private static final int CAPACITY_OFFSET = 4;
+	private static final int WRITE_OFFSET = 64;
+	private static final int READ_OFFSET = 128;
+	private static final int DATA_OFFSET = 192;
+	private static final int PADDING = -1;
+
+	// Acceso ordenado a las posiciones, que están alineadas a 8 en un buffer alineado a página
+	private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+	private final RandomAccessFile file;
+	private final MappedByteBuffer buffer;
+	// Bloqueo del escritor; null en el lado del lector
+	private FileLock writerLock;
+	// Vistas para copiar los bytes de las tramas en bloque, una por lado
+	private final ByteBuffer writeView;
+	private final ByteBuffer readView;
+	private final int capacity;
+	private final int mask;
+	// Posición propia: la de escritura en el lado del escritor y la de lectura en el del lector
+	private long writePos;
+	private long readPos;
+
+	private RingBuffer(RandomAccessFile file, MappedByteBuffer buffer) {
+		this.file = file;
+		this.buffer = buffer;
+		buffer.order(ByteOrder.nativeOrder());
+		capacity = buffer.getInt(CAPACITY_OFFSET);
+		mask = capacity - 1;
+		writeView = buffer.duplicate();
+		readView = buffer.duplicate();
+		writePos = (long) LONG.getAcquire(buffer, WRITE_OFFSET);
+		readPos = (long) LONG.getAcquire(buffer, READ_OFFSET);
+	}
+
+	/**
+	 * Crea la cola, vacía, para escribir en ella. Se prepara en un fichero temporal y se renombra, así el
+	 * lector nunca ve un fichero a medio inicializar; si ya había una cola en esa ruta se sustituye. El
+	 * fichero queda bloqueado hasta close().
+	 * @param path 		Fichero de la cola.
+	 * @param capacity 	Bytes de datos, potencia de dos.
+	 * @return La cola abierta para escribir.
+	 * @throws IOException Si no se puede crear el fichero.
+	 */
+	public static RingBuffer create(File path, int capacity) throws IOException {
+		if (capacity < 64 || Integer.bitCount(capacity) != 1)
+			throw new IllegalArgumentException("La capacidad debe ser potencia de dos: " + capacity);
+		File tmp = new File(path.getPath() + ".tmp");
+		RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+		try {
+			raf.setLength(DATA_OFFSET + capacity);
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, DATA_OFFSET + capacity);
+			buffer.order(ByteOrder.nativeOrder());
+			buffer.putInt(CAPACITY_OFFSET, capacity);
+			buffer.putLong(WRITE_OFFSET, 0);
+			buffer.putLong(READ_OFFSET, 0);
+			buffer.putInt(MAGIC_OFFSET, MAGIC);
+			FileLock lock = raf.getChannel().lock();
+			Files.move(tmp.toPath(), path.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			RingBuffer ring = new RingBuffer(raf, buffer);
+			ring.writerLock = lock;
+			return ring;
+		} catch (IOException e) {
+			raf.close();
+			tmp.delete();
+			throw e;
+		}
+	}
+
+	/**
+	 * Abre una cola que ya existe.
+	 * @param path Fichero de la cola.
+	 * @return La cola.
+	 * @throws IOException Si no se puede abrir o no es una cola.
+	 */
+	public static RingBuffer open(File path) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(path, "rw");
+		try {
+			long length = raf.length();
+			if (length < DATA_OFFSET)
+				throw new IOException("No es una cola: " + path);
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+			buffer.order(ByteOrder.nativeOrder());
+			int capacity = buffer.getInt(CAPACITY_OFFSET);
+			if (buffer.getInt(MAGIC_OFFSET) != MAGIC || DATA_OFFSET + (long) capacity != length)
+				throw new IOException("No es una cola: " + path);
+			return new RingBuffer(raf, buffer);
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Comprueba si una cola ya no tiene escritor: nadie tiene el fichero bloqueado. Es lo que queda de un
+	 * proceso que terminó sin borrarla o que murió.
+	 * @param path Fichero de la cola.
+	 * @return true si no está bloqueada; false si lo está, también por otro hilo de esta JVM, o si no se
+	 * 		   puede comprobar.
+	 */
+	public static boolean isAbandoned(File path) {
+		try (RandomAccessFile raf = new RandomAccessFile(path, "rw")) {
+			FileLock lock = raf.getChannel().tryLock();
+			if (lock == null)
+				return false;
+			lock.release();
+			return true;
+		} catch (OverlappingFileLockException e) {
+			return false;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Getter de la capacidad.
+	 * @return Bytes de datos de la cola.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Trama más larga que admite la cola.
+	 * @return Bytes.
+	 */
+	public int getMaxFrame() {
+		return capacity / 2 - 8;
+	}
+
+	private static int align(int n) {
+		return (n + 7) & ~7;
+	}
+
+	/**
+	 * Escribe una trama si hay sitio. Sólo lo debe llamar el escritor.
+	 * @param frame  Bytes de la trama.
+	 * @param length Longitud de la trama.
+	 * @return false si la cola está llena.
+	 */
+	public boolean offer(byte[] frame, int length) {
+		if (length > getMaxFrame())
+			throw new IllegalArgumentException("Trama demasiado larga: " + length);
+		int need = align(4 + length);
+		int index = (int) writePos & mask;
+		int toEnd = capacity - index;
+		int padding = toEnd < need ? toEnd : 0;
+		long read = (long) LONG.getAcquire(buffer, READ_OFFSET);
+		if (writePos + padding + need - read > capacity)
+			return false;
+		if (padding > 0) {
+			buffer.putInt(DATA_OFFSET + index, PADDING);
+			index = 0;
+		}
+		writeView.position(DATA_OFFSET + index + 4);
+		writeView.put(frame, 0, length);
+		buffer.putInt(DATA_OFFSET + index, length);
+		writePos += padding + need;
+		LONG.setRelease(buffer, WRITE_OFFSET, writePos);
+		return true;
+	}
+
+	/**
+	 * Lee la siguiente trama si la hay. Sólo lo debe llamar el lector.
+	 * @return Los bytes de la trama o null si la cola está vacía.
+	 */
+	public byte[] poll() {
+		long write = (long) LONG.getAcquire(buffer, WRITE_OFFSET);
+		if (readPos == write)
+			return null;
+		int index = (int) readPos & mask;
+		int length = buffer.getInt(DATA_OFFSET + index);
+		if (length == PADDING) {
+			readPos += capacity - index;
+			index = 0;
+			length = buffer.getInt(DATA_OFFSET);
+		}
+		byte[] frame = new byte[length];
+		readView.position(DATA_OFFSET + index + 4);
+		readView.get(frame);
+		readPos += align(4 + length);
+		// Release: la trama se ha leído entera antes de que el escritor pueda reutilizar el sitio
+		LONG.setRelease(buffer, READ_OFFSET, readPos);
+		return frame;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (writerLock != null)
+			writerLock.release();
+		file.close();
+	}
+}
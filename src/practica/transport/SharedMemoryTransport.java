@@ -0,0 +1,378 @@
+package practica.transport;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+import es.upv.dsic.gti_ia.core.ACLMessage;
+import es.upv.dsic.gti_ia.core.AgentID;
+
+/**
+ * Transporte para agentes en JVMs distintas de la misma máquina, sin broker. Cada pareja de
+ * agentes tiene una cola (RingBuffer) por sentido en un directorio compartido, en el fichero
+ * "emisor@receptor.ring". El emisor la crea con el primer mensaje y el receptor la descubre
+ * mirando el directorio mientras espera.
+ *
+ * Al registrarse, un agente borra las colas que hayan quedado de ejecuciones anteriores: las suyas de
+ * salida (sólo escribe él en ellas) y las de entrada que ningún escritor tiene abiertas (ver
+ * RingBuffer.isAbandoned). Así un receptor nuevo nunca lee tramas viejas. Por eso los agentes se
+ * registran antes de arrancar a ninguno, como hace el Launcher.
+ * 
+ * Si un escritor vuelve a arrancar, su cola es un fichero nuevo con el mismo nombre: el receptor la
+ * reconoce por la identidad del fichero (fileKey) y la vuelve a abrir, descartando lo que quedara en
+ * la anterior. Si una cola está llena más de SEND_TIMEOUT_NANOS, el receptor no está leyendo: se avisa
+ * por la salida de error y el mensaje se descarta para ese receptor, como hace InProcessTransport con
+ * los agentes que no existen.
+ *
+ * Los mensajes viajan como tramas con la performativa, el emisor, los receptores, el contenido
+ * y los campos de conversación. Todos los procesos deben usar el mismo directorio.
+ */
+public class SharedMemoryTransport implements Transport {
+	/** Espera activa: menor latencia, pero ocupa un núcleo por agente esperando. */
+	public static final int BUSY_SPIN = 0;
+	/** Espera activa un rato, después cede el procesador y al final se duerme a intervalos cortos. */
+	public static final int PARK = 1;
+
+	public static final int DEFAULT_CAPACITY = 1 << 20;
+	private static final String SUFFIX = ".ring";
+	// Con un solo procesador la espera activa sólo retrasa al otro proceso
+	private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 1000 : 0;
+	private static final int YIELDS = 100;
+	private static final long PARK_NANOS = 20000;
+	// Cada cuánto se busca en el directorio colas nuevas mientras se espera
+	private static final long SCAN_NANOS = 1000000;
+	/** Tiempo que se espera a que haya sitio en una cola llena antes de descartar el mensaje. */
+	public static final long SEND_TIMEOUT_NANOS = 5000000000L;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File dir;
+	private final int capacity;
+	private final int waitStrategy;
+	private final ConcurrentHashMap<String, RingBuffer> outbound = new ConcurrentHashMap<String, RingBuffer>();
+	private final ConcurrentHashMap<String, Inbox> inboxes = new ConcurrentHashMap<String, Inbox>();
+
+	/**
+	 * Colas de entrada de un agente. Sólo la usa el hilo del agente.
+	 */
+	private class Inbox {
+		final String suffix;
+		final List<RingBuffer> rings = new ArrayList<RingBuffer>();
+		final List<File> files = new ArrayList<File>();
+		// Identidad de cada fichero abierto, en el mismo orden que rings
+		final List<Object> keys = new ArrayList<Object>();
+		// Posición en rings de cada cola, por nombre de fichero
+		final HashMap<String, Integer> known = new HashMap<String, Integer>();
+		int next = 0;
+
+		Inbox(String name) {
+			suffix = "@" + name + SUFFIX;
+		}
+
+		void scan() {
+			File[] found = dir.listFiles(new FilenameFilter() {
+				@Override
+				public boolean accept(File d, String fileName) {
+					return fileName.endsWith(suffix);
+				}
+			});
+			if (found == null)
+				return;
+			for (File f : found) {
+				Object key = fileKey(f);
+				if (key == null)
+					continue;
+				Integer index = known.get(f.getName());
+				if (index != null && key.equals(keys.get(index)))
+					continue;
+				RingBuffer ring;
+				try {
+					ring = RingBuffer.open(f);
+				} catch (IOException e) {
+					System.err.println("Transporte: no se puede abrir la cola " + f + ": " + e.getMessage());
+					continue;
+				}
+				if (index == null) {
+					known.put(f.getName(), rings.size());
+					rings.add(ring);
+					files.add(f);
+					keys.add(key);
+				} else {
+					// El escritor ha vuelto a arrancar y ha sustituido el fichero: la proyección vieja ya no recibe nada
+					try {
+						rings.get(index).close();
+					} catch (IOException e) {
+					}
+					rings.set(index, ring);
+					keys.set(index, key);
+				}
+			}
+		}
+
+		/**
+		 * Identidad del fichero: el inodo si el sistema lo da y si no la fecha de creación.
+		 * @param f Fichero.
+		 * @return La identidad, o null si el fichero ya no existe.
+		 */
+		Object fileKey(File f) {
+			try {
+				BasicFileAttributes attrs = Files.readAttributes(f.toPath(), BasicFileAttributes.class);
+				return attrs.fileKey() != null ? attrs.fileKey() : attrs.creationTime();
+			} catch (NoSuchFileException e) {
+				return null;
+			} catch (IOException e) {
+				System.err.println("Transporte: no se puede leer la cola " + f + ": " + e.getMessage());
+				return null;
+			}
+		}
+
+		byte[] poll() {
+			int n = rings.size();
+			for (int i = 0; i < n; i++) {
+				int k = (next + i) % n;
+				byte[] frame = rings.get(k).poll();
+				if (frame != null) {
+					next = (k + 1) % n;
+					return frame;
+				}
+			}
+			return null;
+		}
+
+		void close() {
+			for (int i = 0; i < rings.size(); i++) {
+				try {
+					rings.get(i).close();
+				} catch (IOException e) {
+				}
+				files.get(i).delete();
+			}
+		}
+	}
+
+	/**
+	 * Constructor con colas de 1MB y espera PARK.
+	 * @param dir Directorio compartido por todos los procesos.
+	 */
+	public SharedMemoryTransport(File dir) {
+		this(dir, DEFAULT_CAPACITY, PARK);
+	}
+
+	/**
+	 * @param dir 			Directorio compartido por todos los procesos.
+	 * @param capacity 		Bytes de cada cola, potencia de dos.
+	 * @param waitStrategy 	BUSY_SPIN o PARK.
+	 */
+	public SharedMemoryTransport(File dir, int capacity, int waitStrategy) {
+		this.dir = dir;
+		this.capacity = capacity;
+		this.waitStrategy = waitStrategy;
+		dir.mkdirs();
+	}
+
+	@Override
+	public void register(AgentID aid) {
+		Inbox inbox = new Inbox(aid.name);
+		if (inboxes.putIfAbsent(aid.name, inbox) != null)
+			throw new IllegalStateException("Ya hay un agente registrado como " + aid);
+		removeStaleRings(aid.name);
+	}
+
+	/**
+	 * Borra las colas de un agente que quedan de ejecuciones anteriores.
+	 * @param name Nombre del agente.
+	 */
+	private void removeStaleRings(String name) {
+		final String outPrefix = name + "@", inSuffix = "@" + name + SUFFIX;
+		File[] found = dir.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File d, String fileName) {
+				return fileName.endsWith(SUFFIX) && (fileName.startsWith(outPrefix) || fileName.endsWith(inSuffix));
+			}
+		});
+		if (found == null)
+			return;
+		for (File f : found)
+			if ((f.getName().startsWith(outPrefix) || RingBuffer.isAbandoned(f)) && !f.delete())
+				System.err.println("Transporte: no se puede borrar la cola vieja " + f);
+	}
+
+	@Override
+	public void unregister(AgentID aid) {
+		Inbox inbox = inboxes.remove(aid.name);
+		if (inbox != null)
+			inbox.close();
+		String prefix = aid.name + "@";
+		for (String key : outbound.keySet()) {
+			if (key.startsWith(prefix)) {
+				RingBuffer ring = outbound.remove(key);
+				try {
+					ring.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	@Override
+	public void send(ACLMessage msg) {
+		byte[] frame = encode(msg);
+		String from = msg.getSender().name;
+		for (AgentID receiver : msg.getReceiverList()) {
+			RingBuffer ring = outboundRing(from + "@" + receiver.name + SUFFIX);
+			synchronized (ring) {
+				long deadline = 0;
+				for (int idle = 0; !ring.offer(frame, frame.length); idle++) {
+					// Una cola llena es un receptor que va atrasado: se cede el procesador aunque sea BUSY_SPIN
+					backOff(idle);
+					if (idle < SPINS + YIELDS)
+						continue;
+					if (deadline == 0) {
+						deadline = System.nanoTime() + SEND_TIMEOUT_NANOS;
+					} else if (System.nanoTime() - deadline > 0) {
+						System.err.println("Transporte: el agente " + receiver + " no lee su cola, se descarta el mensaje de " + from);
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	private RingBuffer outboundRing(String fileName) {
+		RingBuffer ring = outbound.get(fileName);
+		if (ring != null)
+			return ring;
+		synchronized (outbound) {
+			ring = outbound.get(fileName);
+			if (ring == null) {
+				File f = new File(dir, fileName);
+				try {
+					// Siempre una cola nueva: si hay una con ese nombre es de un escritor anterior
+					ring = RingBuffer.create(f, capacity);
+				} catch (IOException e) {
+					throw new IllegalStateException("No se puede crear la cola " + f, e);
+				}
+				outbound.put(fileName, ring);
+			}
+			return ring;
+		}
+	}
+
+	@Override
+	public ACLMessage receive(AgentID aid) throws InterruptedException {
+		Inbox inbox = inboxes.get(aid.name);
+		if (inbox == null)
+			throw new IllegalStateException("Agente no registrado: " + aid);
+		long lastScan = System.nanoTime();
+		inbox.scan();
+		int idle = 0;
+		byte[] frame;
+		while ((frame = inbox.poll()) == null) {
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			long now = System.nanoTime();
+			if (now - lastScan > SCAN_NANOS) {
+				inbox.scan();
+				lastScan = now;
+			}
+			idle(idle++);
+		}
+		return decode(frame);
+	}
+
+	private void idle(int count) {
+		if (waitStrategy != BUSY_SPIN)
+			backOff(count);
+	}
+
+	/**
+	 * Espera activa las primeras SPINS vueltas, después cede el procesador y al final se duerme.
+	 * @param count Vueltas que se llevan esperando.
+	 */
+	private void backOff(int count) {
+		if (count < SPINS)
+			return;
+		if (count < SPINS + YIELDS)
+			Thread.yield();
+		else
+			LockSupport.parkNanos(this, PARK_NANOS);
+	}
+
+	/**
+	 * Pasa un mensaje a bytes.
+	 * @param msg Mensaje.
+	 * @return La trama.
+	 */
+	static byte[] encode(ACLMessage msg) {
+		List<AgentID> receivers = msg.getReceiverList();
+		byte[][] strings = new byte[5 + receivers.size()][];
+		strings[0] = bytes(msg.getSender().name);
+		strings[1] = bytes(msg.getContent());
+		strings[2] = bytes(msg.getConversationId());
+		strings[3] = bytes(msg.getReplyWith());
+		strings[4] = bytes(msg.getInReplyTo());
+		for (int i = 0; i < receivers.size(); i++)
+			strings[5 + i] = bytes(receivers.get(i).name);
+		int length = 8;
+		for (byte[] s : strings)
+			length += 4 + (s == null ? 0 : s.length);
+		ByteBuffer buf = ByteBuffer.allocate(length);
+		buf.putInt(msg.getPerformativeInt());
+		buf.putInt(receivers.size());
+		for (byte[] s : strings) {
+			if (s == null) {
+				buf.putInt(-1);
+			} else {
+				buf.putInt(s.length);
+				buf.put(s);
+			}
+		}
+		return buf.array();
+	}
+
+	/**
+	 * Reconstruye un mensaje a partir de una trama.
+	 * @param frame La trama.
+	 * @return El mensaje.
+	 */
+	static ACLMessage decode(byte[] frame) {
+		try {
+			ByteBuffer buf = ByteBuffer.wrap(frame);
+			ACLMessage msg = new ACLMessage(buf.getInt());
+			int receivers = buf.getInt();
+			msg.setSender(new AgentID(string(buf)));
+			msg.setContent(string(buf));
+			msg.setConversationId(string(buf));
+			msg.setReplyWith(string(buf));
+			msg.setInReplyTo(string(buf));
+			for (int i = 0; i < receivers; i++)
+				msg.addReceiver(new AgentID(string(buf)));
+			return msg;
+		} catch (BufferUnderflowException e) {
+			throw new IllegalStateException("Trama corrupta", e);
+		}
+	}
+
+	private static byte[] bytes(String s) {
+		return s == null ? null : s.getBytes(UTF8);
+	}
+
+	private static String string(ByteBuffer buf) {
+		int length = buf.getInt();
+		if (length < 0)
+			return null;
+		String s = new String(buf.array(), buf.position(), length, UTF8);
+		buf.position(buf.position() + length);
+		return s;
+	}
+}
@@ -0,0 +1,38 @@
+package practica.transport;
+
+import es.upv.dsic.gti_ia.core.ACLMessage;
+import es.upv.dsic.gti_ia.core.AgentID;
+
+/**
+ * Medio por el que los agentes se envían los ACLMessage. Cada agente se registra con su
+ * AgentID para tener un buzón y después envía y recibe por él.
+ */
+public interface Transport {
+
+	/**
+	 * Crea el buzón de un agente.
+	 * @param aid Identificador del agente.
+	 * @throws Exception Si no se puede crear (por ejemplo, si no hay conexión con el broker).
+	 */
+	public void register(AgentID aid) throws Exception;
+
+	/**
+	 * Borra el buzón de un agente. Los mensajes que queden se pierden.
+	 * @param aid Identificador del agente.
+	 */
+	public void unregister(AgentID aid);
+
+	/**
+	 * Envía un mensaje a todos sus receptores. El mensaje no se debe modificar después de enviarlo.
+	 * @param msg Mensaje, con el emisor ya puesto.
+	 */
+	public void send(ACLMessage msg);
+
+	/**
+	 * Espera hasta que llegue un mensaje al buzón del agente.
+	 * @param aid Identificador del agente que recibe.
+	 * @return El mensaje.
+	 * @throws InterruptedException Si se interrumpe la espera.
+	 */
+	public ACLMessage receive(AgentID aid) throws InterruptedException;
+}
@@ -0,0 +1,136 @@
+package practica.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Igual que PackedStorage (2 bits por celda, 32 celdas por long) pero sobre un AtomicLongArray:
+ * cada escritura de una celda es un compareAndSet de su palabra, así que varios hilos pueden
+ * modificar celdas distintas de la misma palabra a la vez sin perder cambios y sin cerrojos.
+ * getRow y setRow no son atómicos para la fila entera, sólo para cada palabra.
+ */
+public class AtomicPackedStorage implements MapStorage {
+	private static final long MASK = 3L;
+
+	private final AtomicLongArray data;
+	private final int heigh;
+	private final int width;
+
+	/**
+	 * Constructor. Todas las celdas empiezan a LIBRE (que vale 0).
+	 * @param heigh 	Altura del mapa
+	 * @param width 	Anchura del mapa
+	 */
+	public AtomicPackedStorage(int heigh, int width) {
+		this.heigh = heigh;
+		this.width = width;
+		data = new AtomicLongArray(PackedStorage.words(heigh, width));
+	}
+
+	/**
+	 * Copia las celdas de un mapa. Los valores que no caben en 2 bits (colores desconocidos) se
+	 * guardan como OBSTACULO.
+	 * @param map Mapa origen.
+	 * @return El almacenamiento con la copia.
+	 */
+	public static AtomicPackedStorage copyOf(Map map) {
+		AtomicPackedStorage storage = new AtomicPackedStorage(map.getHeigh(), map.getWidth());
+		int[] row = new int[map.getWidth()];
+		for (int y = 0; y < map.getHeigh(); y++) {
+			map.getRow(y, row);
+			for (int x = 0; x < row.length; x++)
+				if (row[x] < Map.LIBRE || row[x] > Map.OBJETIVO)
+					row[x] = Map.OBSTACULO;
+			storage.setRow(y, row);
+		}
+		return storage;
+	}
+
+	@Override
+	public int getHeigh() {
+		return heigh;
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int get(int x, int y) {
+		long i = (long) y * width + x;
+		return (int) ((data.get((int) (i >>> 5)) >>> ((i & 31) << 1)) & MASK);
+	}
+
+	@Override
+	public void set(int x, int y, int value) {
+		checkValue(value);
+		long i = (long) y * width + x;
+		int w = (int) (i >>> 5);
+		int shift = (int) (i & 31) << 1;
+		update(w, MASK << shift, (long) value << shift);
+	}
+
+	/**
+	 * Cambia los bits de mask de la palabra w por los de bits, reintentando si otro hilo la ha
+	 * modificado entre medias.
+	 */
+	private void update(int w, long mask, long bits) {
+		long old, value;
+		do {
+			old = data.get(w);
+			value = (old & ~mask) | bits;
+		} while (old != value && !data.compareAndSet(w, old, value));
+	}
+
+	@Override
+	public void getRow(int y, int[] row) {
+		long i = (long) y * width;
+		int x = 0;
+		while (x < width) {
+			int offset = (int) (i & 31);
+			int n = Math.min(PackedStorage.CELLS_PER_WORD - offset, width - x);
+			long word = data.get((int) (i >>> 5)) >>> (offset << 1);
+			for (int k = 0; k < n; k++) {
+				row[x++] = (int) (word & MASK);
+				word >>>= 2;
+			}
+			i += n;
+		}
+	}
+
+	@Override
+	public void setRow(int y, int[] row) {
+		long i = (long) y * width;
+		int x = 0;
+		while (x < width) {
+			int offset = (int) (i & 31);
+			int n = Math.min(PackedStorage.CELLS_PER_WORD - offset, width - x);
+			long bits = 0;
+			for (int k = n - 1; k >= 0; k--) {
+				checkValue(row[x + k]);
+				bits = (bits << 2) | row[x + k];
+			}
+			long mask = (n == PackedStorage.CELLS_PER_WORD) ? -1L : ((1L << (n << 1)) - 1);
+			update((int) (i >>> 5), mask << (offset << 1), bits << (offset << 1));
+			x += n;
+			i += n;
+		}
+	}
+
+	@Override
+	public MapStorage copy() {
+		AtomicPackedStorage copy = new AtomicPackedStorage(heigh, width);
+		for (int w = 0; w < data.length(); w++)
+			copy.data.set(w, data.get(w));
+		return copy;
+	}
+
+	/**
+	 * Comprueba que el valor cabe en 2 bits.
+	 * @param value Valor a guardar.
+	 */
+	private static void checkValue(int value) {
+		if (value < Map.LIBRE || value > Map.OBJETIVO)
+			throw new IllegalArgumentException("Valor de celda no válido: " + value);
+	}
+}
@@ -0,0 +1,576 @@
+package practica.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Abstracción jerárquica de un mapa para buscar caminos con HPA* (Botea, Müller y Schaeffer). El mapa
+ * se parte en clusters de clusterSize x clusterSize celdas. En cada borde entre dos clusters, cada tramo
+ * de celdas libres a los dos lados es una entrada con uno o dos nodos a cada lado (uno en el centro si
+ * es corto, uno en cada extremo si es largo), y dentro de cada cluster se guarda el coste del camino
+ * entre cada par de sus nodos. Un camino se busca con A* sobre ese grafo pequeño y después se refina
+ * con recorridos en anchura dentro de cada cluster.
+ *
+ * Se construye una vez por mapa y se guarda junto al fichero del mapa (ver forMapFile). Si cambian
+ * celdas del mapa, cellsChanged sólo rehace los clusters afectados y sus vecinos.
+ *
+ * Formato del fichero (.hpa): int magic "HPA1", int versión, anchura, altura, tamaño de cluster, long
+ * con el hash de los obstáculos del mapa y, por cada cluster, el número de nodos, sus celdas y la
+ * matriz de costes entre ellos. Si el hash no coincide con el mapa el fichero se rehace.
+ *
+ * Las búsquedas no modifican nada, así que se pueden hacer desde varios hilos a la vez; cellsChanged no.
+ */
+public class ClusterGraph {
+	/** Extensión de los ficheros de la abstracción. */
+	public static final String EXTENSION = ".hpa";
+	/** Lado de los clusters por defecto. */
+	public static final int DEFAULT_CLUSTER_SIZE = 16;
+	/** Coste entre dos nodos sin camino dentro del cluster. */
+	public static final int INF = Integer.MAX_VALUE / 4;
+	private static final int MAGIC = 0x48504131; // "HPA1"
+	private static final int VERSION = 1;
+	// Las entradas de más celdas tienen un nodo en cada extremo en vez de uno en el centro
+	private static final int LONG_ENTRANCE = 6;
+	// Desplazamiento de cada movimiento, en el orden de DroneLogic (ESTE, SUR, OESTE, NORTE)
+	private static final int[] MOVE_X = {1, 0, -1, 0}, MOVE_Y = {0, 1, 0, -1};
+
+	private final Map map;
+	private final int width, heigh, clusterSize;
+	private final int clustersX, clustersY;
+	// Por cluster: celdas de sus nodos (índice x + y*anchura) y costes entre ellos (n x n)
+	private final int[][] nodes;
+	private final int[][] costs;
+	// Primer identificador global de los nodos de cada cluster, para el A*
+	private int[] offsets;
+	private int nodeCount;
+
+	private ClusterGraph(Map map, int clusterSize) {
+		this.map = map;
+		this.width = map.getWidth();
+		this.heigh = map.getHeigh();
+		this.clusterSize = clusterSize;
+		clustersX = (width + clusterSize - 1) / clusterSize;
+		clustersY = (heigh + clusterSize - 1) / clusterSize;
+		nodes = new int[clustersX * clustersY][];
+		costs = new int[clustersX * clustersY][];
+	}
+
+	/**
+	 * Construye la abstracción de un mapa.
+	 * @param map 			Mapa. Se guarda la referencia para las búsquedas y para cellsChanged.
+	 * @param clusterSize 	Lado de los clusters.
+	 * @return La abstracción.
+	 */
+	public static ClusterGraph build(Map map, int clusterSize) {
+		ClusterGraph graph = new ClusterGraph(map, clusterSize);
+		for (int c = 0; c < graph.nodes.length; c++)
+			graph.findNodes(c);
+		for (int c = 0; c < graph.nodes.length; c++)
+			graph.computeCosts(c);
+		graph.computeOffsets();
+		return graph;
+	}
+
+	/**
+	 * Abstracción de un mapa guardada junto a su fichero: se lee si existe y corresponde al mapa; si
+	 * no, se construye y se guarda. Queda también en el mapa (ver Map.getClusterGraph).
+	 * @param mapPath 	Ruta del fichero del mapa (imagen o .map).
+	 * @param map 		Mapa ya cargado de ese fichero.
+	 * @return La abstracción.
+	 */
+	public static ClusterGraph forMapFile(String mapPath, Map map) {
+		String path = fileFor(mapPath);
+		ClusterGraph graph = null;
+		if (new File(path).exists()) {
+			try {
+				graph = read(path, map);
+			} catch (IOException e) {
+				graph = null;
+			}
+		}
+		if (graph == null) {
+			graph = build(map, DEFAULT_CLUSTER_SIZE);
+			try {
+				graph.write(path);
+			} catch (IOException e) {
+				System.err.println("No se puede guardar " + path + ": " + e.getMessage());
+			}
+		}
+		map.setClusterGraph(graph);
+		return graph;
+	}
+
+	/**
+	 * @param mapPath Ruta del fichero del mapa.
+	 * @return Ruta del fichero de la abstracción: la del mapa con la extensión EXTENSION.
+	 */
+	public static String fileFor(String mapPath) {
+		int dot = mapPath.lastIndexOf('.');
+		if (dot <= mapPath.lastIndexOf(File.separatorChar))
+			dot = mapPath.length();
+		return mapPath.substring(0, dot) + EXTENSION;
+	}
+
+	/**
+	 * Lee una abstracción guardada con write.
+	 * @param path 	Ruta del fichero.
+	 * @param map 	Mapa al que corresponde.
+	 * @return La abstracción, o null si es de otro mapa (otro tamaño u otros obstáculos).
+	 * @throws IOException Si no se puede leer o no es un fichero de abstracción.
+	 */
+	public static ClusterGraph read(String path, Map map) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+			if (in.readInt() != MAGIC)
+				throw new IOException("No es un fichero de abstracción");
+			if (in.readInt() != VERSION)
+				throw new IOException("Versión no soportada");
+			int width = in.readInt(), heigh = in.readInt(), clusterSize = in.readInt();
+			long hash = in.readLong();
+			if (width != map.getWidth() || heigh != map.getHeigh() || clusterSize < 1 || hash != hash(map))
+				return null;
+			ClusterGraph graph = new ClusterGraph(map, clusterSize);
+			for (int c = 0; c < graph.nodes.length; c++) {
+				int n = in.readInt();
+				int[] cells = new int[n], cost = new int[n * n];
+				for (int i = 0; i < n; i++)
+					cells[i] = in.readInt();
+				for (int i = 0; i < n * n; i++)
+					cost[i] = in.readInt();
+				graph.nodes[c] = cells;
+				graph.costs[c] = cost;
+			}
+			graph.computeOffsets();
+			return graph;
+		}
+	}
+
+	/**
+	 * Guarda la abstracción.
+	 * @param path Ruta del fichero.
+	 * @throws IOException Si no se puede escribir.
+	 */
+	public void write(String path) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(width);
+			out.writeInt(heigh);
+			out.writeInt(clusterSize);
+			out.writeLong(hash(map));
+			for (int c = 0; c < nodes.length; c++) {
+				out.writeInt(nodes[c].length);
+				for (int cell : nodes[c])
+					out.writeInt(cell);
+				for (int cost : costs[c])
+					out.writeInt(cost);
+			}
+		}
+	}
+
+	/**
+	 * Hash (FNV-1a) de qué celdas son obstáculo, por filas. Es lo único del mapa de lo que depende la
+	 * abstracción.
+	 */
+	private static long hash(Map map) {
+		long hash = 0xcbf29ce484222325L;
+		int[] row = new int[map.getWidth()];
+		for (int y = 0; y < map.getHeigh(); y++) {
+			map.getRow(y, row);
+			long bits = 0;
+			for (int x = 0; x < row.length; x++) {
+				bits = (bits << 1) | ((row[x] == Map.OBSTACULO) ? 1 : 0);
+				if ((x & 63) == 63 || x == row.length - 1) {
+					hash = (hash ^ bits) * 0x100000001b3L;
+					bits = 0;
+				}
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Han cambiado celdas del mapa dentro de un rectángulo: se rehacen los nodos de los clusters que lo
+	 * tocan y de sus vecinos (comparten las entradas de los bordes), y los costes de todos ellos.
+	 * @param left 		Primera columna.
+	 * @param top 		Primera fila.
+	 * @param right 	Última columna.
+	 * @param bottom 	Última fila.
+	 */
+	public void cellsChanged(int left, int top, int right, int bottom) {
+		int cx0 = Math.max(0, left / clusterSize - 1), cy0 = Math.max(0, top / clusterSize - 1);
+		int cx1 = Math.min(clustersX - 1, right / clusterSize + 1), cy1 = Math.min(clustersY - 1, bottom / clusterSize + 1);
+		for (int cy = cy0; cy <= cy1; cy++)
+			for (int cx = cx0; cx <= cx1; cx++)
+				findNodes(cx + cy * clustersX);
+		for (int cy = cy0; cy <= cy1; cy++)
+			for (int cx = cx0; cx <= cx1; cx++)
+				computeCosts(cx + cy * clustersX);
+		computeOffsets();
+	}
+
+	/**
+	 * Busca los nodos de un cluster en sus cuatro bordes. Un tramo de celdas libres a los dos lados de
+	 * un borde es una entrada; los nodos de los dos clusters salen del mismo tramo, así que quedan
+	 * emparejados sin guardar las aristas entre clusters (ver partner).
+	 */
+	private void findNodes(int cluster) {
+		int cx = cluster % clustersX, cy = cluster / clustersX;
+		int left = cx * clusterSize, top = cy * clusterSize;
+		int right = Math.min(left + clusterSize, width) - 1, bottom = Math.min(top + clusterSize, heigh) - 1;
+		int[] cells = new int[4 * clusterSize * 2];
+		int n = 0;
+		// Este y oeste: se recorre la columna del borde; norte y sur: la fila
+		if (right + 1 < width)
+			n = entrances(cells, n, right, top, 0, 1, bottom - top + 1, 1, 0);
+		if (left > 0)
+			n = entrances(cells, n, left, top, 0, 1, bottom - top + 1, -1, 0);
+		if (bottom + 1 < heigh)
+			n = entrances(cells, n, left, bottom, 1, 0, right - left + 1, 0, 1);
+		if (top > 0)
+			n = entrances(cells, n, left, top, 1, 0, right - left + 1, 0, -1);
+		// Una esquina puede salir en dos bordes
+		Arrays.sort(cells, 0, n);
+		int unique = 0;
+		for (int i = 0; i < n; i++)
+			if (unique == 0 || cells[unique - 1] != cells[i])
+				cells[unique++] = cells[i];
+		nodes[cluster] = Arrays.copyOf(cells, unique);
+	}
+
+	/**
+	 * Añade los nodos de un borde.
+	 * @param x, y 		Primera celda del borde, dentro del cluster.
+	 * @param dx, dy 	Dirección en la que se recorre el borde.
+	 * @param length 	Celdas del borde.
+	 * @param ox, oy 	Dirección hacia el cluster vecino.
+	 */
+	private int entrances(int[] cells, int n, int x, int y, int dx, int dy, int length, int ox, int oy) {
+		int start = -1;
+		for (int i = 0; i <= length; i++) {
+			int px = x + i * dx, py = y + i * dy;
+			boolean open = i < length && isFree(px, py) && isFree(px + ox, py + oy);
+			if (open && start < 0)
+				start = i;
+			if (!open && start >= 0) {
+				int end = i - 1;
+				if (end - start + 1 < LONG_ENTRANCE) {
+					int mid = (start + end) / 2;
+					cells[n++] = (x + mid * dx) + (y + mid * dy) * width;
+				} else {
+					cells[n++] = (x + start * dx) + (y + start * dy) * width;
+					cells[n++] = (x + end * dx) + (y + end * dy) * width;
+				}
+				start = -1;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Costes entre cada par de nodos de un cluster, con un recorrido en anchura desde cada uno sin
+	 * salir del cluster.
+	 */
+	private void computeCosts(int cluster) {
+		int[] cells = nodes[cluster];
+		int n = cells.length;
+		int[] cost = new int[n * n];
+		int[] dist = new int[clusterSize * clusterSize];
+		int[] queue = new int[clusterSize * clusterSize];
+		for (int i = 0; i < n; i++) {
+			localSearch(cluster, cells[i], dist, queue, null);
+			for (int j = 0; j < n; j++)
+				cost[i * n + j] = dist[local(cluster, cells[j])];
+		}
+		costs[cluster] = cost;
+	}
+
+	private void computeOffsets() {
+		offsets = new int[nodes.length + 1];
+		for (int c = 0; c < nodes.length; c++)
+			offsets[c + 1] = offsets[c] + nodes[c].length;
+		nodeCount = offsets[nodes.length];
+	}
+
+	/**
+	 * Busca un camino con HPA*: A* sobre los nodos, con el origen y el destino unidos a los nodos de su
+	 * cluster, y después cada tramo se refina dentro de su cluster. El camino no siempre es el más corto
+	 * (pasa por los nodos de las entradas), pero casi, y si existe alguno lo encuentra.
+	 * @param sx, sy 	Origen.
+	 * @param gx, gy 	Destino.
+	 * @return Movimientos del camino (ESTE, SUR, OESTE o NORTE, como en DroneLogic), vacío si el origen es
+	 * 		   el destino, o null si no hay camino.
+	 */
+	public int[] findPath(int sx, int sy, int gx, int gy) {
+		if (!isFree(sx, sy) || !isFree(gx, gy))
+			return null;
+		int start = sx + sy * width, goal = gx + gy * width;
+		if (start == goal)
+			return new int[0];
+		int cs = clusterOf(sx, sy), cg = clusterOf(gx, gy);
+		int[] dist = new int[clusterSize * clusterSize];
+		int[] queue = new int[clusterSize * clusterSize];
+
+		// Nodos del A*: los del grafo, el origen (nodeCount) y el destino (nodeCount + 1)
+		int source = nodeCount, target = nodeCount + 1;
+		localSearch(cs, start, dist, queue, null);
+		int[] fromStart = new int[nodes[cs].length];
+		for (int i = 0; i < fromStart.length; i++)
+			fromStart[i] = dist[local(cs, nodes[cs][i])];
+		int direct = (cs == cg) ? dist[local(cs, goal)] : INF;
+		localSearch(cg, goal, dist, queue, null);
+		int[] toGoal = new int[nodes[cg].length];
+		for (int i = 0; i < toGoal.length; i++)
+			toGoal[i] = dist[local(cg, nodes[cg][i])];
+
+		int[] g = new int[nodeCount + 2];
+		int[] parent = new int[nodeCount + 2];
+		boolean[] closed = new boolean[nodeCount + 2];
+		Arrays.fill(g, INF);
+		OpenList open = new OpenList();
+		g[source] = 0;
+		parent[source] = -1;
+		open.push(heuristic(start, goal), source);
+
+		while (!open.isEmpty()) {
+			int u = open.pop();
+			if (closed[u])
+				continue;
+			closed[u] = true;
+			if (u == target)
+				break;
+			if (u == source) {
+				for (int i = 0; i < fromStart.length; i++)
+					relax(open, g, parent, u, offsets[cs] + i, fromStart[i], goal);
+				relax(open, g, parent, u, target, direct, goal);
+				continue;
+			}
+			int cluster = clusterOfNode(u), i = u - offsets[cluster];
+			int n = nodes[cluster].length;
+			for (int j = 0; j < n; j++)
+				if (j != i)
+					relax(open, g, parent, u, offsets[cluster] + j, costs[cluster][i * n + j], goal);
+			if (cluster == cg)
+				relax(open, g, parent, u, target, toGoal[i], goal);
+			// Aristas entre clusters: nodos vecinos al otro lado de un borde
+			int cell = nodes[cluster][i], x = cell % width, y = cell / width;
+			for (int move = 0; move < 4; move++) {
+				int nx = x + MOVE_X[move], ny = y + MOVE_Y[move];
+				int other = nodeAt(nx, ny);
+				if (other >= 0 && clusterOfNode(other) != cluster)
+					relax(open, g, parent, u, other, 1, goal);
+			}
+		}
+		if (g[target] >= INF)
+			return null;
+
+		// Camino abstracto, del destino hacia atrás
+		int steps = 0;
+		for (int u = parent[target]; u != -1; u = parent[u])
+			steps++;
+		int[] abstractPath = new int[steps + 1];
+		for (int u = target, k = steps; u != -1; u = parent[u], k--)
+			abstractPath[k] = u;
+
+		int[] moves = new int[g[target]];
+		int length = 0;
+		for (int k = 0; k + 1 < abstractPath.length; k++) {
+			int a = cellOfNode(abstractPath[k], start, goal), b = cellOfNode(abstractPath[k + 1], start, goal);
+			int ca = clusterOf(a % width, a / width), cb = clusterOf(b % width, b / width);
+			if (ca != cb) {
+				moves[length++] = moveBetween(a, b);
+			} else {
+				// Se busca desde el final del tramo para reconstruirlo hacia delante con los padres
+				int[] parents = new int[clusterSize * clusterSize];
+				localSearch(ca, b, dist, queue, parents);
+				for (int cell = a; cell != b; ) {
+					int next = parents[local(ca, cell)];
+					moves[length++] = moveBetween(cell, next);
+					cell = next;
+				}
+			}
+		}
+		return (length == moves.length) ? moves : Arrays.copyOf(moves, length);
+	}
+
+	private void relax(OpenList open, int[] g, int[] parent, int u, int v, int cost, int goal) {
+		if (cost >= INF || g[u] + cost >= g[v])
+			return;
+		g[v] = g[u] + cost;
+		parent[v] = u;
+		int cell = (v == nodeCount + 1) ? goal : cellOfNode(v, -1, goal);
+		open.push(g[v] + heuristic(cell, goal), v);
+	}
+
+	private int heuristic(int cell, int goal) {
+		return Math.abs(cell % width - goal % width) + Math.abs(cell / width - goal / width);
+	}
+
+	/**
+	 * Recorrido en anchura dentro de un cluster desde una celda.
+	 * @param dist 		Distancias, por posición dentro del cluster (INF si no se llega).
+	 * @param parents 	Si no es null, la celda siguiente hacia el origen de cada celda alcanzada.
+	 */
+	private void localSearch(int cluster, int from, int[] dist, int[] queue, int[] parents) {
+		int cx = cluster % clustersX, cy = cluster / clustersX;
+		int left = cx * clusterSize, top = cy * clusterSize;
+		int right = Math.min(left + clusterSize, width) - 1, bottom = Math.min(top + clusterSize, heigh) - 1;
+		Arrays.fill(dist, INF);
+		int head = 0, tail = 0;
+		dist[local(cluster, from)] = 0;
+		queue[tail++] = from;
+		while (head < tail) {
+			int cell = queue[head++];
+			int x = cell % width, y = cell / width;
+			for (int move = 0; move < 4; move++) {
+				int nx = x + MOVE_X[move], ny = y + MOVE_Y[move];
+				if (nx < left || ny < top || nx > right || ny > bottom || !isFree(nx, ny))
+					continue;
+				int next = nx + ny * width, l = local(cluster, next);
+				if (dist[l] == INF) {
+					dist[l] = dist[local(cluster, cell)] + 1;
+					if (parents != null)
+						parents[l] = cell;
+					queue[tail++] = next;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Posición de una celda dentro de su cluster.
+	 */
+	private int local(int cluster, int cell) {
+		int cx = cluster % clustersX, cy = cluster / clustersX;
+		return (cell % width - cx * clusterSize) + (cell / width - cy * clusterSize) * clusterSize;
+	}
+
+	private int clusterOf(int x, int y) {
+		return x / clusterSize + (y / clusterSize) * clustersX;
+	}
+
+	/**
+	 * Cluster de un nodo del A* por su identificador global (búsqueda binaria en offsets).
+	 */
+	private int clusterOfNode(int id) {
+		int lo = 0, hi = nodes.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (offsets[mid] <= id)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		return lo;
+	}
+
+	private int cellOfNode(int id, int start, int goal) {
+		if (id == nodeCount)
+			return start;
+		if (id == nodeCount + 1)
+			return goal;
+		int cluster = clusterOfNode(id);
+		return nodes[cluster][id - offsets[cluster]];
+	}
+
+	/**
+	 * Identificador global del nodo de una celda, o -1 si no es un nodo.
+	 */
+	private int nodeAt(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= heigh)
+			return -1;
+		int cluster = clusterOf(x, y);
+		int i = Arrays.binarySearch(nodes[cluster], x + y * width);
+		return (i >= 0) ? offsets[cluster] + i : -1;
+	}
+
+	private int moveBetween(int from, int to) {
+		int dx = to % width - from % width, dy = to / width - from / width;
+		for (int move = 0; move < 4; move++)
+			if (MOVE_X[move] == dx && MOVE_Y[move] == dy)
+				return move;
+		throw new IllegalStateException("Celdas no vecinas: " + from + ", " + to);
+	}
+
+	private boolean isFree(int x, int y) {
+		return x >= 0 && y >= 0 && x < width && y < heigh && map.getValue(x, y) != Map.OBSTACULO;
+	}
+
+	public int getClusterSize() {
+		return clusterSize;
+	}
+
+	/**
+	 * @return Número de nodos del grafo abstracto.
+	 */
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * Compara dos abstracciones del mismo mapa: mismos nodos y mismos costes.
+	 * @param other Otra abstracción.
+	 * @return true si son iguales.
+	 */
+	public boolean sameAs(ClusterGraph other) {
+		if (other.width != width || other.heigh != heigh || other.clusterSize != clusterSize)
+			return false;
+		for (int c = 0; c < nodes.length; c++)
+			if (!Arrays.equals(nodes[c], other.nodes[c]) || !Arrays.equals(costs[c], other.costs[c]))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Lista abierta del A*: montículo binario de (f, nodo) en longs, con las entradas viejas de un nodo
+	 * descartadas al sacarlas (ver closed).
+	 */
+	private static class OpenList {
+		private long[] heap = new long[64];
+		private int size = 0;
+
+		void push(int f, int node) {
+			if (size == heap.length)
+				heap = Arrays.copyOf(heap, size * 2);
+			long entry = ((long) f << 32) | node;
+			int i = size++;
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (heap[parent] <= entry)
+					break;
+				heap[i] = heap[parent];
+				i = parent;
+			}
+			heap[i] = entry;
+		}
+
+		int pop() {
+			int node = (int) heap[0];
+			long last = heap[--size];
+			int i = 0;
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= size)
+					break;
+				if (child + 1 < size && heap[child + 1] < heap[child])
+					child++;
+				if (heap[child] >= last)
+					break;
+				heap[i] = heap[child];
+				i = child;
+			}
+			heap[i] = last;
+			return node;
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package practica.util;
+
+import java.util.BitSet;
+
+/**
+ * Campo de distancias hasta el objetivo: para cada celda, el número de movimientos (a 4 vecinos y sin
+ * pasar por obstáculos) hasta la celda OBJETIVO más cercana. Se calcula una vez con un recorrido en
+ * anchura que sale a la vez de todas las celdas OBJETIVO, y después cada consulta es O(1). Sólo se
+ * lee, así que un mismo campo sirve a todos los drones del mapa.
+ *
+ * Ocupa un int por celda.
+ */
+public class GoalDistanceField {
+	/** Distancia de una celda desde la que no se llega a ningún objetivo. */
+	public static final int UNREACHABLE = -1;
+	/** Movimiento cuando no hay ninguno mejor (celda objetivo o sin camino), como DroneLogic.END. */
+	public static final int NO_MOVE = -1;
+	// Desplazamiento de cada movimiento, en el orden de DroneLogic (ESTE, SUR, OESTE, NORTE)
+	private static final int[] MOVE_X = {1, 0, -1, 0}, MOVE_Y = {0, 1, 0, -1};
+
+	private final int width, heigh;
+	private final int[] distance;
+
+	private GoalDistanceField(int width, int heigh, int[] distance) {
+		this.width = width;
+		this.heigh = heigh;
+		this.distance = distance;
+	}
+
+	/**
+	 * Recorre el mapa en anchura desde todas las celdas OBJETIVO.
+	 * @param map Mapa original.
+	 * @return El campo.
+	 */
+	public static GoalDistanceField build(Map map) {
+		int width = map.getWidth(), heigh = map.getHeigh();
+		int cells = width * heigh;
+		int[] distance = new int[cells];
+		int[] queue = new int[cells];
+		BitSet open = new BitSet(cells);
+		int head = 0, tail = 0;
+
+		// Una pasada por filas: qué celdas se pueden pisar y cuáles son el origen
+		int[] row = new int[width];
+		for (int y = 0; y < heigh; y++) {
+			map.getRow(y, row);
+			for (int x = 0; x < width; x++) {
+				int i = x + y * width;
+				if (row[x] == Map.OBJETIVO) {
+					distance[i] = 0;
+					queue[tail++] = i;
+				} else {
+					distance[i] = UNREACHABLE;
+					if (row[x] != Map.OBSTACULO)
+						open.set(i);
+				}
+			}
+		}
+
+		while (head < tail) {
+			int i = queue[head++];
+			int x = i % width, y = i / width;
+			for (int move = 0; move < 4; move++) {
+				int nx = x + MOVE_X[move], ny = y + MOVE_Y[move];
+				if (nx < 0 || ny < 0 || nx >= width || ny >= heigh)
+					continue;
+				int next = nx + ny * width;
+				if (open.get(next) && distance[next] == UNREACHABLE) {
+					distance[next] = distance[i] + 1;
+					queue[tail++] = next;
+				}
+			}
+		}
+		return new GoalDistanceField(width, heigh, distance);
+	}
+
+	/**
+	 * @param x Columna.
+	 * @param y Fila.
+	 * @return Movimientos hasta el objetivo más cercano, 0 en una celda objetivo o UNREACHABLE si no
+	 * 		   hay camino (también fuera del mapa y en los obstáculos).
+	 */
+	public int getDistance(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= heigh)
+			return UNREACHABLE;
+		return distance[x + y * width];
+	}
+
+	/**
+	 * Mejor movimiento desde una celda: el primero (ESTE, SUR, OESTE, NORTE) que lleva a una celda una
+	 * unidad más cerca del objetivo.
+	 * @param x Columna.
+	 * @param y Fila.
+	 * @return El movimiento, o NO_MOVE en una celda objetivo o sin camino.
+	 */
+	public int getBestMove(int x, int y) {
+		int d = getDistance(x, y);
+		if (d <= 0)
+			return NO_MOVE;
+		for (int move = 0; move < 4; move++)
+			if (getDistance(x + MOVE_X[move], y + MOVE_Y[move]) == d - 1)
+				return move;
+		return NO_MOVE;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeigh() {
+		return heigh;
+	}
+}
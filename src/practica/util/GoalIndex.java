@@ -0,0 +1,253 @@
+package practica.util;
+
+import java.util.Arrays;
+
+/**
+ * Índice de las zonas objetivo de un mapa. Cada zona es una componente conexa (a 4 vecinos)
+ * de celdas OBJETIVO y se representa por su centro. Los centros se guardan en un árbol k-d
+ * para encontrar la zona más cercana a una posición en O(log n).
+ */
+public class GoalIndex {
+	private long cells[], sumX[], sumY[];
+	/** Centros de las zonas, reordenados como árbol k-d implícito (la mediana de cada rango es el nodo). */
+	private double treeX[], treeY[];
+	private int treeZone[];
+
+	/**
+	 * Constructor a partir de las zonas ya calculadas.
+	 * @param cells Número de celdas de cada zona.
+	 * @param sumX 	Suma de las coordenadas X de las celdas de cada zona.
+	 * @param sumY 	Suma de las coordenadas Y de las celdas de cada zona.
+	 */
+	public GoalIndex(long[] cells, long[] sumX, long[] sumY) {
+		this.cells = cells;
+		this.sumX = sumX;
+		this.sumY = sumY;
+
+		int n = cells.length;
+		treeX = new double[n];
+		treeY = new double[n];
+		treeZone = new int[n];
+		for (int i = 0; i < n; i++) {
+			treeX[i] = getX(i);
+			treeY[i] = getY(i);
+			treeZone[i] = i;
+		}
+		buildTree(0, n, true);
+	}
+
+	/**
+	 * Recorre el mapa por filas una sola vez y agrupa las celdas OBJETIVO en zonas conexas
+	 * con una union-find sobre la fila actual y la anterior.
+	 * @param map Mapa a indexar.
+	 * @return El índice.
+	 */
+	public static GoalIndex build(Map map) {
+		int width = map.getWidth();
+		int[] row = new int[width];
+		int[] prev = new int[width], cur = new int[width];
+		Arrays.fill(prev, -1);
+
+		int labels = 0;
+		int[] parent = new int[16];
+		long[] count = new long[16], sx = new long[16], sy = new long[16];
+
+		for (int y = 0; y < map.getHeigh(); y++) {
+			map.getRow(y, row);
+			for (int x = 0; x < width; x++) {
+				if (row[x] != Map.OBJETIVO) {
+					cur[x] = -1;
+					continue;
+				}
+				int left = (x > 0) ? cur[x - 1] : -1;
+				int up = prev[x];
+				int label;
+				if (left < 0 && up < 0) {
+					if (labels == parent.length) {
+						parent = Arrays.copyOf(parent, labels * 2);
+						count = Arrays.copyOf(count, labels * 2);
+						sx = Arrays.copyOf(sx, labels * 2);
+						sy = Arrays.copyOf(sy, labels * 2);
+					}
+					label = labels++;
+					parent[label] = label;
+				} else if (left >= 0 && up >= 0) {
+					label = find(parent, left);
+					int other = find(parent, up);
+					if (label != other) {
+						// Se unen dos zonas: la pequeña pasa a la grande con sus sumas
+						if (count[label] < count[other]) {
+							int t = label; label = other; other = t;
+						}
+						parent[other] = label;
+						count[label] += count[other];
+						sx[label] += sx[other];
+						sy[label] += sy[other];
+					}
+				} else {
+					label = find(parent, (left >= 0) ? left : up);
+				}
+				cur[x] = label;
+				count[label]++;
+				sx[label] += x;
+				sy[label] += y;
+			}
+			int[] t = prev; prev = cur; cur = t;
+		}
+
+		int zones = 0;
+		for (int i = 0; i < labels; i++)
+			if (parent[i] == i)
+				zones++;
+		long[] cells = new long[zones], sumX = new long[zones], sumY = new long[zones];
+		for (int i = 0, z = 0; i < labels; i++)
+			if (parent[i] == i) {
+				cells[z] = count[i];
+				sumX[z] = sx[i];
+				sumY[z] = sy[i];
+				z++;
+			}
+		return new GoalIndex(cells, sumX, sumY);
+	}
+
+	private static int find(int[] parent, int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	/**
+	 * Ordena [from, to) para que la mediana según el eje quede en medio y repite en cada mitad con el otro eje.
+	 */
+	private void buildTree(int from, int to, boolean byX) {
+		if (to - from <= 1)
+			return;
+		int mid = (from + to) >>> 1;
+		select(from, to - 1, mid, byX);
+		buildTree(from, mid, !byX);
+		buildTree(mid + 1, to, !byX);
+	}
+
+	/**
+	 * Quickselect: deja en k el elemento que le correspondería si [lo, hi] estuviera ordenado.
+	 */
+	private void select(int lo, int hi, int k, boolean byX) {
+		double[] key = byX ? treeX : treeY;
+		while (lo < hi) {
+			double pivot = key[(lo + hi) >>> 1];
+			int i = lo, j = hi;
+			while (i <= j) {
+				while (key[i] < pivot) i++;
+				while (key[j] > pivot) j--;
+				if (i <= j) {
+					swap(i, j);
+					i++;
+					j--;
+				}
+			}
+			if (k <= j)
+				hi = j;
+			else if (k >= i)
+				lo = i;
+			else
+				return;
+		}
+	}
+
+	private void swap(int i, int j) {
+		double t = treeX[i]; treeX[i] = treeX[j]; treeX[j] = t;
+		t = treeY[i]; treeY[i] = treeY[j]; treeY[j] = t;
+		int z = treeZone[i]; treeZone[i] = treeZone[j]; treeZone[j] = z;
+	}
+
+	/**
+	 * Zona cuyo centro está más cerca de (x, y).
+	 * @param x Columna.
+	 * @param y Fila.
+	 * @return Índice de la zona, o -1 si el mapa no tiene objetivo.
+	 */
+	public int nearest(double x, double y) {
+		return nearest(x, y, new double[2]);
+	}
+
+	/**
+	 * Como nearest(x, y), pero sin reservar memoria: el índice es compartido entre hilos, así que
+	 * cada llamante pasa su propio array de trabajo.
+	 * @param x 	Columna.
+	 * @param y 	Fila.
+	 * @param best 	Array de trabajo de al menos 2 posiciones.
+	 * @return Índice de la zona, o -1 si el mapa no tiene objetivo.
+	 */
+	public int nearest(double x, double y, double[] best) {
+		if (cells.length == 0)
+			return -1;
+		best[0] = Double.POSITIVE_INFINITY;
+		best[1] = -1;
+		nearest(0, cells.length, true, x, y, best);
+		return (int) best[1];
+	}
+
+	private void nearest(int from, int to, boolean byX, double x, double y, double[] best) {
+		if (from >= to)
+			return;
+		int mid = (from + to) >>> 1;
+		double dx = treeX[mid] - x, dy = treeY[mid] - y;
+		double d = dx * dx + dy * dy;
+		// En caso de empate gana la zona de menor índice, para que el resultado no dependa del árbol
+		if (d < best[0] || (d == best[0] && treeZone[mid] < best[1])) {
+			best[0] = d;
+			best[1] = treeZone[mid];
+		}
+		double diff = byX ? -dx : -dy;
+		if (diff < 0) {
+			nearest(from, mid, !byX, x, y, best);
+			if (diff * diff <= best[0])
+				nearest(mid + 1, to, !byX, x, y, best);
+		} else {
+			nearest(mid + 1, to, !byX, x, y, best);
+			if (diff * diff <= best[0])
+				nearest(from, mid, !byX, x, y, best);
+		}
+	}
+
+	/**
+	 * @return Número de zonas objetivo.
+	 */
+	public int size() {
+		return cells.length;
+	}
+
+	/**
+	 * @param zone Índice de la zona.
+	 * @return Coordenada X del centro de la zona.
+	 */
+	public double getX(int zone) {
+		return sumX[zone] / (double) cells[zone];
+	}
+
+	/**
+	 * @param zone Índice de la zona.
+	 * @return Coordenada Y del centro de la zona.
+	 */
+	public double getY(int zone) {
+		return sumY[zone] / (double) cells[zone];
+	}
+
+	/**
+	 * @param zone Índice de la zona.
+	 * @return Número de celdas de la zona.
+	 */
+	public long getCells(int zone) {
+		return cells[zone];
+	}
+
+	long getSumX(int zone) {
+		return sumX[zone];
+	}
+
+	long getSumY(int zone) {
+		return sumY[zone];
+	}
+}
@@ -1,22 +1,202 @@
 package practica.util;
 
-import java.awt.Graphics;
 import java.awt.Image;
-import java.awt.Toolkit;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import javax.imageio.ImageIO;
-import javax.swing.ImageIcon;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
 /**
  * Clase que convierte imágenes en mapas y viceversa. También tiene algunas utilidades para tratamiento de imágenes.
+ * Las conversiones trabajan por filas sobre el array de píxeles de la imagen y reparten las filas entre los
+ * hilos de un ForkJoinPool.
  * @author Dani
  * @author Jonay
  */ 
 
 public abstract class ImgMapConverter {
+	// Colores de las imágenes de prácticas
+	private static final int RGB_LIBRE = -1;
+	private static final int RGB_OBSTACULO = -16777216;
+	private static final int RGB_OBJETIVO = -1237980;
+	private static final int RGB_VISITADO = -800000;
+
+	/** Color de cada valor del mapa, indexado por el valor. */
+	private static final int[] VALUE_TO_RGB = new int[4];
+	/** Tabla hash abierta color -> valor. */
+	private static final int RGB_TABLE_SIZE = 16;
+	private static final int[] RGB_KEYS = new int[RGB_TABLE_SIZE];
+	private static final int[] RGB_VALUES = new int[RGB_TABLE_SIZE];
+	private static final boolean[] RGB_USED = new boolean[RGB_TABLE_SIZE];
+
+	/**
+	 * Filas mínimas que procesa cada tarea. Los cortes entre tareas caen siempre en múltiplos de este
+	 * valor para que dos hilos nunca escriban en el mismo long de PackedStorage ni en la misma
+	 * baldosa de TiledStorage.
+	 */
+	private static final int ROW_BLOCK = 64;
+	private static final ForkJoinPool POOL = new ForkJoinPool();
+	/** Píxeles por franja al leer por regiones las imágenes que no se pueden decodificar fila a fila. */
+	private static final int STRIP_PIXELS = 1 << 22;
+
+	static {
+		addColor(RGB_LIBRE, Map.LIBRE);
+		addColor(RGB_OBSTACULO, Map.OBSTACULO);
+		addColor(RGB_OBJETIVO, Map.OBJETIVO);
+		addColor(RGB_VISITADO, Map.VISITADO);
+	}
+
+	private static void addColor(int rgb, int value) {
+		VALUE_TO_RGB[value] = rgb;
+		int i = hash(rgb);
+		while (RGB_USED[i])
+			i = (i + 1) & (RGB_TABLE_SIZE - 1);
+		RGB_USED[i] = true;
+		RGB_KEYS[i] = rgb;
+		RGB_VALUES[i] = value;
+	}
+
+	private static int hash(int rgb) {
+		return ((rgb ^ (rgb >>> 16)) * 0x45d9f3b) >>> 28;
+	}
+
+	/**
+	 * Traduce un color ARGB al valor del mapa.
+	 * @param rgb Color del píxel.
+	 * @return Valor de la celda, o -1 si el color no es ninguno de los de prácticas.
+	 */
+	private static int rgbToValue(int rgb) {
+		int i = hash(rgb);
+		while (RGB_USED[i]) {
+			if (RGB_KEYS[i] == rgb)
+				return RGB_VALUES[i];
+			i = (i + 1) & (RGB_TABLE_SIZE - 1);
+		}
+		return -1; //Por si acaso.
+	}
+
+	/**
+	 * Traduce un valor del mapa a su color ARGB.
+	 * @param value Valor de la celda.
+	 * @return Color del píxel (blanco si el valor no es conocido).
+	 */
+	static int valueToRgb(int value) {
+		if (value < 0 || value >= VALUE_TO_RGB.length)
+			return RGB_LIBRE; //Por si acaso.
+		return VALUE_TO_RGB[value];
+	}
+
+	/**
+	 * Tarea que convierte un rango de filas entre la imagen y el mapa, en un sentido u otro.
+	 * Si el rango es grande lo parte en dos por un múltiplo de ROW_BLOCK.
+	 */
+	private static class RowsTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final BufferedImage bf;
+		private final Map map;
+		private final boolean toMap;
+		private final int from, to;
+
+		RowsTask(BufferedImage bf, Map map, boolean toMap, int from, int to) {
+			this.bf = bf;
+			this.map = map;
+			this.toMap = toMap;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= ROW_BLOCK) {
+				if (toMap)
+					imageRowsToMap(bf, map, from, to);
+				else
+					mapRowsToImage(map, bf, from, to);
+			} else {
+				int mid = from + ((to - from) / 2 / ROW_BLOCK) * ROW_BLOCK;
+				if (mid == from)
+					mid += ROW_BLOCK;
+				invokeAll(new RowsTask(bf, map, toMap, from, mid), new RowsTask(bf, map, toMap, mid, to));
+			}
+		}
+	}
+
+	/**
+	 * Devuelve el array de píxeles de la imagen si es de enteros RGB/ARGB empaquetados, para leerlo
+	 * o escribirlo directamente. Si no lo es devuelve null.
+	 * @param bf Imagen.
+	 * @return Array de píxeles o null.
+	 */
+	private static int[] intPixels(BufferedImage bf) {
+		int type = bf.getType();
+		if ((type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB)
+				&& bf.getRaster().getDataBuffer() instanceof DataBufferInt
+				&& bf.getRaster().getParent() == null)
+			return ((DataBufferInt) bf.getRaster().getDataBuffer()).getData();
+		return null;
+	}
+
+	private static int scanlineStride(BufferedImage bf) {
+		return ((SinglePixelPackedSampleModel) bf.getSampleModel()).getScanlineStride();
+	}
+
+	/**
+	 * Traduce las filas [from, to) de la imagen al mapa.
+	 */
+	private static void imageRowsToMap(BufferedImage bf, Map map, int from, int to) {
+		int width = map.getWidth();
+		int[] pixels = intPixels(bf);
+		int stride = (pixels != null) ? scanlineStride(bf) : width;
+		// Las imágenes sin alfa no guardan el byte alto, que en ARGB opaco vale 0xFF
+		int alpha = (bf.getType() == BufferedImage.TYPE_INT_RGB) ? 0xFF000000 : 0;
+		int[] rgbRow = (pixels == null) ? new int[width] : null;
+		int[] row = new int[width];
+
+		for (int y = from; y < to; y++) {
+			int base;
+			int[] src;
+			if (pixels != null) {
+				src = pixels;
+				base = y * stride;
+			} else {
+				bf.getRGB(0, y, width, 1, rgbRow, 0, width);
+				src = rgbRow;
+				base = 0;
+			}
+			for (int x = 0; x < width; x++)
+				row[x] = cellValue(src[base + x] | alpha);
+			map.setRow(y, row);
+		}
+	}
+
+	/**
+	 * Pinta las filas [from, to) del mapa en la imagen, que es de tipo TYPE_INT_ARGB.
+	 */
+	private static void mapRowsToImage(Map map, BufferedImage bf, int from, int to) {
+		int width = map.getWidth();
+		int[] pixels = intPixels(bf);
+		int stride = scanlineStride(bf);
+		int[] row = new int[width];
+
+		for (int y = from; y < to; y++) {
+			map.getRow(y, row);
+			int base = y * stride;
+			for (int x = 0; x < width; x++)
+				pixels[base + x] = valueToRgb(row[x]);
+		}
+	}
 	
 	/**
 	 * @briefConvierte un objeto del tipo BufferedImage a uno del tipo Map traduciendo los valores RGB a los distintos tipos
@@ -25,79 +205,26 @@ public abstract class ImgMapConverter {
 	 * @param bf BufferedImage a convertir.
 	 * @return Objeto del tipo Map correspondiente a traducir los valores de bf a su correspondiente.
 	 */
-	
 	private static Map bufferedImageToMap (BufferedImage bf){
-		int valueRGB; //Para guardar valores RGB
-		int value; //Para insertar los valores "traducidos" en el mapa
-		
 		//Creo el mapa
 		Map map = new Map (bf.getHeight(), bf.getWidth());
 		
-		//Lo Relleno
-		for (int i = 0; i < map.getHeigh(); i++)
-			for (int j = 0; j < map.getWidth(); j++){
-				valueRGB = bf.getRGB(i, j);
-				
-				switch (valueRGB){
-					case -1 : value = Map.LIBRE; break;
-					case -16777216 : value = Map.OBSTACULO; break;
-					case -1237980 : value = Map.OBJETIVO; break;	
-					case -800000 : value = Map.VISITADO; break;
-					default : value = -1; break; //Por si acaso.
-				}
-				
-				map.setvalue(i, j, value);
-			}
+		//Lo relleno por bloques de filas en paralelo
+		POOL.invoke(new RowsTask(bf, map, true, 0, map.getHeigh()));
 		return map;	
 	}
 	
 	/**
-	 * Convierte un objeto del tipo Image a uno del tipo BufferedImage, heredando algunas de sus propiedades importantes 
-	 * (ancho, alto, valores RGB de cada píxel...)
-	 * @author Dani
-	 * @param image La imagen a convertir.
-	 * @return Objeto del tipo BufferedImage para poder trabajar con él.
-	 */
-	private static BufferedImage imageToBufferedImage(Image image) {
-		//Hay que pasarla a ImageIcon para que tenga alto y ancho, si no no me lo coge el constructor de BufferedImage
-	    image = new ImageIcon(image).getImage();
-
-	    // Meto los valores de la imagen leída en un búffer de enteros RGB
-	    BufferedImage bufferedImage = new BufferedImage(image.getWidth(null), image.getHeight(null),  BufferedImage.TYPE_INT_ARGB);
-	    Graphics g = bufferedImage.createGraphics();
-	    g.drawImage(image, 0, 0, null);
-	    g.dispose();
-
-	    return bufferedImage;	 
-	}
-	
-	/**
-	 * Convierte el mapa de datos a un bÃºffer de imagen
+	 * Convierte el mapa de datos a un búffer de imagen
 	 * @author Jonay
 	 * @param map El mapa de datos a convertir
 	 * @return Devuelve un BufferedImage con los datos del mapa ya traducidos e introducidos 
 	 */
 	private static BufferedImage mapToBufferedImage(Map map){
-		int valueRGB; // Para guardar valores "traducidos" a RGB
-		int value; // Para leer los valores del mapa
-		
 		BufferedImage bf = new BufferedImage(map.getWidth(), map.getHeigh(), BufferedImage.TYPE_INT_ARGB);
 
-		// Creo los colores de la imagen según los valores del mapa
-		for (int i = 0; i < map.getHeigh(); i++)
-			for (int j = 0; j < map.getWidth(); j++){
-				value = map.getValue(i, j);
-				
-				switch (value){
-					case Map.LIBRE: valueRGB = -1; break;
-					case Map.OBSTACULO : valueRGB = -16777216; break;
-					case Map.OBJETIVO : valueRGB = -1237980; break;
-					case Map.VISITADO : valueRGB = -800000; break; 
-					default : valueRGB = -1; break; //Por si acaso.
-				}
-				
-				bf.setRGB(i, j, valueRGB);
-			}
+		// Creo los colores de la imagen según los valores del mapa, escribiendo directamente en el raster
+		POOL.invoke(new RowsTask(bf, map, false, 0, map.getHeigh()));
 		return bf;	
 	}
 		
@@ -105,19 +232,154 @@ public abstract class ImgMapConverter {
 	 * Convierte una imagen con el formato de las imágenes de prácticas a un mapa.
 	 * @author Dani
 	 * @param path Localización de la imagen.
-	 * @return Objeto del tipo Map correspondiente a traducir cada píxel de la imagen a un valor determinado.
+	 * @return Objeto del tipo Map correspondiente a traducir cada píxel de la imagen a un valor determinado,
+	 * o null si no se ha podido leer la imagen.
 	 */
 	public static Map imgToMap (String path){
-		//Me creo objeto del tipo Image con el toolkit de java.
-		Image img = Toolkit.getDefaultToolkit().createImage(path);
-		//La convierto en BufferedImage
-		BufferedImage bf = imageToBufferedImage(img);
+		//Leo la imagen directamente a un BufferedImage, sin pasar por Toolkit ni redibujarla
+		BufferedImage bf;
+		try {
+			bf = ImageIO.read(new File(path));
+		} catch (IOException e) {
+			System.out.println("Error de lectura");
+			return null;
+		}
+		if (bf == null) {
+			System.out.println("Error de lectura");
+			return null;
+		}
 		//La convierto en Map
 		Map map = bufferedImageToMap (bf);
 		
 		return map;
 	}
 	
+	/**
+	 * Convierte una imagen en mapa sin cargarla entera en memoria: se decodifica fila a fila y cada fila
+	 * se escribe directamente en el mapa. El mapa se crea empaquetado (PackedStorage) si cabe holgadamente
+	 * en el heap y proyectado en un fichero temporal (MappedStorage) si no. Los colores desconocidos se
+	 * guardan como OBSTACULO, ya que estos almacenamientos sólo admiten los cuatro valores del mapa.
+	 * @param path Localización de la imagen.
+	 * @return El mapa, o null si no se ha podido leer la imagen.
+	 */
+	public static Map streamImgToMap (String path){
+		try {
+			ImageInputStream iis = ImageIO.createImageInputStream(new File(path));
+			if (iis == null)
+				throw new IOException("No se puede abrir " + path);
+			int width, heigh;
+			try {
+				ImageReader reader = getReader(iis);
+				width = reader.getWidth(0);
+				heigh = reader.getHeight(0);
+				reader.dispose();
+			} finally {
+				iis.close();
+			}
+
+			Map map;
+			long packedBytes = MappedStorage.bytes(heigh, width);
+			if (packedBytes < Runtime.getRuntime().maxMemory() / 4 && packedBytes / 8 < Integer.MAX_VALUE)
+				map = new Map(new PackedStorage(heigh, width));
+			else
+				map = new Map(MappedStorage.createTemp(heigh, width));
+
+			streamImgToMap(path, map);
+			return map;
+		} catch (IOException e) {
+			System.out.println("Error de lectura");
+			return null;
+		}
+	}
+
+	/**
+	 * Vuelca una imagen en un mapa ya creado (del tamaño de la imagen) fila a fila. Los PNG no entrelazados
+	 * se decodifican con PngRowDecoder, que sólo guarda dos filas; el resto de imágenes se leen con un
+	 * ImageReader por franjas de filas (setSourceRegion), así que la memoria queda acotada por el tamaño de la franja.
+	 * @param path Localización de la imagen.
+	 * @param map Mapa destino.
+	 * @throws IOException Si no se puede leer la imagen o no tiene el tamaño del mapa.
+	 */
+	public static void streamImgToMap (String path, Map map) throws IOException {
+		int width = map.getWidth();
+		int[] argb = new int[width];
+		int[] row = new int[width];
+
+		PngRowDecoder png = null;
+		try {
+			png = new PngRowDecoder(new BufferedInputStream(new FileInputStream(path), 1 << 16));
+		} catch (IOException e) {
+			// No es un PNG: se lee con ImageIO
+		}
+
+		if (png != null && png.isSupported()) {
+			try {
+				checkSize(png.getWidth(), png.getHeigh(), map);
+				for (int y = 0; y < map.getHeigh(); y++) {
+					png.readRow(argb);
+					for (int x = 0; x < width; x++)
+						row[x] = cellValue(argb[x]);
+					map.setRow(y, row);
+				}
+			} finally {
+				png.close();
+			}
+			return;
+		}
+		if (png != null)
+			png.close();
+
+		ImageInputStream iis = ImageIO.createImageInputStream(new File(path));
+		if (iis == null)
+			throw new IOException("No se puede abrir " + path);
+		try {
+			ImageReader reader = getReader(iis);
+			checkSize(reader.getWidth(0), reader.getHeight(0), map);
+			// Franjas de unos STRIP_PIXELS píxeles
+			int strip = Math.max(1, Math.min(map.getHeigh(), STRIP_PIXELS / width));
+			ImageReadParam param = reader.getDefaultReadParam();
+			for (int y0 = 0; y0 < map.getHeigh(); y0 += strip) {
+				int rows = Math.min(strip, map.getHeigh() - y0);
+				param.setSourceRegion(new Rectangle(0, y0, width, rows));
+				BufferedImage band = reader.read(0, param);
+				for (int y = 0; y < rows; y++) {
+					band.getRGB(0, y, width, 1, argb, 0, width);
+					for (int x = 0; x < width; x++)
+						row[x] = cellValue(argb[x]);
+					map.setRow(y0 + y, row);
+				}
+			}
+			reader.dispose();
+		} finally {
+			iis.close();
+		}
+	}
+
+	private static ImageReader getReader(ImageInputStream iis) throws IOException {
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+		if (!readers.hasNext())
+			throw new IOException("Formato de imagen desconocido");
+		ImageReader reader = readers.next();
+		reader.setInput(iis, true, true);
+		return reader;
+	}
+
+	private static void checkSize(int width, int heigh, Map map) throws IOException {
+		if (width != map.getWidth() || heigh != map.getHeigh())
+			throw new IOException("La imagen mide " + width + "x" + heigh + " y el mapa " + map.getWidth() + "x" + map.getHeigh());
+	}
+
+	/**
+	 * Valor de la celda de un píxel. Los colores que no son de prácticas cuentan como obstáculo, así
+	 * todos los valores caben en los mapas empaquetados y en el status.
+	 * @param argb Color del píxel.
+	 * @return Valor de la celda.
+	 */
+	private static int cellValue(int argb) {
+		int value = rgbToValue(argb);
+		return (value < 0) ? Map.OBSTACULO : value;
+	}
+	
 	/**
 	 * Crea una imagen a partir de un mapa de datos
 	 * @author Jonay
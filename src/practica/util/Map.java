@@ -6,7 +6,11 @@ package practica.util;
  */ 
 
 public class Map {
-	private int matrix[][];
+	private MapStorage storage;
+	// Se calculan la primera vez que se piden, quizá desde varios hilos a la vez (los del satélite)
+	private volatile GoalIndex goalIndex;
+	private volatile GoalDistanceField distanceField;
+	private volatile ClusterGraph clusterGraph;
 	private int heigh;
 	private int width;
 	public final static int LIBRE = 0;
@@ -21,31 +25,30 @@ public class Map {
 	 * @param width 	Anchura del mapa
 	 */
 	public Map(int heigh, int width) {
-		matrix = new int[heigh][width];
-		this.heigh = heigh;
-		this.width = width;
+		// Por defecto todo está libre (LIBRE es el 0 con el que se crea la matriz)
+		this(new MatrixStorage(heigh, width));
+	}
 
-		// Por defecto todo está libre
-		for (int i = 0; i < heigh; i++)
-			for (int j = 0; j < width; j++)
-				matrix[i][j] = LIBRE;
+	/**
+	 * Constructor con un almacenamiento concreto, por ejemplo PackedStorage para ocupar 2 bits por celda.
+	 * @param storage 	Almacenamiento de las celdas.
+	 */
+	public Map(MapStorage storage) {
+		this.storage = storage;
+		this.heigh = storage.getHeigh();
+		this.width = storage.getWidth();
 	}
 
 	/**
-	 * Constructor por copia.
+	 * Constructor por copia. La copia usa el mismo tipo de almacenamiento que el original.
 	 * @author Dani
 	 * @param map 	Mapa original a copiar.
 	 */
 	public Map(Map map) {
-		// Inicialización de componentes
-		matrix = new int[map.getHeigh()][map.getWidth()];
-		heigh = map.getHeigh();
-		width = map.getWidth();
-
-		// Copia de valores
-		for (int i = 0; i < heigh; i++)
-			for (int j = 0; j < width; j++)
-				matrix[i][j] = map.getValue(j, i);
+		this(map.storage.copy());
+		goalIndex = map.goalIndex;
+		distanceField = map.distanceField;
+		clusterGraph = map.clusterGraph;
 	}
 
 	/**
@@ -76,7 +79,7 @@ public class Map {
 		if (x < 0 || y < 0 || x >= this.getWidth() || y >= this.getHeigh()) {
 			return OBSTACULO;
 		} else {
-			return matrix[y][x];
+			return storage.get(x, y);
 		}
 	}
 
@@ -85,9 +88,119 @@ public class Map {
 	 * @param x 	Columna.
 	 * @param y 	Fila.
 	 * @param value Valor nuevo de la celda.
+	 * @throws IndexOutOfBoundsException Si la celda está fuera del mapa. Los almacenamientos empaquetados
+	 * 			no lo comprueban y una x fuera de rango caería en la fila siguiente.
 	 */
 	public void setvalue(int x, int y, int value) {
-		matrix[y][x] = value;
+		if (x < 0 || y < 0 || x >= width || y >= heigh)
+			throw new IndexOutOfBoundsException("Celda fuera del mapa: " + x + "," + y);
+		storage.set(x, y, value);
+	}
+
+	/**
+	 * Copia una fila entera del mapa. Más rápido que llamar a getValue celda a celda.
+	 * @param y 	Fila.
+	 * @param row 	Array destino, de al menos getWidth() posiciones.
+	 * @throws IndexOutOfBoundsException Si la fila está fuera del mapa.
+	 */
+	public void getRow(int y, int[] row) {
+		checkRow(y);
+		storage.getRow(y, row);
+	}
+
+	/**
+	 * Sobrescribe una fila entera del mapa.
+	 * @param y 	Fila.
+	 * @param row 	Valores nuevos, al menos getWidth() posiciones.
+	 * @throws IndexOutOfBoundsException Si la fila está fuera del mapa.
+	 */
+	public void setRow(int y, int[] row) {
+		checkRow(y);
+		storage.setRow(y, row);
+	}
+
+	private void checkRow(int y) {
+		if (y < 0 || y >= heigh)
+			throw new IndexOutOfBoundsException("Fila fuera del mapa: " + y);
+	}
+
+	/**
+	 * Getter del índice de zonas objetivo. Si el mapa se cargó de un .map viene ya calculado;
+	 * si no, se calcula la primera vez recorriendo el mapa. Las copias comparten el índice, así
+	 * que no se debe llamar después de cambiar celdas OBJETIVO. Se puede llamar desde varios hilos:
+	 * el índice se calcula una sola vez.
+	 * @return el índice de zonas objetivo.
+	 */
+	public GoalIndex getGoalIndex() {
+		GoalIndex result = goalIndex;
+		if (result == null) {
+			synchronized (this) {
+				result = goalIndex;
+				if (result == null)
+					goalIndex = result = GoalIndex.build(this);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Getter del campo de distancias hasta el objetivo. Se calcula la primera vez; como el índice de
+	 * zonas, las copias lo comparten y no se debe llamar después de cambiar celdas OBJETIVO u OBSTACULO.
+	 * Se puede llamar desde varios hilos.
+	 * @return el campo de distancias.
+	 */
+	public GoalDistanceField getDistanceField() {
+		GoalDistanceField result = distanceField;
+		if (result == null) {
+			synchronized (this) {
+				result = distanceField;
+				if (result == null)
+					distanceField = result = GoalDistanceField.build(this);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Getter de la abstracción para HPA*. Si no se ha cargado con ClusterGraph.forMapFile se construye la
+	 * primera vez, sin guardarla. Las copias la comparten; si cambian obstáculos hay que avisarla con
+	 * ClusterGraph.cellsChanged. Se puede llamar desde varios hilos.
+	 * @return la abstracción.
+	 */
+	public ClusterGraph getClusterGraph() {
+		ClusterGraph result = clusterGraph;
+		if (result == null) {
+			synchronized (this) {
+				result = clusterGraph;
+				if (result == null)
+					clusterGraph = result = ClusterGraph.build(this, ClusterGraph.DEFAULT_CLUSTER_SIZE);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Setter de la abstracción para HPA*, para la que se lee del fichero junto al mapa.
+	 * @param clusterGraph la abstracción.
+	 */
+	void setClusterGraph(ClusterGraph clusterGraph) {
+		this.clusterGraph = clusterGraph;
+	}
+
+	/**
+	 * Setter del índice de zonas objetivo, para los formatos que lo guardan ya calculado.
+	 * @param goalIndex el índice.
+	 */
+	void setGoalIndex(GoalIndex goalIndex) {
+		this.goalIndex = goalIndex;
+	}
+
+	/**
+	 * Getter del almacenamiento de las celdas.
+	 * @return el almacenamiento.
+	 */
+	public MapStorage getStorage() {
+		return storage;
 	}
 
 }
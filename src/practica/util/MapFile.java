@@ -0,0 +1,331 @@
+package practica.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Formato binario propio de los mapas (.map). Es mucho más rápido de cargar que un PNG
+ * porque las celdas ya están empaquetadas tal y como las guarda PackedStorage.
+ * 
+ * Formato (little endian):
+ * 	- Cabecera de HEADER_SIZE bytes: magic "DBAM", versión, anchura, altura, número de celdas
+ * 	  OBJETIVO, suma de sus coordenadas X e Y (para sacar el centro del objetivo sin recorrer el mapa)
+ * 	  y número de zonas objetivo.
+ * 	- Celdas: 2 bits por celda, 4 celdas por byte, recorridas por filas.
+ * 	- Zonas objetivo (desde la versión 2): número de celdas, suma de X y suma de Y de cada zona, como
+ * 	  longs. Con ellas se crea el GoalIndex del mapa sin recorrerlo.
+ */
+public abstract class MapFile {
+	/** Extensión de los mapas binarios. */
+	public static final String EXTENSION = ".map";
+	/** Tamaño de la cabecera. Las celdas empiezan en este byte. */
+	public static final int HEADER_SIZE = 64;
+	private static final int MAGIC = 0x4D414244; // "DBAM" en little endian
+	private static final int VERSION = 2;
+	/** A partir de este tamaño de celdas se proyecta el fichero en vez de leerlo. */
+	private static final long MAX_READ_BYTES = 256L << 20;
+	/** Tamaño de los bloques de E/S. */
+	private static final int IO_BLOCK = 1 << 20;
+
+	/**
+	 * Datos de la cabecera de un fichero de mapa.
+	 */
+	public static class Header {
+		private int width, heigh;
+		private int version;
+		private long goalCells, goalSumX, goalSumY;
+		private int goalZones;
+
+		public int getWidth() {
+			return width;
+		}
+
+		public int getHeigh() {
+			return heigh;
+		}
+
+		/**
+		 * @return Número de celdas OBJETIVO del mapa.
+		 */
+		public long getGoalCells() {
+			return goalCells;
+		}
+
+		/**
+		 * @return Número de zonas objetivo guardadas en el fichero (0 en ficheros de la versión 1).
+		 */
+		public int getGoalZones() {
+			return goalZones;
+		}
+
+		/**
+		 * @return Coordenada X media de las celdas OBJETIVO.
+		 */
+		public double getGoalX() {
+			return goalSumX / (double) goalCells;
+		}
+
+		/**
+		 * @return Coordenada Y media de las celdas OBJETIVO.
+		 */
+		public double getGoalY() {
+			return goalSumY / (double) goalCells;
+		}
+	}
+
+	/**
+	 * Indica si un fichero es un mapa binario mirando su extensión.
+	 * @param path Ruta del fichero.
+	 * @return true si es un .map.
+	 */
+	public static boolean isMapFile(String path) {
+		return path.toLowerCase().endsWith(EXTENSION);
+	}
+
+	/**
+	 * Carga un mapa en cualquiera de los dos formatos: binario (.map) o imagen.
+	 * @param path Ruta del fichero.
+	 * @return El mapa, o null si no se ha podido leer.
+	 */
+	public static Map load(String path) {
+		if (!isMapFile(path)) {
+			Map map = ImgMapConverter.imgToMap(path);
+			// El índice de objetivos se calcula ya, al cargar, en vez de en el satélite
+			if (map != null)
+				map.getGoalIndex();
+			return map;
+		}
+		try {
+			if (new File(path).length() - HEADER_SIZE > MAX_READ_BYTES)
+				return map(path);
+			return read(path);
+		} catch (IOException e) {
+			System.out.println("Error de lectura");
+			return null;
+		}
+	}
+
+	/**
+	 * Lee la cabecera de un mapa binario.
+	 * @param path Ruta del fichero.
+	 * @return La cabecera.
+	 * @throws IOException Si no se puede leer o no es un mapa binario.
+	 */
+	public static Header readHeader(String path) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+			return readHeader(file.getChannel());
+		}
+	}
+
+	private static Header readHeader(FileChannel channel) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining())
+			if (channel.read(buffer, buffer.position()) < 0)
+				throw new IOException("Cabecera incompleta");
+		buffer.flip();
+
+		if (buffer.getInt() != MAGIC)
+			throw new IOException("No es un mapa binario");
+		int version = buffer.getInt();
+		if (version < 1 || version > VERSION)
+			throw new IOException("Versión de mapa no soportada: " + version);
+
+		Header header = new Header();
+		header.version = version;
+		header.width = buffer.getInt();
+		header.heigh = buffer.getInt();
+		header.goalCells = buffer.getLong();
+		header.goalSumX = buffer.getLong();
+		header.goalSumY = buffer.getLong();
+		if (version >= 2)
+			header.goalZones = buffer.getInt();
+		return header;
+	}
+
+	/**
+	 * Lee las zonas objetivo que hay detrás de las celdas.
+	 * @return El índice, o null si el fichero no las trae.
+	 */
+	private static GoalIndex readGoalIndex(FileChannel channel, Header header) throws IOException {
+		if (header.version < 2)
+			return null;
+		int zones = header.goalZones;
+		ByteBuffer buffer = ByteBuffer.allocate(zones * 24).order(ByteOrder.LITTLE_ENDIAN);
+		long position = HEADER_SIZE + MappedStorage.bytes(header.heigh, header.width);
+		while (buffer.hasRemaining()) {
+			int n = channel.read(buffer, position);
+			if (n < 0)
+				throw new IOException("Faltan las zonas objetivo");
+			position += n;
+		}
+		buffer.flip();
+		long[] cells = new long[zones], sumX = new long[zones], sumY = new long[zones];
+		for (int i = 0; i < zones; i++) {
+			cells[i] = buffer.getLong();
+			sumX[i] = buffer.getLong();
+			sumY[i] = buffer.getLong();
+		}
+		return new GoalIndex(cells, sumX, sumY);
+	}
+
+	/**
+	 * Lee un mapa binario al heap. Las celdas se leen con el FileChannel directamente
+	 * sobre el long[] de un PackedStorage, sin traducir nada.
+	 * @param path Ruta del fichero.
+	 * @return El mapa.
+	 * @throws IOException Si no se puede leer.
+	 */
+	public static Map read(String path) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+			FileChannel channel = file.getChannel();
+			Header header = readHeader(channel);
+			PackedStorage storage = new PackedStorage(header.heigh, header.width);
+			long[] data = storage.getData();
+
+			long size = MappedStorage.bytes(header.heigh, header.width);
+			long position = HEADER_SIZE;
+			int word = 0;
+			ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BLOCK).order(ByteOrder.LITTLE_ENDIAN);
+			while (position < HEADER_SIZE + size) {
+				buffer.clear();
+				buffer.limit((int) Math.min(IO_BLOCK, HEADER_SIZE + size - position));
+				while (buffer.hasRemaining()) {
+					int n = channel.read(buffer, position);
+					if (n < 0)
+						throw new IOException("Mapa incompleto");
+					position += n;
+				}
+				buffer.flip();
+				LongBuffer longs = buffer.asLongBuffer();
+				int n = longs.remaining();
+				longs.get(data, word, n);
+				word += n;
+				// Último long incompleto
+				buffer.position(n * 8);
+				for (int shift = 0; buffer.hasRemaining(); shift += 8)
+					data[word] |= (buffer.get() & 0xFFL) << shift;
+			}
+			Map map = new Map(storage);
+			map.setGoalIndex(readGoalIndex(channel, header));
+			return map;
+		}
+	}
+
+	/**
+	 * Proyecta un mapa binario en memoria (sólo lectura). No se lee ninguna celda hasta que se usa,
+	 * así que vale para mapas más grandes que el heap. Las copias del mapa (Map(Map)) sí se pueden modificar.
+	 * @param path Ruta del fichero.
+	 * @return El mapa.
+	 * @throws IOException Si no se puede leer.
+	 */
+	public static Map map(String path) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(path, "r");
+		Header header = readHeader(file.getChannel());
+		Map map = new Map(new MappedStorage(file, HEADER_SIZE, header.heigh, header.width, true));
+		map.setGoalIndex(readGoalIndex(file.getChannel(), header));
+		return map;
+	}
+
+	/**
+	 * Guarda un mapa en formato binario.
+	 * @param path 	Ruta del fichero.
+	 * @param map 	Mapa a guardar. Sus celdas deben ser LIBRE, OBSTACULO, VISITADO u OBJETIVO.
+	 * @throws IOException Si no se puede escribir.
+	 */
+	public static void write(String path, Map map) throws IOException {
+		int width = map.getWidth(), heigh = map.getHeigh();
+		long goalCells = 0, goalSumX = 0, goalSumY = 0;
+
+		try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+			FileChannel channel = file.getChannel();
+			file.setLength(0);
+			channel.position(HEADER_SIZE);
+
+			// Las celdas se van empaquetando de 4 en 4 y volcando por bloques
+			ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BLOCK).order(ByteOrder.LITTLE_ENDIAN);
+			int[] row = new int[width];
+			int bits = 0, cells = 0;
+			for (int y = 0; y < heigh; y++) {
+				map.getRow(y, row);
+				for (int x = 0; x < width; x++) {
+					int value = row[x];
+					if (value < Map.LIBRE || value > Map.OBJETIVO)
+						throw new IOException("Valor de celda no válido en " + x + "," + y + ": " + value);
+					if (value == Map.OBJETIVO) {
+						goalCells++;
+						goalSumX += x;
+						goalSumY += y;
+					}
+					bits |= value << (cells << 1);
+					if (++cells == 4) {
+						buffer.put((byte) bits);
+						bits = cells = 0;
+						if (!buffer.hasRemaining())
+							flush(channel, buffer);
+					}
+				}
+			}
+			if (cells > 0)
+				buffer.put((byte) bits);
+			flush(channel, buffer);
+
+			// Zonas objetivo
+			GoalIndex goals = map.getGoalIndex();
+			for (int i = 0; i < goals.size(); i++) {
+				if (buffer.remaining() < 24)
+					flush(channel, buffer);
+				buffer.putLong(goals.getCells(i)).putLong(goals.getSumX(i)).putLong(goals.getSumY(i));
+			}
+			flush(channel, buffer);
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(heigh);
+			header.putLong(goalCells).putLong(goalSumX).putLong(goalSumY);
+			header.putInt(goals.size());
+			header.clear();
+			channel.write(header, 0);
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * Convierte mapas en imagen al formato binario. Cada imagen se guarda junto a la original
+	 * con la extensión .map. Sin argumentos convierte todas las imágenes de src/maps.
+	 * @param args Rutas de las imágenes a convertir.
+	 */
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			File[] files = new File("src/maps").listFiles();
+			args = new String[files.length];
+			for (int i = 0; i < files.length; i++)
+				args[i] = files[i].getPath();
+		}
+
+		for (String path : args) {
+			if (isMapFile(path))
+				continue;
+			// Se lee por filas para poder convertir imágenes más grandes que el heap
+			Map map = ImgMapConverter.streamImgToMap(path);
+			if (map == null)
+				continue;
+			String out = path.substring(0, path.lastIndexOf('.')) + EXTENSION;
+			try {
+				write(out, map);
+				System.out.println(path + " -> " + out);
+			} catch (IOException e) {
+				System.err.println("Error al convertir " + path + ": " + e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package practica.util;
+
+/**
+ * Recibe los cambios de un mapa de seguimiento según se hacen, para no tener que recorrerlo entero
+ * buscándolos (lo usa MapView). Se llama desde el hilo que escribe, que puede ser cualquiera y
+ * varios a la vez, así que no debe bloquearse ni hacer trabajo largo.
+ */
+public interface MapListener {
+
+	/**
+	 * Una celda ha cambiado. Su valor nuevo se lee del mapa.
+	 * @param x 	Columna.
+	 * @param y 	Fila.
+	 */
+	public void cellChanged(int x, int y);
+}
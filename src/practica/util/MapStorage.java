@@ -0,0 +1,56 @@
+package practica.util;
+
+/**
+ * Almacenamiento de las celdas de un Map. El Map se encarga de comprobar los límites,
+ * así que las implementaciones sólo reciben coordenadas válidas.
+ */
+public interface MapStorage {
+
+	/**
+	 * Getter de la altura.
+	 * @return Número de filas.
+	 */
+	public int getHeigh();
+
+	/**
+	 * Getter de la anchura.
+	 * @return Número de columnas.
+	 */
+	public int getWidth();
+
+	/**
+	 * Valor de una celda.
+	 * @param x 	Columna.
+	 * @param y 	Fila.
+	 * @return Valor de la celda.
+	 */
+	public int get(int x, int y);
+
+	/**
+	 * Cambia el valor de una celda.
+	 * @param x 	Columna.
+	 * @param y 	Fila.
+	 * @param value Valor nuevo.
+	 */
+	public void set(int x, int y, int value);
+
+	/**
+	 * Copia una fila entera en row.
+	 * @param y 	Fila.
+	 * @param row 	Array destino, de al menos getWidth() posiciones.
+	 */
+	public void getRow(int y, int[] row);
+
+	/**
+	 * Sobrescribe una fila entera con los valores de row.
+	 * @param y 	Fila.
+	 * @param row 	Array origen, de al menos getWidth() posiciones.
+	 */
+	public void setRow(int y, int[] row);
+
+	/**
+	 * Crea una copia independiente del mismo tipo.
+	 * @return La copia.
+	 */
+	public MapStorage copy();
+}
@@ -0,0 +1,127 @@
+package practica.util;
+
+import java.awt.Graphics;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Componente que pinta un mapa que otros hilos van cambiando (el de seguimiento del satélite). Guarda
+ * una imagen del mapa, un píxel por celda, que no se vuelve a crear y se escala al tamaño del componente
+ * al dibujarla. El mapa sólo se recorre entero al cambiar de mapa (setMap).
+ *
+ * Los hilos que escriben en el mapa avisan de cada celda con cellChanged, que la deja en una cola sin
+ * esperar a nada. En el hilo de Swing, como mucho cada 1000/MAX_FPS ms, se vacía la cola, se pasan a la
+ * imagen sólo esas celdas y se repinta el rectángulo que las contiene: el trabajo por fotograma depende
+ * de las celdas que han cambiado y no del tamaño del mapa.
+ */
+class MapView extends JComponent implements MapListener {
+	private static final long serialVersionUID = 1L;
+	/** Fotogramas por segundo como mucho. */
+	public static final int MAX_FPS = 30;
+
+	// Lo lee cellChanged desde otros hilos para no encolar nada sin mapa
+	private volatile Map map;
+	private BufferedImage buffer;
+	private int[] pixels;
+	// Celdas cambiadas que todavía no están en la imagen, como (long) y << 32 | x
+	private final ConcurrentLinkedQueue<Long> changed = new ConcurrentLinkedQueue<Long>();
+	private final Timer timer;
+
+	MapView() {
+		timer = new Timer(1000 / MAX_FPS, new FrameActionListener());
+		timer.setCoalesce(true);
+	}
+
+	/**
+	 * Cambia el mapa que se pinta, lo pasa entero a la imagen y empieza a refrescarlo. Se puede llamar
+	 * desde cualquier hilo.
+	 * @param map Mapa, o null para dejar de pintarlo.
+	 */
+	public void setMap(final Map map) {
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					setMap(map);
+				}
+			});
+			return;
+		}
+		this.map = map;
+		// Lo que se cambie a partir de aquí llega por la cola; lo de antes sale al pintarlo entero
+		changed.clear();
+		if (map == null) {
+			timer.stop();
+			buffer = null;
+			repaint();
+			return;
+		}
+		int width = map.getWidth(), heigh = map.getHeigh();
+		buffer = new BufferedImage(width, heigh, BufferedImage.TYPE_INT_ARGB);
+		pixels = ((DataBufferInt) buffer.getRaster().getDataBuffer()).getData();
+		int[] row = new int[width];
+		for (int y = 0; y < heigh; y++) {
+			map.getRow(y, row);
+			for (int x = 0; x < width; x++)
+				pixels[y * width + x] = ImgMapConverter.valueToRgb(row[x]);
+		}
+		repaint();
+		timer.start();
+	}
+
+	/**
+	 * Apunta una celda cambiada. No pinta nada: el cambio sale en el siguiente fotograma.
+	 * Se puede llamar desde cualquier hilo.
+	 */
+	@Override
+	public void cellChanged(int x, int y) {
+		if (map != null)
+			changed.offer(((long) y << 32) | x);
+	}
+
+	/**
+	 * Pasa a la imagen las celdas de la cola y repinta sólo el rectángulo que las contiene.
+	 */
+	private void refresh() {
+		int width = map.getWidth(), heigh = map.getHeigh();
+		int left = width, top = heigh, right = -1, bottom = -1;
+		Long cell;
+		while ((cell = changed.poll()) != null) {
+			int x = (int) cell.longValue(), y = (int) (cell.longValue() >>> 32);
+			pixels[y * width + x] = ImgMapConverter.valueToRgb(map.getValue(x, y));
+			left = Math.min(left, x);
+			right = Math.max(right, x);
+			top = Math.min(top, y);
+			bottom = Math.max(bottom, y);
+		}
+		if (right < 0)
+			return;
+		// Rectángulo de las celdas en coordenadas del componente, redondeando hacia fuera
+		double sx = (double) getWidth() / width, sy = (double) getHeight() / heigh;
+		int px = (int) Math.floor(left * sx), py = (int) Math.floor(top * sy);
+		repaint(px, py, (int) Math.ceil((right + 1) * sx) - px, (int) Math.ceil((bottom + 1) * sy) - py);
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		super.paintComponent(g);
+		if (buffer != null)
+			g.drawImage(buffer, 0, 0, getWidth(), getHeight(), null);
+	}
+
+	/**
+	 * Cada tick del temporizador: si hay celdas en la cola, un fotograma.
+	 */
+	private class FrameActionListener implements ActionListener {
+		public void actionPerformed(ActionEvent e) {
+			if (map != null && !changed.isEmpty())
+				refresh();
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package practica.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Almacenamiento fuera del heap: las celdas viven en un fichero proyectado en memoria
+ * con el mismo formato que PackedStorage (2 bits por celda, 4 celdas por byte, recorrido
+ * por filas). El sistema operativo carga las páginas según se van tocando, así que crear
+ * el mapa no recorre ninguna celda y el tamaño sólo está limitado por el disco.
+ */
+public class MappedStorage implements MapStorage {
+	/** Tamaño de cada trozo proyectado (un MappedByteBuffer no puede pasar de 2GB). */
+	private static final int CHUNK_BITS = 30;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private MappedByteBuffer chunks[];
+	private long offset;
+	private int heigh;
+	private int width;
+
+	/**
+	 * Crea (o abre) un fichero de mapa en modo lectura/escritura. Si el fichero es nuevo
+	 * todas las celdas valen LIBRE, ya que el fichero se rellena con ceros.
+	 * @param path 		Fichero donde se guardan las celdas.
+	 * @param heigh 	Altura del mapa
+	 * @param width 	Anchura del mapa
+	 * @throws IOException Si no se puede abrir o proyectar el fichero.
+	 */
+	public MappedStorage(File path, int heigh, int width) throws IOException {
+		this(new RandomAccessFile(path, "rw"), 0, heigh, width, false);
+	}
+
+	/**
+	 * Proyecta las celdas que hay en un fichero a partir de una posición dada. Lo usan los
+	 * formatos de fichero que tienen una cabecera delante de las celdas.
+	 * @param file 		Fichero ya abierto.
+	 * @param offset 	Byte donde empiezan las celdas.
+	 * @param heigh 	Altura del mapa
+	 * @param width 	Anchura del mapa
+	 * @param readOnly 	true para proyectar en sólo lectura (el fichero puede estar abierto en "r").
+	 * @throws IOException Si no se puede proyectar el fichero.
+	 */
+	public MappedStorage(RandomAccessFile file, long offset, int heigh, int width, boolean readOnly) throws IOException {
+		this.file = file;
+		this.channel = file.getChannel();
+		this.offset = offset;
+		this.heigh = heigh;
+		this.width = width;
+
+		long size = bytes(heigh, width);
+		if (!readOnly && file.length() < offset + size)
+			file.setLength(offset + size);
+
+		FileChannel.MapMode mode = readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+		int n = (int) ((size + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+		chunks = new MappedByteBuffer[n];
+		for (int i = 0; i < n; i++) {
+			long start = (long) i << CHUNK_BITS;
+			chunks[i] = channel.map(mode, offset + start, Math.min(CHUNK_SIZE, size - start));
+		}
+	}
+
+	/**
+	 * Crea un mapa vacío en un fichero temporal que se borra al salir.
+	 * @param heigh 	Altura del mapa
+	 * @param width 	Anchura del mapa
+	 * @return El almacenamiento.
+	 * @throws IOException Si no se puede crear el fichero.
+	 */
+	public static MappedStorage createTemp(int heigh, int width) throws IOException {
+		File tmp = File.createTempFile("map", ".cells");
+		tmp.deleteOnExit();
+		return new MappedStorage(tmp, heigh, width);
+	}
+
+	/**
+	 * Número de bytes que ocupan las celdas de un mapa de heigh x width.
+	 * @param heigh 	Altura del mapa
+	 * @param width 	Anchura del mapa
+	 * @return Número de bytes.
+	 */
+	public static long bytes(int heigh, int width) {
+		return ((long) heigh * width + 3) / 4;
+	}
+
+	@Override
+	public int getHeigh() {
+		return heigh;
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int get(int x, int y) {
+		long i = (long) y * width + x;
+		long b = i >>> 2;
+		int value = chunks[(int) (b >>> CHUNK_BITS)].get((int) (b & (CHUNK_SIZE - 1)));
+		return (value >>> ((int) (i & 3) << 1)) & 3;
+	}
+
+	@Override
+	public void set(int x, int y, int value) {
+		if (value < Map.LIBRE || value > Map.OBJETIVO)
+			throw new IllegalArgumentException("Valor de celda no válido: " + value);
+		long i = (long) y * width + x;
+		long b = i >>> 2;
+		MappedByteBuffer chunk = chunks[(int) (b >>> CHUNK_BITS)];
+		int pos = (int) (b & (CHUNK_SIZE - 1));
+		int shift = (int) (i & 3) << 1;
+		chunk.put(pos, (byte) ((chunk.get(pos) & ~(3 << shift)) | (value << shift)));
+	}
+
+	@Override
+	public void getRow(int y, int[] row) {
+		for (int x = 0; x < width; x++)
+			row[x] = get(x, y);
+	}
+
+	@Override
+	public void setRow(int y, int[] row) {
+		for (int x = 0; x < width; x++)
+			set(x, y, row[x]);
+	}
+
+	/**
+	 * Copia las celdas a un fichero temporal nuevo. La copia la hace el sistema operativo
+	 * entre ficheros, sin pasar las celdas por el heap.
+	 */
+	@Override
+	public MapStorage copy() {
+		try {
+			File tmp = File.createTempFile("map", ".cells");
+			tmp.deleteOnExit();
+			RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+			long size = bytes(heigh, width);
+			out.setLength(size);
+			force();
+			long done = 0;
+			while (done < size)
+				done += channel.transferTo(offset + done, size - done, out.getChannel());
+			return new MappedStorage(out, 0, heigh, width, false);
+		} catch (IOException e) {
+			throw new IllegalStateException("Error al copiar el mapa proyectado", e);
+		}
+	}
+
+	/**
+	 * Fuerza que los cambios se escriban en el fichero.
+	 */
+	public void force() {
+		for (MappedByteBuffer chunk : chunks)
+			if (!chunk.isReadOnly())
+				chunk.force();
+	}
+
+	/**
+	 * Cierra el fichero. Las proyecciones siguen siendo válidas hasta que se recolecten.
+	 * @throws IOException Si falla el cierre.
+	 */
+	public void close() throws IOException {
+		force();
+		file.close();
+	}
+}
@@ -0,0 +1,60 @@
+package practica.util;
+
+/**
+ * Almacenamiento clásico: un int por celda en una matriz de filas.
+ * Admite cualquier valor entero.
+ */
+public class MatrixStorage implements MapStorage {
+	private int matrix[][];
+	private int heigh;
+	private int width;
+
+	/**
+	 * Constructor. Todas las celdas empiezan a LIBRE.
+	 * @param heigh 	Altura del mapa
+	 * @param width 	Anchura del mapa
+	 */
+	public MatrixStorage(int heigh, int width) {
+		matrix = new int[heigh][width];
+		this.heigh = heigh;
+		this.width = width;
+	}
+
+	@Override
+	public int getHeigh() {
+		return heigh;
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int get(int x, int y) {
+		return matrix[y][x];
+	}
+
+	@Override
+	public void set(int x, int y, int value) {
+		matrix[y][x] = value;
+	}
+
+	@Override
+	public void getRow(int y, int[] row) {
+		System.arraycopy(matrix[y], 0, row, 0, width);
+	}
+
+	@Override
+	public void setRow(int y, int[] row) {
+		System.arraycopy(row, 0, matrix[y], 0, width);
+	}
+
+	@Override
+	public MapStorage copy() {
+		MatrixStorage copy = new MatrixStorage(heigh, width);
+		for (int i = 0; i < heigh; i++)
+			System.arraycopy(matrix[i], 0, copy.matrix[i], 0, width);
+		return copy;
+	}
+}
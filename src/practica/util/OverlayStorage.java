@@ -0,0 +1,143 @@
+package practica.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Almacenamiento de los cambios sobre otro que sólo se lee: una celda que no se ha escrito vale lo
+ * que valga en el de debajo. Los cambios van en baldosas de TiledStorage.TILE x TiledStorage.TILE
+ * celdas que se reservan al escribir la primera, así que un mapa de seguimiento sobre un mapa
+ * proyectado (MappedStorage) ocupa en proporción a las celdas recorridas, no se copia nada al crearlo
+ * y el mapa de debajo puede ser más grande que el heap.
+ *
+ * Cada celda ocupa 4 bits en su baldosa: 0 si no se ha escrito y el valor más 1 si se ha escrito.
+ * Como AtomicPackedStorage, cada escritura es un compareAndSet de su palabra y las baldosas se
+ * reservan también con compareAndSet, así que varios hilos pueden escribir a la vez sin cerrojos.
+ * getRow y setRow no son atómicos para la fila entera.
+ */
+public class OverlayStorage implements MapStorage {
+	private static final int TILE = TiledStorage.TILE;
+	private static final int TILE_BITS = 6;
+	private static final int CELLS_PER_WORD = 16;
+	private static final int WORDS_PER_TILE = TILE * TILE / CELLS_PER_WORD;
+	private static final long MASK = 15L;
+
+	private final MapStorage base;
+	private final AtomicReferenceArray<AtomicLongArray> tiles;
+	private final int tilesX;
+	private final int heigh;
+	private final int width;
+
+	/**
+	 * Constructor. Todas las celdas valen lo que en base.
+	 * @param base Almacenamiento de debajo. Sólo se lee y no debe cambiar mientras se use este.
+	 */
+	public OverlayStorage(MapStorage base) {
+		this.base = base;
+		this.heigh = base.getHeigh();
+		this.width = base.getWidth();
+		tilesX = (width + TILE - 1) >>> TILE_BITS;
+		int tilesY = (heigh + TILE - 1) >>> TILE_BITS;
+		long count = (long) tilesX * tilesY;
+		if (count > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Mapa demasiado grande: " + width + " x " + heigh);
+		tiles = new AtomicReferenceArray<AtomicLongArray>((int) count);
+	}
+
+	@Override
+	public int getHeigh() {
+		return heigh;
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Número de baldosas reservadas, para saber cuánta memoria se está usando.
+	 * @return Baldosas reservadas.
+	 */
+	public int getAllocatedTiles() {
+		int n = 0;
+		for (int t = 0; t < tiles.length(); t++)
+			if (tiles.get(t) != null)
+				n++;
+		return n;
+	}
+
+	@Override
+	public int get(int x, int y) {
+		AtomicLongArray tile = tiles.get((y >>> TILE_BITS) * tilesX + (x >>> TILE_BITS));
+		if (tile != null) {
+			int i = ((y & (TILE - 1)) << TILE_BITS) | (x & (TILE - 1));
+			int cell = (int) ((tile.get(i >>> 4) >>> ((i & 15) << 2)) & MASK);
+			if (cell != 0)
+				return cell - 1;
+		}
+		return base.get(x, y);
+	}
+
+	@Override
+	public void set(int x, int y, int value) {
+		if (value < Map.LIBRE || value > Map.OBJETIVO)
+			throw new IllegalArgumentException("Valor de celda no válido: " + value);
+		int t = (y >>> TILE_BITS) * tilesX + (x >>> TILE_BITS);
+		AtomicLongArray tile = tiles.get(t);
+		if (tile == null) {
+			tiles.compareAndSet(t, null, new AtomicLongArray(WORDS_PER_TILE));
+			tile = tiles.get(t);
+		}
+		int i = ((y & (TILE - 1)) << TILE_BITS) | (x & (TILE - 1));
+		int w = i >>> 4, shift = (i & 15) << 2;
+		long old, updated;
+		do {
+			old = tile.get(w);
+			updated = (old & ~(MASK << shift)) | ((long) (value + 1) << shift);
+		} while (old != updated && !tile.compareAndSet(w, old, updated));
+	}
+
+	@Override
+	public void getRow(int y, int[] row) {
+		base.getRow(y, row);
+		int first = (y >>> TILE_BITS) * tilesX;
+		int inTile = (y & (TILE - 1)) << TILE_BITS;
+		for (int tx = 0; tx < tilesX; tx++) {
+			AtomicLongArray tile = tiles.get(first + tx);
+			if (tile == null)
+				continue;
+			int x0 = tx << TILE_BITS;
+			int n = Math.min(TILE, width - x0);
+			for (int k = 0; k < n; k++) {
+				int i = inTile | k;
+				int cell = (int) ((tile.get(i >>> 4) >>> ((i & 15) << 2)) & MASK);
+				if (cell != 0)
+					row[x0 + k] = cell - 1;
+			}
+		}
+	}
+
+	@Override
+	public void setRow(int y, int[] row) {
+		for (int x = 0; x < width; x++)
+			set(x, y, row[x]);
+	}
+
+	/**
+	 * Copia los cambios; la copia comparte el almacenamiento de debajo.
+	 */
+	@Override
+	public MapStorage copy() {
+		OverlayStorage copy = new OverlayStorage(base);
+		for (int t = 0; t < tiles.length(); t++) {
+			AtomicLongArray tile = tiles.get(t);
+			if (tile != null) {
+				AtomicLongArray clone = new AtomicLongArray(WORDS_PER_TILE);
+				for (int w = 0; w < WORDS_PER_TILE; w++)
+					clone.set(w, tile.get(w));
+				copy.tiles.set(t, clone);
+			}
+		}
+		return copy;
+	}
+}
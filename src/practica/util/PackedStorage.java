@@ -0,0 +1,137 @@
+package practica.util;
+
+/**
+ * Almacenamiento compacto: 2 bits por celda en un único long[] recorrido por filas
+ * (la celda x,y es la y*width+x). Como sólo hay cuatro valores posibles (LIBRE, OBSTACULO,
+ * VISITADO y OBJETIVO) ocupa 1/16 de lo que ocupa MatrixStorage.
+ */
+public class PackedStorage implements MapStorage {
+	/** Celdas que caben en un long. */
+	public static final int CELLS_PER_WORD = 32;
+	private static final long MASK = 3L;
+
+	private long data[];
+	private int heigh;
+	private int width;
+
+	/**
+	 * Constructor. Todas las celdas empiezan a LIBRE (que vale 0).
+	 * @param heigh 	Altura del mapa
+	 * @param width 	Anchura del mapa
+	 */
+	public PackedStorage(int heigh, int width) {
+		this(heigh, width, new long[words(heigh, width)]);
+	}
+
+	/**
+	 * Constructor a partir de datos ya empaquetados. No se copian.
+	 * @param heigh 	Altura del mapa
+	 * @param width 	Anchura del mapa
+	 * @param data 		Celdas empaquetadas, al menos words(heigh, width) longs.
+	 */
+	public PackedStorage(int heigh, int width, long[] data) {
+		if (data.length < words(heigh, width))
+			throw new IllegalArgumentException("Datos insuficientes para un mapa de " + heigh + "x" + width);
+		this.data = data;
+		this.heigh = heigh;
+		this.width = width;
+	}
+
+	/**
+	 * Número de longs necesarios para un mapa de heigh x width celdas.
+	 * @param heigh 	Altura del mapa
+	 * @param width 	Anchura del mapa
+	 * @return Número de longs.
+	 */
+	public static int words(int heigh, int width) {
+		long cells = (long) heigh * width;
+		long words = (cells + CELLS_PER_WORD - 1) / CELLS_PER_WORD;
+		if (words > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Mapa demasiado grande: " + heigh + "x" + width);
+		return (int) words;
+	}
+
+	/**
+	 * Acceso directo a los datos empaquetados, para volcarlos o leerlos en bloque.
+	 * @return El array interno (no es una copia).
+	 */
+	public long[] getData() {
+		return data;
+	}
+
+	@Override
+	public int getHeigh() {
+		return heigh;
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int get(int x, int y) {
+		long i = (long) y * width + x;
+		return (int) ((data[(int) (i >>> 5)] >>> ((i & 31) << 1)) & MASK);
+	}
+
+	@Override
+	public void set(int x, int y, int value) {
+		checkValue(value);
+		long i = (long) y * width + x;
+		int w = (int) (i >>> 5);
+		int shift = (int) (i & 31) << 1;
+		data[w] = (data[w] & ~(MASK << shift)) | ((long) value << shift);
+	}
+
+	@Override
+	public void getRow(int y, int[] row) {
+		long i = (long) y * width;
+		int x = 0;
+		while (x < width) {
+			int offset = (int) (i & 31);
+			int n = Math.min(CELLS_PER_WORD - offset, width - x);
+			long word = data[(int) (i >>> 5)] >>> (offset << 1);
+			for (int k = 0; k < n; k++) {
+				row[x++] = (int) (word & MASK);
+				word >>>= 2;
+			}
+			i += n;
+		}
+	}
+
+	@Override
+	public void setRow(int y, int[] row) {
+		long i = (long) y * width;
+		int x = 0;
+		while (x < width) {
+			int offset = (int) (i & 31);
+			int n = Math.min(CELLS_PER_WORD - offset, width - x);
+			long bits = 0;
+			for (int k = n - 1; k >= 0; k--) {
+				checkValue(row[x + k]);
+				bits = (bits << 2) | row[x + k];
+			}
+			// Sólo se tocan los n*2 bits de esta fila dentro de la palabra
+			long mask = (n == CELLS_PER_WORD) ? -1L : ((1L << (n << 1)) - 1);
+			int w = (int) (i >>> 5);
+			data[w] = (data[w] & ~(mask << (offset << 1))) | (bits << (offset << 1));
+			x += n;
+			i += n;
+		}
+	}
+
+	@Override
+	public MapStorage copy() {
+		return new PackedStorage(heigh, width, data.clone());
+	}
+
+	/**
+	 * Comprueba que el valor cabe en 2 bits.
+	 * @param value Valor a guardar.
+	 */
+	private static void checkValue(int value) {
+		if (value < Map.LIBRE || value > Map.OBJETIVO)
+			throw new IllegalArgumentException("Valor de celda no válido: " + value);
+	}
+}
@@ -0,0 +1,303 @@
+package practica.util;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decodificador de PNG que va leyendo la imagen fila a fila, sin cargarla entera. Sólo
+ * guarda en memoria la fila actual y la anterior (la necesitan los filtros de PNG), así
+ * que sirve para imágenes de cualquier tamaño.
+ * 
+ * Admite PNG no entrelazados de cualquier tipo de color y profundidad. Los entrelazados
+ * (Adam7) no se pueden leer por filas; para esos isSupported() devuelve false.
+ */
+public class PngRowDecoder {
+	private static final long SIGNATURE = 0x89504E470D0A1A0AL;
+	private static final int IHDR = 0x49484452, PLTE = 0x504C5445, IDAT = 0x49444154, IEND = 0x49454E44, TRNS = 0x74524E53;
+
+	private static final int GRAY = 0, RGB = 2, PALETTE = 3, GRAY_ALPHA = 4, RGB_ALPHA = 6;
+
+	private DataInputStream in;
+	private InputStream pixels;
+	private int width, heigh, bitDepth, colorType, interlace;
+	private int channels, bytesPerPixel, rowBytes;
+	private int[] palette = new int[256];
+	private int transparentKey = -1;
+	private byte[] row, previous;
+	private int nextRow;
+
+	/**
+	 * Lee la cabecera y los chunks previos a los datos de la imagen.
+	 * @param input Flujo con el PNG.
+	 * @throws IOException Si no es un PNG válido.
+	 */
+	public PngRowDecoder(InputStream input) throws IOException {
+		in = new DataInputStream(input);
+		if (in.readLong() != SIGNATURE)
+			throw new IOException("No es un PNG");
+
+		// Chunks hasta el primer IDAT
+		int length = in.readInt();
+		int type = in.readInt();
+		if (type != IHDR)
+			throw new IOException("PNG sin IHDR");
+		width = in.readInt();
+		heigh = in.readInt();
+		bitDepth = in.readUnsignedByte();
+		colorType = in.readUnsignedByte();
+		in.readUnsignedByte(); // compresión
+		in.readUnsignedByte(); // filtro
+		interlace = in.readUnsignedByte();
+		skip(length - 13 + 4);
+
+		for (int i = 0; i < 256; i++)
+			palette[i] = 0xFF000000;
+
+		while (true) {
+			length = in.readInt();
+			type = in.readInt();
+			if (type == IDAT)
+				break;
+			if (type == IEND)
+				throw new IOException("PNG sin datos");
+			if (type == PLTE) {
+				for (int i = 0; i < length / 3; i++)
+					palette[i] = 0xFF000000 | (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+				skip(length % 3 + 4);
+			} else if (type == TRNS) {
+				readTransparency(length);
+				skip(4);
+			} else {
+				skip(length + 4);
+			}
+		}
+
+		switch (colorType) {
+			case GRAY: case PALETTE: channels = 1; break;
+			case GRAY_ALPHA: channels = 2; break;
+			case RGB: channels = 3; break;
+			case RGB_ALPHA: channels = 4; break;
+			default: throw new IOException("Tipo de color no válido: " + colorType);
+		}
+		int bitsPerPixel = channels * bitDepth;
+		bytesPerPixel = Math.max(1, bitsPerPixel / 8);
+		rowBytes = (int) (((long) width * bitsPerPixel + 7) / 8);
+		row = new byte[rowBytes];
+		previous = new byte[rowBytes];
+		pixels = new InflaterInputStream(new IdatStream(length));
+	}
+
+	private void readTransparency(int length) throws IOException {
+		if (colorType == PALETTE) {
+			for (int i = 0; i < length; i++)
+				palette[i] = (palette[i] & 0x00FFFFFF) | (in.readUnsignedByte() << 24);
+		} else if (colorType == GRAY) {
+			transparentKey = in.readUnsignedShort();
+			skip(length - 2);
+		} else if (colorType == RGB) {
+			int r = in.readUnsignedShort(), g = in.readUnsignedShort(), b = in.readUnsignedShort();
+			// Se guarda la clave como se compararía con 8 bits por canal; con 16 bits se comparan los bytes altos
+			if (bitDepth == 16)
+				transparentKey = ((r >>> 8) << 16) | ((g >>> 8) << 8) | (b >>> 8);
+			else
+				transparentKey = (r << 16) | (g << 8) | b;
+			skip(length - 6);
+		} else {
+			skip(length);
+		}
+	}
+
+	private void skip(long n) throws IOException {
+		while (n > 0) {
+			int skipped = in.skipBytes((int) Math.min(n, Integer.MAX_VALUE));
+			if (skipped <= 0)
+				throw new EOFException();
+			n -= skipped;
+		}
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeigh() {
+		return heigh;
+	}
+
+	/**
+	 * @return false si la imagen está entrelazada y no se puede leer fila a fila.
+	 */
+	public boolean isSupported() {
+		return interlace == 0;
+	}
+
+	/**
+	 * Lee la siguiente fila de la imagen como colores ARGB.
+	 * @param argb Array destino de al menos getWidth() posiciones.
+	 * @throws IOException Si la imagen está entrelazada, corrupta o ya se han leído todas las filas.
+	 */
+	public void readRow(int[] argb) throws IOException {
+		if (!isSupported())
+			throw new IOException("PNG entrelazado");
+		if (nextRow >= heigh)
+			throw new EOFException("No quedan filas");
+
+		int filter = pixels.read();
+		if (filter < 0)
+			throw new EOFException("PNG incompleto");
+		byte[] tmp = previous;
+		previous = row;
+		row = tmp;
+		for (int done = 0; done < rowBytes; ) {
+			int n = pixels.read(row, done, rowBytes - done);
+			if (n < 0)
+				throw new EOFException("PNG incompleto");
+			done += n;
+		}
+		unfilter(filter);
+		toArgb(argb);
+		nextRow++;
+	}
+
+	/**
+	 * Deshace el filtro de PNG de la fila actual usando la anterior.
+	 */
+	private void unfilter(int filter) throws IOException {
+		int bpp = bytesPerPixel;
+		switch (filter) {
+			case 0:
+				break;
+			case 1: // Sub
+				for (int i = bpp; i < rowBytes; i++)
+					row[i] += row[i - bpp];
+				break;
+			case 2: // Up
+				for (int i = 0; i < rowBytes; i++)
+					row[i] += previous[i];
+				break;
+			case 3: // Average
+				for (int i = 0; i < rowBytes; i++) {
+					int left = (i >= bpp) ? row[i - bpp] & 0xFF : 0;
+					row[i] += (left + (previous[i] & 0xFF)) >>> 1;
+				}
+				break;
+			case 4: // Paeth
+				for (int i = 0; i < rowBytes; i++) {
+					int a = (i >= bpp) ? row[i - bpp] & 0xFF : 0;
+					int b = previous[i] & 0xFF;
+					int c = (i >= bpp) ? previous[i - bpp] & 0xFF : 0;
+					int p = a + b - c;
+					int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+					row[i] += (pa <= pb && pa <= pc) ? a : (pb <= pc) ? b : c;
+				}
+				break;
+			default:
+				throw new IOException("Filtro PNG no válido: " + filter);
+		}
+	}
+
+	/**
+	 * Traduce la fila actual a ARGB de 8 bits por canal.
+	 */
+	private void toArgb(int[] argb) {
+		int step = (bitDepth == 16) ? 2 : 1; // con 16 bits se usa el byte alto de cada muestra
+		switch (colorType) {
+			case RGB:
+			case RGB_ALPHA:
+				for (int x = 0, i = 0; x < width; x++) {
+					int r = row[i] & 0xFF; i += step;
+					int g = row[i] & 0xFF; i += step;
+					int b = row[i] & 0xFF; i += step;
+					int a = 0xFF;
+					if (colorType == RGB_ALPHA) {
+						a = row[i] & 0xFF; i += step;
+					} else if (((r << 16) | (g << 8) | b) == transparentKey) {
+						a = 0;
+					}
+					argb[x] = (a << 24) | (r << 16) | (g << 8) | b;
+				}
+				break;
+			case GRAY_ALPHA:
+				for (int x = 0, i = 0; x < width; x++) {
+					int v = row[i] & 0xFF; i += step;
+					int a = row[i] & 0xFF; i += step;
+					argb[x] = (a << 24) | (v << 16) | (v << 8) | v;
+				}
+				break;
+			case GRAY:
+			case PALETTE:
+				int max = (1 << bitDepth) - 1;
+				for (int x = 0; x < width; x++) {
+					int sample;
+					if (bitDepth == 16) {
+						sample = ((row[2 * x] & 0xFF) << 8) | (row[2 * x + 1] & 0xFF);
+					} else {
+						long bit = (long) x * bitDepth;
+						sample = ((row[(int) (bit >>> 3)] & 0xFF) >>> (8 - bitDepth - (int) (bit & 7))) & max;
+					}
+					if (colorType == PALETTE) {
+						argb[x] = palette[sample];
+					} else {
+						int v = (bitDepth == 16) ? sample >>> 8 : sample * 255 / max;
+						int a = (sample == transparentKey) ? 0 : 0xFF;
+						argb[x] = (a << 24) | (v << 16) | (v << 8) | v;
+					}
+				}
+				break;
+		}
+	}
+
+	/**
+	 * Cierra el flujo.
+	 * @throws IOException Si falla el cierre.
+	 */
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Une los datos de todos los chunks IDAT consecutivos en un solo flujo.
+	 */
+	private class IdatStream extends InputStream {
+		private int remaining;
+		private boolean finished;
+
+		IdatStream(int firstLength) {
+			remaining = firstLength;
+		}
+
+		private boolean nextChunk() throws IOException {
+			while (remaining == 0 && !finished) {
+				skip(4); // CRC
+				remaining = in.readInt();
+				if (in.readInt() != IDAT)
+					finished = true;
+			}
+			return !finished;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!nextChunk())
+				return -1;
+			remaining--;
+			return in.readUnsignedByte();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			if (!nextChunk())
+				return -1;
+			int n = in.read(b, off, Math.min(len, remaining));
+			if (n < 0)
+				throw new EOFException("PNG incompleto");
+			remaining -= n;
+			return n;
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package practica.util;
+
+/**
+ * Controla el ritmo de la simulación entre el visualizador y el satélite. El satélite llama a awaitStep
+ * antes de aplicar cada decisión de un drone y el visualizador elige el modo:
+ * 	- PAUSED: no se aplica ninguna decisión hasta que se pida un paso (step) o se cambie de modo.
+ * 	- STEPS: se aplican los pasos pedidos con step o runSteps y después se vuelve a PAUSED.
+ * 	- RUNNING: sin esperas.
+ * 	- FIXED_RATE: un paso cada 1/pasos por segundo, medido desde el anterior.
+ *
+ * Las esperas son con wait/notifyAll sobre el propio controlador, así que un satélite parado no gasta
+ * CPU y despierta en cuanto se pulsa un botón. Se puede usar desde cualquier hilo.
+ */
+public class StepController {
+	public static final int PAUSED = 0, STEPS = 1, RUNNING = 2, FIXED_RATE = 3;
+
+	private int mode = PAUSED;
+	// Pasos que quedan en el modo STEPS
+	private long pendingSteps = 0;
+	// Modo FIXED_RATE: nanosegundos entre pasos y momento (System.nanoTime) del siguiente
+	private long periodNanos;
+	private long nextStep;
+
+	/**
+	 * Para la simulación antes de la siguiente decisión. Los pasos pendientes se descartan.
+	 */
+	public synchronized void pause() {
+		setMode(PAUSED);
+	}
+
+	/**
+	 * Deja pasar una decisión más (el botón "Think once").
+	 */
+	public void step() {
+		runSteps(1);
+	}
+
+	/**
+	 * Deja pasar n decisiones más y después para. Si ya había pasos pendientes, se suman.
+	 * @param n Número de pasos.
+	 */
+	public synchronized void runSteps(long n) {
+		if (n <= 0)
+			return;
+		if (mode != STEPS) {
+			mode = STEPS;
+			pendingSteps = 0;
+		}
+		pendingSteps += n;
+		notifyAll();
+	}
+
+	/**
+	 * Sin esperas hasta que se cambie de modo (el botón "Find target").
+	 */
+	public synchronized void run() {
+		setMode(RUNNING);
+	}
+
+	/**
+	 * Un paso cada 1/stepsPerSecond segundos. El primero pasa ya.
+	 * @param stepsPerSecond Pasos por segundo, mayor que 0.
+	 * @throws IllegalArgumentException Si no es mayor que 0.
+	 */
+	public synchronized void runAtRate(double stepsPerSecond) {
+		if (!(stepsPerSecond > 0))
+			throw new IllegalArgumentException("Pasos por segundo no válidos: " + stepsPerSecond);
+		periodNanos = Math.max(1L, (long) (1e9 / stepsPerSecond));
+		nextStep = System.nanoTime();
+		setMode(FIXED_RATE);
+	}
+
+	private void setMode(int mode) {
+		this.mode = mode;
+		pendingSteps = 0;
+		notifyAll();
+	}
+
+	/**
+	 * Espera hasta que el modo deje pasar una decisión más y la cuenta.
+	 * @throws InterruptedException Si se interrumpe el hilo mientras espera.
+	 */
+	public synchronized void awaitStep() throws InterruptedException {
+		while (true) {
+			switch (mode) {
+			case RUNNING:
+				return;
+			case STEPS:
+				if (pendingSteps > 0) {
+					if (--pendingSteps == 0)
+						mode = PAUSED;
+					return;
+				}
+				wait();
+				break;
+			case FIXED_RATE:
+				long now = System.nanoTime();
+				long left = nextStep - now;
+				if (left <= 0) {
+					// Si se ha quedado atrás no se acumulan pasos: el siguiente cuenta desde ahora
+					nextStep = Math.max(nextStep, now - periodNanos) + periodNanos;
+					return;
+				}
+				wait(left / 1000000L, (int) (left % 1000000L));
+				break;
+			default:
+				wait();
+			}
+		}
+	}
+
+	/**
+	 * @return El modo actual (PAUSED, STEPS, RUNNING o FIXED_RATE).
+	 */
+	public synchronized int getMode() {
+		return mode;
+	}
+
+	/**
+	 * @return Pasos que quedan en el modo STEPS.
+	 */
+	public synchronized long getPendingSteps() {
+		return pendingSteps;
+	}
+}
@@ -0,0 +1,137 @@
+package practica.util;
+
+import java.util.Arrays;
+
+/**
+ * Almacenamiento disperso por baldosas de TILE x TILE celdas. Una baldosa no se reserva
+ * hasta que se escribe en ella un valor distinto del valor por defecto, así que un mapa
+ * en el que sólo se marca un recorrido ocupa en proporción a las celdas recorridas y no
+ * al área del mapa. Dentro de cada baldosa las celdas van a 2 bits, como en PackedStorage.
+ */
+public class TiledStorage implements MapStorage {
+	/** Lado de una baldosa. Una fila de baldosa son 64 celdas, es decir, 2 longs. */
+	public static final int TILE = 64;
+	private static final int TILE_BITS = 6;
+	private static final int WORDS_PER_TILE = TILE * TILE / PackedStorage.CELLS_PER_WORD;
+	private static final long MASK = 3L;
+
+	private long tiles[][];
+	private int tilesX;
+	private int heigh;
+	private int width;
+	private int defaultValue;
+	private long defaultWord;
+
+	/**
+	 * Constructor. Todas las celdas valen LIBRE.
+	 * @param heigh 	Altura del mapa
+	 * @param width 	Anchura del mapa
+	 */
+	public TiledStorage(int heigh, int width) {
+		this(heigh, width, Map.LIBRE);
+	}
+
+	/**
+	 * Constructor con un valor por defecto para las celdas no escritas.
+	 * @param heigh 		Altura del mapa
+	 * @param width 		Anchura del mapa
+	 * @param defaultValue 	Valor de las celdas de las baldosas sin reservar.
+	 */
+	public TiledStorage(int heigh, int width, int defaultValue) {
+		if (defaultValue < Map.LIBRE || defaultValue > Map.OBJETIVO)
+			throw new IllegalArgumentException("Valor de celda no válido: " + defaultValue);
+		this.heigh = heigh;
+		this.width = width;
+		this.defaultValue = defaultValue;
+		// El valor por defecto repetido en las 32 celdas de un long
+		this.defaultWord = defaultValue * 0x5555555555555555L;
+		tilesX = (width + TILE - 1) >>> TILE_BITS;
+		int tilesY = (heigh + TILE - 1) >>> TILE_BITS;
+		tiles = new long[tilesX * tilesY][];
+	}
+
+	@Override
+	public int getHeigh() {
+		return heigh;
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Número de baldosas reservadas, para saber cuánta memoria se está usando.
+	 * @return Baldosas reservadas.
+	 */
+	public int getAllocatedTiles() {
+		int n = 0;
+		for (long[] tile : tiles)
+			if (tile != null)
+				n++;
+		return n;
+	}
+
+	@Override
+	public int get(int x, int y) {
+		long[] tile = tiles[(y >>> TILE_BITS) * tilesX + (x >>> TILE_BITS)];
+		if (tile == null)
+			return defaultValue;
+		int i = ((y & (TILE - 1)) << TILE_BITS) | (x & (TILE - 1));
+		return (int) ((tile[i >>> 5] >>> ((i & 31) << 1)) & MASK);
+	}
+
+	@Override
+	public void set(int x, int y, int value) {
+		if (value < Map.LIBRE || value > Map.OBJETIVO)
+			throw new IllegalArgumentException("Valor de celda no válido: " + value);
+		int t = (y >>> TILE_BITS) * tilesX + (x >>> TILE_BITS);
+		long[] tile = tiles[t];
+		if (tile == null) {
+			// Escribir el valor por defecto en una baldosa vacía no cambia nada
+			if (value == defaultValue)
+				return;
+			tile = new long[WORDS_PER_TILE];
+			if (defaultWord != 0)
+				Arrays.fill(tile, defaultWord);
+			tiles[t] = tile;
+		}
+		int i = ((y & (TILE - 1)) << TILE_BITS) | (x & (TILE - 1));
+		int shift = (i & 31) << 1;
+		tile[i >>> 5] = (tile[i >>> 5] & ~(MASK << shift)) | ((long) value << shift);
+	}
+
+	@Override
+	public void getRow(int y, int[] row) {
+		int base = (y >>> TILE_BITS) * tilesX;
+		int inTile = (y & (TILE - 1)) << TILE_BITS;
+		for (int tx = 0; tx < tilesX; tx++) {
+			int x0 = tx << TILE_BITS;
+			int n = Math.min(TILE, width - x0);
+			long[] tile = tiles[base + tx];
+			if (tile == null) {
+				Arrays.fill(row, x0, x0 + n, defaultValue);
+			} else {
+				for (int k = 0; k < n; k++) {
+					int i = inTile | k;
+					row[x0 + k] = (int) ((tile[i >>> 5] >>> ((i & 31) << 1)) & MASK);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void setRow(int y, int[] row) {
+		for (int x = 0; x < width; x++)
+			set(x, y, row[x]);
+	}
+
+	@Override
+	public MapStorage copy() {
+		TiledStorage copy = new TiledStorage(heigh, width, defaultValue);
+		for (int t = 0; t < tiles.length; t++)
+			if (tiles[t] != null)
+				copy.tiles[t] = tiles[t].clone();
+		return copy;
+	}
+}
@@ -4,18 +4,22 @@ import java.awt.Image;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
+import java.io.FilenameFilter;
 
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JComboBox;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
 
 import practica.Launcher;
 import practica.agent.Satelite;
 
 /**
  * Visualizador que permite seleccionar un mapa de entre los que se encuentren en la carpeta maps y lanzar el launcher.
+ * Los mapas pueden ser imágenes o mapas binarios (.map).
  * @author Dani
  * 
  */
@@ -24,12 +28,19 @@ public class Visualizer extends JFrame {
 	private JButton btnLoadMap;
 	private JButton btnThinkOnce;
 	private JButton btnFindTarget;
+	private JButton btnPause;
+	private JButton btnRunSteps;
+	private JSpinner stepsSpinner;
+	private JButton btnRunAtRate;
+	private JSpinner rateSpinner;
 	private JLabel miniMap;
-	private JLabel satelliteMapIcon;
+	private MapView satelliteMap;
 	private Map mapToLoad;
 	private Launcher launcher;
 	
 	private Satelite satelite;
+	// Ritmo de la simulación: el satélite espera en él y los botones lo cambian
+	private final StepController stepController = new StepController();
 	
 	/**
 	 * Setter de satelite.
@@ -38,6 +49,7 @@ public class Visualizer extends JFrame {
 	 */
 	public void setSatelite(Satelite sat){
 		satelite = sat;
+		satelliteMap.setMap(sat.getMapSeguimiento());
 	}
 	
 	/**
@@ -69,14 +81,20 @@ public class Visualizer extends JFrame {
 		
 		//Meter los nombres de los mapas
 		File f = new File ("src/maps");
-		String [] mapNames = f.list();
+		// Sólo los mapas: en la carpeta también están las abstracciones de HPA* (.hpa)
+		String [] mapNames = f.list(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.toLowerCase().endsWith(".png") || MapFile.isMapFile(name);
+			}
+		});
 		getContentPane().setLayout(null);
 		mapSelector = new JComboBox <String> (mapNames);
 		mapSelector.addActionListener(new MapSelectorActionListener());
 		
-		satelliteMapIcon = new JLabel("");
-		satelliteMapIcon.setBounds(10, 10, 500, 500);
-		getContentPane().add(satelliteMapIcon);
+		satelliteMap = new MapView();
+		satelliteMap.setBounds(10, 10, 500, 500);
+		getContentPane().add(satelliteMap);
 		mapSelector.setBounds(10, 11, 112, 20);
 		getContentPane().add(mapSelector);
 		
@@ -95,44 +113,52 @@ public class Visualizer extends JFrame {
 		btnThinkOnce.setBounds(10, 528, 190, 23);
 		getContentPane().add(btnThinkOnce);
 		
+		btnPause = new JButton("Pause");
+		btnPause.addActionListener(new BtnPauseActionListener());
+		btnPause.setBounds(210, 528, 100, 23);
+		getContentPane().add(btnPause);
+		
 		btnFindTarget = new JButton("Find target");
 		btnFindTarget.addActionListener(new BtnFindTargetActionListener());
 		btnFindTarget.setBounds(320, 528, 190, 23);
 		getContentPane().add(btnFindTarget);
+		
+		stepsSpinner = new JSpinner(new SpinnerNumberModel(10, 1, 1000000, 1));
+		stepsSpinner.setBounds(10, 556, 80, 23);
+		getContentPane().add(stepsSpinner);
+		
+		btnRunSteps = new JButton("Run steps");
+		btnRunSteps.addActionListener(new BtnRunStepsActionListener());
+		btnRunSteps.setBounds(95, 556, 105, 23);
+		getContentPane().add(btnRunSteps);
+		
+		rateSpinner = new JSpinner(new SpinnerNumberModel(10, 1, 1000, 1));
+		rateSpinner.setBounds(320, 556, 80, 23);
+		getContentPane().add(rateSpinner);
+		
+		btnRunAtRate = new JButton("Steps/s");
+		btnRunAtRate.addActionListener(new BtnRunAtRateActionListener());
+		btnRunAtRate.setBounds(405, 556, 105, 23);
+		getContentPane().add(btnRunAtRate);
 	}
 	
 	/**
-	 * Activa el botón "Think Once"
-	 * @author Dani
-	 */
-	public void enableThinkOnce(){
-		btnThinkOnce.setEnabled(true);
-	}
-	
-	/**
-	 * Mira si el botón "Think Once" está habilitado.
-	 * @author Dani
-	 * @return true si está deshabilitado (y por lo tanto se pulsó). False si no.
-	 */
-	public boolean isBtnThinkOnceEnabled(){
-		return btnThinkOnce.isEnabled();
-	}
-	
-	/**
-	 * Mira si el botón "Find target" está habilitado.
-	 * @author Dani
-	 * @return true si está deshabilitado (y por lo tanto se pulsó). False si no.
+	 * Getter del controlador de pasos. El satélite espera en él antes de cada decisión; empieza parado,
+	 * hasta que se pulsa "Think once", "Find target" o alguno de los otros botones.
+	 * @return el controlador de pasos.
 	 */
-	public boolean isBtnFindTargetEnabled(){
-		return btnFindTarget.isEnabled();
+	public StepController getStepController(){
+		return stepController;
 	}
 	
 	/**
-	 * Actualiza el mapa.
-	 * @author Dani
+	 * Quien recibe las casillas que cambian en el mapa de seguimiento (ver World.setMapListener). No
+	 * espera a Swing: el mapa se repinta en el hilo de Swing, como mucho MapView.MAX_FPS veces por
+	 * segundo y sólo en las celdas recibidas.
+	 * @return el receptor de los cambios.
 	 */
-	public void updateMap(){
-        satelliteMapIcon.setIcon(new ImageIcon(ImgMapConverter.mapToScalatedImg(satelite.getMapSeguimiento(), 500, 500)));
+	public MapListener getMapListener(){
+		return satelliteMap;
 	}
 	
 	/**
@@ -142,13 +168,23 @@ public class Visualizer extends JFrame {
 	private class MapSelectorActionListener implements ActionListener {
 		public void actionPerformed(ActionEvent arg0) {
 			btnLoadMap.setEnabled(true);
-			ImageIcon mapIcon = new ImageIcon(Visualizer.class.getResource("/maps/" + mapSelector.getSelectedItem().toString()));
-			//Me creo una imagen a partir de la del icono
-			Image img = mapIcon.getImage();
-			//Me creo otra reescalándola.
-			Image scalatedImg = img.getScaledInstance(210, 210, Image.SCALE_SMOOTH);
-			//Se la asigno al icono
-			mapIcon.setImage(scalatedImg);
+			String mapName = mapSelector.getSelectedItem().toString();
+			ImageIcon mapIcon;
+			if (MapFile.isMapFile(mapName)) {
+				//Los mapas binarios no son imágenes: se carga el mapa y se pinta
+				Map map = MapFile.load("src/maps/" + mapName);
+				if (map == null)
+					return;
+				mapIcon = new ImageIcon(ImgMapConverter.mapToScalatedImg(map, 210, 210));
+			} else {
+				mapIcon = new ImageIcon(Visualizer.class.getResource("/maps/" + mapName));
+				//Me creo una imagen a partir de la del icono
+				Image img = mapIcon.getImage();
+				//Me creo otra reescalándola.
+				Image scalatedImg = img.getScaledInstance(210, 210, Image.SCALE_SMOOTH);
+				//Se la asigno al icono
+				mapIcon.setImage(scalatedImg);
+			}
 			//Asigno el icon al label
 			miniMap.setIcon(mapIcon);
 		}
@@ -160,12 +196,12 @@ public class Visualizer extends JFrame {
 	 */
 	private class BtnLoadMapActionListener implements ActionListener {
 		public void actionPerformed(ActionEvent arg0) {
-			setBounds(100, 100, 550, 600);
+			setBounds(100, 100, 550, 630);
 			mapSelector.setVisible(false);
 			miniMap.setVisible(false);
 			btnLoadMap.setVisible(false);
 	        
-	        mapToLoad = ImgMapConverter.imgToMap("src/maps/" + mapSelector.getSelectedItem().toString());
+	        mapToLoad = MapFile.load("src/maps/" + mapSelector.getSelectedItem().toString());
 	        launcher.launch();			
 		}
 	}
@@ -176,9 +212,7 @@ public class Visualizer extends JFrame {
 	 */
 	private class BtnFindTargetActionListener implements ActionListener {
 		public void actionPerformed(ActionEvent arg0) {
-			btnThinkOnce.setEnabled(false);
-			btnFindTarget.setEnabled(false);
-			System.out.println("Botones desactivados");
+			stepController.run();
 		}
 	}
 	
@@ -188,7 +222,34 @@ public class Visualizer extends JFrame {
 	 */
 	private class BtnThinkOnceActionListener implements ActionListener {
 		public void actionPerformed(ActionEvent e) {
-			btnThinkOnce.setEnabled(false);
+			stepController.step();
+		}
+	}
+	
+	/**
+	 * ActionListener del botón "Pause".
+	 */
+	private class BtnPauseActionListener implements ActionListener {
+		public void actionPerformed(ActionEvent e) {
+			stepController.pause();
+		}
+	}
+	
+	/**
+	 * ActionListener del botón "Run steps": tantos pasos como diga su selector.
+	 */
+	private class BtnRunStepsActionListener implements ActionListener {
+		public void actionPerformed(ActionEvent e) {
+			stepController.runSteps(((Number) stepsSpinner.getValue()).longValue());
+		}
+	}
+	
+	/**
+	 * ActionListener del botón "Steps/s": pasos por segundo según su selector.
+	 */
+	private class BtnRunAtRateActionListener implements ActionListener {
+		public void actionPerformed(ActionEvent e) {
+			stepController.runAtRate(((Number) rateSpinner.getValue()).doubleValue());
 		}
 	}
 }